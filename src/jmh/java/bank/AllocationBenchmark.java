@@ -0,0 +1,100 @@
+package bank;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.BenchmarkParams;
+
+/**
+ * Measures the bytes allocated per BUY/SELL on a BrokerageAccount, as gc.alloc.rate.norm of the gc profiler.
+ * Each mode alternates BUYs and SELLs of a stock the account already holds:
+ *   executeTrade        the allocation-free entry point, with room reserved in both accounts' histories; expected to be 0 bytes per trade
+ *   executeTransaction  a new StockTransaction per trade, as most callers do
+ *   metrics_enabled     executeTrade with the Bank's TransactionMetrics enabled, to show what collecting them costs
+ *   events_enabled      executeTrade with the Bank's TransactionEventStream enabled and no subscriber, to show what publishing costs
+ *   history_growth      executeTrade without reserving history, so the amortized cost of growing the history columns is included
+ *   reject_try          SELLs of more shares than are held through tryExecuteTrade, which reports the rejection as a status code
+ *   reject_throw        the same SELLs through executeTrade, which throws an InsufficientAssetsException for each
+ * Every iteration is one run of a fixed number of trades, so the history room needed for the whole run can be reserved up front.
+ * Scores are per trade.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@OperationsPerInvocation(AllocationBenchmark.TRADES)
+@State(Scope.Thread)
+public class AllocationBenchmark {
+    static final int TRADES = 500_000;
+
+    @Param({"executeTrade", "executeTransaction", "metrics_enabled", "events_enabled", "history_growth", "reject_try", "reject_throw"})
+    public String mode;
+
+    BrokerageAccount account;
+    StockListing listing;
+
+    @Setup(Level.Trial)
+    public void createAccount(BenchmarkParams params) throws Exception {
+        StockExchange exchange = new StockExchange();
+        Bank bank = new Bank(exchange);
+        exchange.createNewListing("ALLOC", 10, Integer.MAX_VALUE);
+        this.listing = exchange.getStockListing("ALLOC");
+        if(this.mode.equals("metrics_enabled"))
+            bank.enableMetrics();
+        if(this.mode.equals("events_enabled"))
+            bank.enableEventStream(1 << 16);
+        Patron patron = bank.createNewPatron();
+        bank.openNewSavingsAccount(patron);
+        bank.openNewBrokerageAccount(patron);
+        patron.getSavingsAccount().executeTransaction(new CashTransaction(Transaction.TxType.DEPOSIT, 1e9));
+        this.account = patron.getBrokerageAccount();
+        //one trade of each type, so reserving history also reserves both types' indexes
+        this.account.executeTrade(Transaction.TxType.BUY, this.listing, 2);
+        this.account.executeTrade(Transaction.TxType.SELL, this.listing, 1);
+        if(!this.mode.equals("history_growth")) {
+            int trades = (params.getWarmup().getCount() + params.getMeasurement().getCount()) * TRADES;
+            this.account.ensureHistoryCapacity(trades + 2);
+            patron.getSavingsAccount().ensureHistoryCapacity(trades + 3);
+        }
+    }
+
+    @Benchmark
+    public int trades() throws Exception {
+        if(this.mode.startsWith("reject"))
+            return this.reject(this.mode.equals("reject_try"));
+        boolean objects = this.mode.equals("executeTransaction");
+        for(int i = 0; i < TRADES; i++) {
+            Transaction.TxType type = (i & 1) == 0 ? Transaction.TxType.BUY : Transaction.TxType.SELL;
+            if(objects)
+                this.account.executeTransaction(new StockTransaction(this.listing, type, 1));
+            else
+                this.account.executeTrade(type, this.listing, 1);
+        }
+        return TRADES;
+    }
+
+    private int reject(boolean statusCodes) throws Exception {
+        int rejected = 0;
+        for(int i = 0; i < TRADES; i++) {
+            if(statusCodes) {
+                if(this.account.tryExecuteTrade(Transaction.TxType.SELL, this.listing, Integer.MAX_VALUE) != TxStatus.OK)
+                    rejected++;
+            } else {
+                try {
+                    this.account.executeTrade(Transaction.TxType.SELL, this.listing, Integer.MAX_VALUE);
+                } catch(InsufficientAssetsException e) {
+                    rejected++;
+                }
+            }
+        }
+        if(rejected != TRADES)
+            throw new IllegalStateException("Expected every trade to be rejected");
+        return rejected;
+    }
+}
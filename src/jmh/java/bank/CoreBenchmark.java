@@ -0,0 +1,176 @@
+package bank;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.ThreadParams;
+
+/**
+ * Benchmarks the core banking and trading paths against a Bank of realistic size: many patrons, each holding a spread of listings.
+ *
+ * Every benchmark runs in two scenarios, chosen by the scenario parameter:
+ *   disjoint   each thread works on its own patrons, so threads only meet on shared listings
+ *   contended  every thread works on the same few patrons, so they queue on the same Patron locks
+ * This class runs them on one thread; CoreContentionBenchmark runs the same benchmarks on several. The Bank is rebuilt before every
+ * iteration, so histories don't grow without bound over a run.
+ *
+ * Run with gradle jmh. Throughput, together with the bytes allocated per operation and the GC counts of the gc profiler, is written
+ * as JSON to build/results/jmh/results.json, so results can be collected over time and compared.
+ * @see CoreContentionBenchmark
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+public class CoreBenchmark {
+    static final int PATRONS = 10_000;
+    static final int LISTINGS = 500;
+    static final int HOLDINGS_PER_PATRON = 20;
+    static final int CONTENDED_PATRONS = 4;
+
+    @Param({"disjoint", "contended"})
+    public String scenario;
+
+    StockExchange exchange;
+    Bank bank;
+    Patron[] patrons;
+    String[] symbols;
+    //a listing each patron holds, so that SELLs of it can't fail
+    StockListing[] held;
+
+    @Setup(Level.Iteration)
+    public void createBank() throws Exception {
+        Random random = new Random(42);
+        this.exchange = new StockExchange();
+        this.bank = new Bank(this.exchange);
+        StockListing[] listings = new StockListing[LISTINGS];
+        this.symbols = new String[LISTINGS];
+        for(int i = 0; i < LISTINGS; i++) {
+            this.symbols[i] = "SYM" + i;
+            this.exchange.createNewListing(this.symbols[i], 1 + random.nextInt(500), Integer.MAX_VALUE);
+            listings[i] = this.exchange.getStockListing(this.symbols[i]);
+        }
+        this.patrons = new Patron[PATRONS];
+        this.held = new StockListing[PATRONS];
+        for(int i = 0; i < PATRONS; i++) {
+            Patron patron = this.bank.createNewPatron();
+            this.bank.openNewSavingsAccount(patron);
+            this.bank.openNewBrokerageAccount(patron);
+            patron.getSavingsAccount().executeTransaction(new CashTransaction(Transaction.TxType.DEPOSIT, 1e8));
+            for(int h = 0; h < HOLDINGS_PER_PATRON; h++) {
+                StockListing listing = listings[random.nextInt(LISTINGS)];
+                patron.getBrokerageAccount().executeTrade(Transaction.TxType.BUY, listing, 1 + random.nextInt(100));
+                this.held[i] = listing;
+            }
+            this.patrons[i] = patron;
+        }
+    }
+
+    /**
+     * the patrons one benchmark thread works on, and the number of operations it has run
+     */
+    @State(Scope.Thread)
+    public static class Worker {
+        private final int[] patrons = new int[1024];
+        private int operation;
+
+        @Setup(Level.Trial)
+        public void choosePatrons(CoreBenchmark benchmark, ThreadParams thread) {
+            Random random = new Random(thread.getThreadIndex());
+            boolean contended = benchmark.scenario.equals("contended");
+            int threads = thread.getThreadCount();
+            for(int i = 0; i < this.patrons.length; i++) {
+                //disjoint threads take patrons from their own stripe of the array
+                this.patrons[i] = contended ? random.nextInt(CONTENDED_PATRONS) : thread.getThreadIndex() + threads * random.nextInt(PATRONS / threads);
+            }
+        }
+
+        /**
+         * @return the number of the next operation on this thread, e.g. to alternate between BUY and SELL
+         */
+        int next() {
+            return this.operation++;
+        }
+
+        /**
+         * @param operation a value returned by next()
+         * @return the index into patrons that operation uses; the same for each pair of operations 2k, 2k + 1
+         */
+        int patron(int operation) {
+            return this.patrons[(operation >> 1) & 1023];
+        }
+    }
+
+    @Benchmark
+    public void savingsDepositWithdraw(Worker worker) throws Exception {
+        int i = worker.next();
+        Transaction.TxType type = (i & 1) == 0 ? Transaction.TxType.DEPOSIT : Transaction.TxType.WITHDRAW;
+        this.patrons[worker.patron(i)].getSavingsAccount().executeTransaction(new CashTransaction(type, 10.25));
+    }
+
+    @Benchmark
+    public byte bankTransfer(Worker worker) {
+        //back and forth between a pair of patrons, so balances never run out
+        int i = worker.next();
+        int p = worker.patron(i);
+        int from = this.patrons[p].getSavingsAccount().getAccountNumber();
+        int to = this.patrons[p ^ 1].getSavingsAccount().getAccountNumber();
+        return this.bank.transfer((i & 1) == 0 ? from : to, (i & 1) == 0 ? to : from, 1025);
+    }
+
+    @Benchmark
+    public void brokerageBuySell(Worker worker) throws Exception {
+        int i = worker.next();
+        int p = worker.patron(i);
+        Transaction.TxType type = (i & 1) == 0 ? Transaction.TxType.BUY : Transaction.TxType.SELL;
+        this.patrons[p].getBrokerageAccount().executeTransaction(new StockTransaction(this.held[p], type, 1));
+    }
+
+    @Benchmark
+    public long patronNetWorth(Worker worker) {
+        return this.patrons[worker.patron(worker.next())].getMinorNetWorth();
+    }
+
+    @Benchmark
+    public Account bankGetPatronAccount(Worker worker) {
+        Patron patron = this.bank.getPatron(this.patrons[worker.patron(worker.next())].getId());
+        return this.bank.getAccount(patron.getSavingsAccount().getAccountNumber());
+    }
+
+    @Benchmark
+    public StockListing exchangeGetListing(Worker worker) {
+        return this.exchange.getStockListing(this.symbols[worker.next() % LISTINGS]);
+    }
+
+    @Benchmark
+    public long exchangeAllListings() {
+        long total = 0;
+        for(StockListing listing : this.exchange.getAllCurrentListings())
+            total += listing.getMinorPrice();
+        return total;
+    }
+
+    @Benchmark
+    public long accountTransactionHistory(Worker worker) {
+        List<Transaction> history = this.patrons[worker.patron(worker.next())].getBrokerageAccount().getTransactionHistory();
+        long last = 0;
+        for(Transaction tx : history)
+            last = tx.getNanoTimestamp();
+        return last;
+    }
+
+    @Benchmark
+    public HistoryPage accountHistoryQuery(Worker worker) {
+        int p = worker.patron(worker.next());
+        HistoryQuery query = new HistoryQuery().forListing(this.held[p]).newestFirst().limit(10);
+        return this.patrons[p].getBrokerageAccount().getTransactionHistory(query);
+    }
+}
@@ -0,0 +1,12 @@
+package bank;
+
+import org.openjdk.jmh.annotations.Threads;
+
+/**
+ * The CoreBenchmark benchmarks run on several threads at once, in both of its scenarios, to show how the paths scale when threads
+ * work on disjoint patrons and how they behave when every thread queues on the same Patron locks.
+ * @see CoreBenchmark
+ */
+@Threads(4)
+public class CoreContentionBenchmark extends CoreBenchmark {
+}
@@ -0,0 +1,123 @@
+package bank;
+
+import java.util.Random;
+import java.util.concurrent.Flow;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+
+/**
+ * Measures how many trades per second a few trader threads complete with the Bank's TransactionEventStream in each scenario:
+ *   disabled       no stream
+ *   no_subscriber  the stream enabled with nobody subscribed
+ *   fast           one subscriber that requests without limit and counts every event
+ *   slow           one subscriber that sleeps after every batch, so it falls behind and is dropped once the ring laps it
+ * The slow scenario shows that a consumer that can't keep up costs the traders nothing. Each operation is a BUY and a SELL.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Threads(2)
+@State(Scope.Benchmark)
+public class EventStreamBenchmark {
+    private static final int PATRONS = 10_000;
+    private static final int LISTINGS = 100;
+
+    @Param({"disabled", "no_subscriber", "fast", "slow"})
+    public String scenario;
+
+    @Param({"65536"})
+    public int capacity;
+
+    Bank bank;
+    BrokerageAccount[] accounts;
+    StockListing[] listings;
+
+    @Setup
+    public void createBank() throws Exception {
+        Random random = new Random(42);
+        StockExchange exchange = new StockExchange();
+        this.bank = new Bank(exchange);
+        this.listings = new StockListing[LISTINGS];
+        for(int i = 0; i < LISTINGS; i++) {
+            exchange.createNewListing("SYM" + i, 1 + random.nextInt(500), Integer.MAX_VALUE);
+            this.listings[i] = exchange.getStockListing("SYM" + i);
+        }
+        this.accounts = new BrokerageAccount[PATRONS];
+        for(int i = 0; i < PATRONS; i++) {
+            Patron patron = this.bank.createNewPatron();
+            this.bank.openNewSavingsAccount(patron);
+            this.bank.openNewBrokerageAccount(patron);
+            patron.getSavingsAccount().executeTransaction(new CashTransaction(Transaction.TxType.DEPOSIT, 1e9));
+            this.accounts[i] = patron.getBrokerageAccount();
+        }
+        if(this.scenario.equals("disabled"))
+            return;
+        TransactionEventStream stream = this.bank.enableEventStream(this.capacity);
+        if(this.scenario.equals("fast") || this.scenario.equals("slow"))
+            stream.subscribe(new CountingSubscriber(this.scenario.equals("slow")));
+    }
+
+    @TearDown
+    public void disableStream() {
+        if(!this.scenario.equals("disabled"))
+            this.bank.disableEventStream();
+    }
+
+    /**
+     * a trader's random choice of accounts and listings
+     */
+    @State(Scope.Thread)
+    public static class Trader {
+        final Random random = new Random();
+    }
+
+    @Benchmark
+    public byte buySell(Trader trader) {
+        BrokerageAccount account = this.accounts[trader.random.nextInt(PATRONS)];
+        StockListing listing = this.listings[trader.random.nextInt(LISTINGS)];
+        account.tryExecuteTrade(Transaction.TxType.BUY, listing, 1);
+        return account.tryExecuteTrade(Transaction.TxType.SELL, listing, 1);
+    }
+
+    private static final class CountingSubscriber implements Flow.Subscriber<TransactionEventBatch> {
+        private final boolean slow;
+        private long delivered;
+
+        CountingSubscriber(boolean slow) {
+            this.slow = slow;
+        }
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            subscription.request(Long.MAX_VALUE);
+        }
+
+        @Override
+        public void onNext(TransactionEventBatch batch) {
+            this.delivered += batch.size();
+            if(this.slow) {
+                try {
+                    Thread.sleep(10);
+                } catch(InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+        }
+
+        @Override
+        public void onComplete() {
+        }
+    }
+}
@@ -0,0 +1,129 @@
+package bank;
+
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * Measures interest accrual, run on fork-join pools of the given parallelism, in two cases:
+ *   interestKernel  the interest computation alone, swept in parallel chunks over a BalanceStore of the given size, to show the cost
+ *                   per balance of the store's layout without any accounts around it, with the Vector API kernel and the scalar loop
+ *   bankAccrual     Bank.accrueInterest over a Bank of real patrons, including taking their locks and recording each credit in history
+ * The vector kernel needs the JVM flag --add-modules jdk.incubator.vector, which gradle jmh passes to the forked JVM.
+ * 100M balances take about 1.2GB of heap, so give the forked JVM e.g. -Xmx2g before adding that size.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+public class InterestBenchmark {
+    //0.01% a day, in billionths
+    private static final long RATE = 100_000;
+
+    @Param({"1", "2", "4"})
+    public int threads;
+
+    ForkJoinPool pool;
+
+    @Setup
+    public void createPool() {
+        this.pool = new ForkJoinPool(this.threads);
+    }
+
+    @TearDown
+    public void shutdownPool() {
+        this.pool.shutdown();
+    }
+
+    /**
+     * a BalanceStore of random balances without accounts
+     */
+    @State(Scope.Benchmark)
+    public static class Balances {
+        @Param({"10000000"})
+        public int accounts;
+
+        @Param({"vector", "scalar"})
+        public String kernel;
+
+        BalanceStore store;
+        long expected;
+
+        @Setup
+        public void createStore() {
+            this.store = new BalanceStore();
+            Random random = new Random(42);
+            for(int i = 0; i < this.accounts; i++) {
+                long balance = random.nextInt(100_000_000);
+                this.store.set(this.store.allocate(null), balance);
+                this.expected += InterestAccrual.interestOn(balance, RATE);
+            }
+        }
+    }
+
+    /**
+     * a Bank of patrons with a SavingsAccount each
+     */
+    @State(Scope.Benchmark)
+    public static class Patrons {
+        @Param({"1000000"})
+        public int patrons;
+
+        Bank bank;
+
+        @Setup
+        public void createBank() throws Exception {
+            this.bank = new Bank(new StockExchange());
+            Random random = new Random(42);
+            for(int i = 0; i < this.patrons; i++) {
+                Patron patron = this.bank.createNewPatron();
+                this.bank.openNewSavingsAccount(patron);
+                patron.getSavingsAccount().executeTransaction(CashTransaction.ofMinorUnits(Transaction.TxType.DEPOSIT, 1 + random.nextInt(100_000_000)));
+            }
+        }
+    }
+
+    @Benchmark
+    public long interestKernel(Balances balances) throws Exception {
+        boolean vector = balances.kernel.equals("vector");
+        long total = this.pool.submit(() -> sweep(balances.store, vector)).get();
+        if(total != balances.expected)
+            throw new IllegalStateException("Wrong interest total");
+        return total;
+    }
+
+    @Benchmark
+    public long bankAccrual(Patrons patrons) throws Exception {
+        double rate = RATE / (double) InterestAccrual.RATE_SCALE;
+        long total = this.pool.submit(() -> patrons.bank.accrueInterest(rate)).get();
+        if(total <= 0)
+            throw new IllegalStateException("No interest credited");
+        return total;
+    }
+
+    //the accrual job's loop without the accounts: computes every chunk's interest and returns the total
+    private static long sweep(BalanceStore store, boolean vector) {
+        int size = store.size();
+        return IntStream.range(0, BalanceStore.chunkCount(size)).parallel().mapToLong(c -> {
+            int count = Math.min(BalanceStore.CHUNK_SIZE, size - c * BalanceStore.CHUNK_SIZE);
+            long[] interest = new long[count];
+            if(vector)
+                VectorInterest.computeInterest(store.balancesOf(c), count, RATE, interest);
+            else
+                InterestAccrual.computeInterestScalar(store.balancesOf(c), count, RATE, interest);
+            long total = 0;
+            for(long i : interest)
+                total += i;
+            return total;
+        }).sum();
+    }
+}
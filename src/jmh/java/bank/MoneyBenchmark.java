@@ -0,0 +1,97 @@
+package bank;
+
+import java.math.BigDecimal;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Compares the cost of the money arithmetic on the trading path (summing cash amounts into a balance, and quantity * price)
+ * done with double, with Money's overflow-checked long minor units, and with BigDecimal.
+ * Every benchmark applies the same pregenerated operations, so the totals they return can also be compared for drift:
+ * the long and BigDecimal totals always agree, the double total usually doesn't. Scores are per operation.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@OperationsPerInvocation(MoneyBenchmark.OPERATIONS)
+@State(Scope.Benchmark)
+public class MoneyBenchmark {
+    static final int OPERATIONS = 1_000_000;
+
+    long[] minorAmounts;
+    int[] quantities;
+    double[] doubleAmounts;
+    BigDecimal[] decimalAmounts;
+
+    @Setup
+    public void generate() {
+        Random random = new Random(42);
+        this.minorAmounts = new long[OPERATIONS];
+        this.quantities = new int[OPERATIONS];
+        this.doubleAmounts = new double[OPERATIONS];
+        this.decimalAmounts = new BigDecimal[OPERATIONS];
+        for(int i = 0; i < OPERATIONS; i++) {
+            this.minorAmounts[i] = 1 + random.nextInt(1_000_000);
+            this.quantities[i] = 1 + random.nextInt(1_000);
+            this.doubleAmounts[i] = Money.toDouble(this.minorAmounts[i]);
+            this.decimalAmounts[i] = BigDecimal.valueOf(this.minorAmounts[i], Money.SCALE);
+        }
+    }
+
+    //alternate deposits and withdrawals, as a savings account sees them
+    @Benchmark
+    public double balanceDouble() {
+        double balance = 0;
+        for(int i = 0; i < OPERATIONS; i++)
+            balance = (i & 3) == 3 ? balance - this.doubleAmounts[i] : balance + this.doubleAmounts[i];
+        return balance;
+    }
+
+    @Benchmark
+    public long balanceLong() {
+        long balance = 0;
+        for(int i = 0; i < OPERATIONS; i++)
+            balance = (i & 3) == 3 ? Money.subtract(balance, this.minorAmounts[i]) : Money.add(balance, this.minorAmounts[i]);
+        return balance;
+    }
+
+    @Benchmark
+    public BigDecimal balanceBigDecimal() {
+        BigDecimal balance = BigDecimal.ZERO;
+        for(int i = 0; i < OPERATIONS; i++)
+            balance = (i & 3) == 3 ? balance.subtract(this.decimalAmounts[i]) : balance.add(this.decimalAmounts[i]);
+        return balance;
+    }
+
+    //price * quantity accumulated into an account value, as a brokerage account does on every trade
+    @Benchmark
+    public double valueDouble() {
+        double value = 0;
+        for(int i = 0; i < OPERATIONS; i++)
+            value += this.doubleAmounts[i] * this.quantities[i];
+        return value;
+    }
+
+    @Benchmark
+    public long valueLong() {
+        long value = 0;
+        for(int i = 0; i < OPERATIONS; i++)
+            value = Money.add(value, Money.times(this.minorAmounts[i], this.quantities[i]));
+        return value;
+    }
+
+    @Benchmark
+    public BigDecimal valueBigDecimal() {
+        BigDecimal value = BigDecimal.ZERO;
+        for(int i = 0; i < OPERATIONS; i++)
+            value = value.add(this.decimalAmounts[i].multiply(BigDecimal.valueOf(this.quantities[i])));
+        return value;
+    }
+}
@@ -0,0 +1,76 @@
+package bank;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Measures the latency of OrderBook.submit, including settlement between the patrons' accounts, sampled so that the percentiles
+ * are reported alongside the mean.
+ * Orders are generated up front around a fixed mid price so the book stays a realistic depth and about half the orders trade.
+ */
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Benchmark)
+public class OrderBookBenchmark {
+    private static final long MID_PRICE_CENTS = 10_000;
+    private static final int ORDERS = 1 << 20;
+
+    @Param({"1000"})
+    public int patrons;
+
+    OrderBook book;
+    BrokerageAccount[] accounts;
+    int[] owners;
+    boolean[] buys;
+    int[] quantities;
+    long[] prices;
+    private int order;
+
+    @Setup
+    public void createBook() throws Exception {
+        StockExchange exchange = new StockExchange();
+        Bank bank = new Bank(exchange);
+        exchange.createNewListing("BENCH", MID_PRICE_CENTS / 100.0, Integer.MAX_VALUE);
+        StockListing listing = exchange.getStockListing("BENCH");
+        this.accounts = new BrokerageAccount[this.patrons];
+        for(int i = 0; i < this.patrons; i++) {
+            Patron patron = bank.createNewPatron();
+            bank.openNewSavingsAccount(patron);
+            bank.openNewBrokerageAccount(patron);
+            patron.getSavingsAccount().executeTransaction(new CashTransaction(Transaction.TxType.DEPOSIT, 1e12));
+            patron.getBrokerageAccount().executeTransaction(new StockTransaction(listing, Transaction.TxType.BUY, 1_000_000));
+            this.accounts[i] = patron.getBrokerageAccount();
+        }
+        this.book = exchange.getOrderBook("BENCH");
+
+        Random random = new Random(42);
+        this.owners = new int[ORDERS];
+        this.buys = new boolean[ORDERS];
+        this.quantities = new int[ORDERS];
+        this.prices = new long[ORDERS];
+        for(int i = 0; i < ORDERS; i++) {
+            this.owners[i] = random.nextInt(this.patrons);
+            this.buys[i] = random.nextBoolean();
+            this.quantities[i] = 1 + random.nextInt(100);
+            this.prices[i] = MID_PRICE_CENTS + (this.buys[i] ? -1 : 1) * (random.nextInt(20) - 5);
+        }
+    }
+
+    @Benchmark
+    public long submit() throws Exception {
+        int i = this.order++ & (ORDERS - 1);
+        try {
+            return this.book.submit(this.accounts[this.owners[i]], this.buys[i] ? Transaction.TxType.BUY : Transaction.TxType.SELL, this.quantities[i], this.prices[i]);
+        } catch(InsufficientAssetsException e) {
+            return -1;
+        }
+    }
+}
@@ -0,0 +1,96 @@
+package bank;
+
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * Measures how long Bank.createReport takes over a large Bank, run on fork-join pools of the given parallelism, while two trader
+ * threads trade in the same benchmark group, to show that reporting doesn't stop trading: JMH reports the report rate and the
+ * trade rate separately. Every patron has a savings balance and holds a few listings.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Group)
+public class ReportBenchmark {
+    private static final int LISTINGS = 500;
+    private static final int HOLDINGS_PER_PATRON = 5;
+
+    @Param({"100000"})
+    public int patrons;
+
+    @Param({"1", "2", "4"})
+    public int threads;
+
+    Bank bank;
+    Patron[] patronArray;
+    StockListing[] listings;
+    ForkJoinPool pool;
+
+    @Setup
+    public void createBank() throws Exception {
+        Random random = new Random(42);
+        StockExchange exchange = new StockExchange();
+        this.bank = new Bank(exchange);
+        this.listings = new StockListing[LISTINGS];
+        for(int i = 0; i < LISTINGS; i++) {
+            exchange.createNewListing("SYM" + i, 1 + random.nextInt(500), Integer.MAX_VALUE);
+            this.listings[i] = exchange.getStockListing("SYM" + i);
+        }
+        this.patronArray = new Patron[this.patrons];
+        for(int i = 0; i < this.patrons; i++) {
+            Patron patron = this.bank.createNewPatron();
+            this.bank.openNewSavingsAccount(patron);
+            this.bank.openNewBrokerageAccount(patron);
+            patron.getSavingsAccount().executeTransaction(new CashTransaction(Transaction.TxType.DEPOSIT, 1 + random.nextInt(1_000_000)));
+            for(int h = 0; h < HOLDINGS_PER_PATRON; h++)
+                patron.getBrokerageAccount().tryExecuteTrade(Transaction.TxType.BUY, this.listings[random.nextInt(LISTINGS)], 1 + random.nextInt(10));
+            this.patronArray[i] = patron;
+        }
+        this.pool = new ForkJoinPool(this.threads);
+    }
+
+    @TearDown
+    public void shutdownPool() {
+        this.pool.shutdown();
+    }
+
+    /**
+     * a trader's random choice of patrons and listings
+     */
+    @State(Scope.Thread)
+    public static class Trader {
+        final Random random = new Random();
+    }
+
+    @Benchmark
+    @Group("reportWhileTrading")
+    @GroupThreads(1)
+    public BankReport report() throws Exception {
+        BankReport report = this.pool.submit(this.bank::createReport).get();
+        if(report.getPatronCount() != this.patrons)
+            throw new IllegalStateException("Report missed patrons");
+        return report;
+    }
+
+    @Benchmark
+    @Group("reportWhileTrading")
+    @GroupThreads(2)
+    public byte trade(Trader trader) {
+        BrokerageAccount account = this.patronArray[trader.random.nextInt(this.patrons)].getBrokerageAccount();
+        StockListing listing = this.listings[trader.random.nextInt(LISTINGS)];
+        account.tryExecuteTrade(Transaction.TxType.BUY, listing, 1);
+        return account.tryExecuteTrade(Transaction.TxType.SELL, listing, 1);
+    }
+}
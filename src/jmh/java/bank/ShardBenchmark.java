@@ -0,0 +1,104 @@
+package bank;
+
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+
+/**
+ * Measures transfer throughput of a ShardedBank with increasing numbers of shards, with a given fraction of transfers crossing shards.
+ * Every patron gets a SavingsAccount with the same balance, then several client threads each keep a window of transfers between
+ * random accounts outstanding. That no transfer is lost or applied twice under this load is checked by the unit tests.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Threads(4)
+@State(Scope.Benchmark)
+public class ShardBenchmark {
+    private static final int WINDOW = 256;
+    private static final long BALANCE = 1_000_000;
+
+    @Param({"1", "2", "4"})
+    public int shards;
+
+    @Param({"100000"})
+    public int patrons;
+
+    @Param({"0.1"})
+    public double crossShard;
+
+    ShardedBank bank;
+    //accounts grouped by shard, so transfers can be made to stay on one shard or to cross
+    int[][] byShard;
+
+    @Setup
+    public void createBank() throws Exception {
+        this.bank = new ShardedBank(new StockExchange(), this.shards);
+        int[] accounts = new int[this.patrons];
+        int[] counts = new int[this.shards];
+        for(int i = 0; i < this.patrons; i++) {
+            Patron patron = this.bank.createNewPatron().join();
+            accounts[i] = this.bank.openNewSavingsAccount(patron.getId()).join();
+            this.bank.execute(accounts[i], CashTransaction.ofMinorUnits(Transaction.TxType.DEPOSIT, BALANCE)).join();
+            counts[this.bank.shardOf(accounts[i])]++;
+        }
+        this.byShard = new int[this.shards][];
+        for(int s = 0; s < this.shards; s++)
+            this.byShard[s] = new int[counts[s]];
+        int[] next = new int[this.shards];
+        for(int account : accounts) {
+            int shard = this.bank.shardOf(account);
+            this.byShard[shard][next[shard]++] = account;
+        }
+    }
+
+    @TearDown
+    public void closeBank() {
+        this.bank.close();
+    }
+
+    /**
+     * a client's window of outstanding transfers
+     */
+    @State(Scope.Thread)
+    public static class Client {
+        final Random random = new Random();
+        final CompletableFuture<?>[] window = new CompletableFuture<?>[WINDOW];
+        int next;
+
+        @TearDown(Level.Iteration)
+        public void drain() {
+            for(int i = 0; i < WINDOW; i++) {
+                if(this.window[i] != null)
+                    this.window[i].join();
+                this.window[i] = null;
+            }
+        }
+    }
+
+    @Benchmark
+    public CompletableFuture<?> transfer(Client client) {
+        Random random = client.random;
+        int from = random.nextInt(this.byShard.length);
+        int to = from;
+        if(this.byShard.length > 1 && random.nextDouble() < this.crossShard)
+            to = (from + 1 + random.nextInt(this.byShard.length - 1)) % this.byShard.length;
+        int slot = client.next++ & (WINDOW - 1);
+        if(client.window[slot] != null)
+            client.window[slot].join();
+        CompletableFuture<?> future = this.bank.transfer(this.byShard[from][random.nextInt(this.byShard[from].length)],
+                this.byShard[to][random.nextInt(this.byShard[to].length)], 1 + random.nextInt(100));
+        client.window[slot] = future;
+        return future;
+    }
+}
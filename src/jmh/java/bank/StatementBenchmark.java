@@ -0,0 +1,142 @@
+package bank;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * Measures statement generation in each StatementWriter format, in two cases:
+ *   single  one Patron with a brokerage history of the given length, to show (with the gc profiler) that the bytes allocated per
+ *           statement stay the same however long the history is
+ *   bulk    Bank.writeStatements over many Patrons, on fork-join pools of the given parallelism
+ * Statements are written to a temporary directory, which is deleted afterwards. A history of 10M transactions takes about 500MB of
+ * heap, so give the forked JVM e.g. -Xmx1g before adding that size.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+public class StatementBenchmark {
+    private static final int LISTINGS = 100;
+    private static final int BULK_TRADES_PER_PATRON = 50;
+
+    @Param({"CSV", "BINARY"})
+    public StatementWriter.Format format;
+
+    Path directory;
+    StatementWriter writer;
+
+    @Setup
+    public void createDirectory() throws IOException {
+        this.directory = Files.createTempDirectory("statements");
+        this.writer = new StatementWriter(this.format);
+    }
+
+    @TearDown
+    public void deleteDirectory() throws IOException {
+        try(Stream<Path> files = Files.walk(this.directory)) {
+            for(Path file : files.sorted((a, b) -> b.compareTo(a)).toList())
+                Files.delete(file);
+        }
+    }
+
+    /**
+     * one Patron with a long brokerage history
+     */
+    @State(Scope.Benchmark)
+    public static class Single {
+        @Param({"10", "1000", "100000"})
+        public int transactions;
+
+        Patron patron;
+
+        @Setup
+        public void createPatron() throws Exception {
+            StockListing[] listings = new StockListing[LISTINGS];
+            this.patron = newPatron(newBank(listings));
+            BrokerageAccount account = this.patron.getBrokerageAccount();
+            for(int i = 0; i < this.transactions; i++)
+                account.tryExecuteTrade((i & 1) == 0 ? Transaction.TxType.BUY : Transaction.TxType.SELL, listings[(i >> 1) % LISTINGS], 1);
+        }
+    }
+
+    /**
+     * many Patrons with short histories
+     */
+    @State(Scope.Benchmark)
+    public static class Bulk {
+        @Param({"10000"})
+        public int patrons;
+
+        @Param({"1", "2", "4"})
+        public int threads;
+
+        Bank bank;
+        ForkJoinPool pool;
+
+        @Setup
+        public void createBank() throws Exception {
+            StockListing[] listings = new StockListing[LISTINGS];
+            this.bank = newBank(listings);
+            Random random = new Random(42);
+            for(int i = 0; i < this.patrons; i++) {
+                BrokerageAccount trader = newPatron(this.bank).getBrokerageAccount();
+                for(int t = 0; t < BULK_TRADES_PER_PATRON; t++)
+                    trader.tryExecuteTrade((t & 1) == 0 ? Transaction.TxType.BUY : Transaction.TxType.SELL, listings[random.nextInt(LISTINGS)], 1);
+            }
+            this.pool = new ForkJoinPool(this.threads);
+        }
+
+        @TearDown
+        public void shutdownPool() {
+            this.pool.shutdown();
+        }
+    }
+
+    @Benchmark
+    public Path single(Single single) throws IOException {
+        Path file = this.directory.resolve("single" + this.format.getExtension());
+        this.writer.write(single.patron, file);
+        return file;
+    }
+
+    @Benchmark
+    public int bulk(Bulk bulk) throws Exception {
+        Path bulkDirectory = this.directory.resolve("bulk");
+        int written = bulk.pool.submit(() -> bulk.bank.writeStatements(bulkDirectory, this.format)).get();
+        if(written != bulk.patrons)
+            throw new IllegalStateException("Missing statements");
+        return written;
+    }
+
+    //a Bank whose exchange has LISTINGS listings, stored into listings
+    private static Bank newBank(StockListing[] listings) {
+        StockExchange exchange = new StockExchange();
+        Bank bank = new Bank(exchange);
+        for(int i = 0; i < LISTINGS; i++) {
+            exchange.createNewListing("SYM" + i, 1 + i, Integer.MAX_VALUE);
+            listings[i] = exchange.getStockListing("SYM" + i);
+        }
+        return bank;
+    }
+
+    private static Patron newPatron(Bank bank) throws Exception {
+        Patron patron = bank.createNewPatron();
+        bank.openNewSavingsAccount(patron);
+        bank.openNewBrokerageAccount(patron);
+        patron.getSavingsAccount().executeTransaction(new CashTransaction(Transaction.TxType.DEPOSIT, 1e9));
+        return patron;
+    }
+}
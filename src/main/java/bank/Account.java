@@ -0,0 +1,185 @@
+package bank;
+
+import java.util.List;
+
+/**
+ * the account number, patron, and transaction history MUST be stored in instance variables of Account, NOT in other classes or subclasses.
+ */
+public abstract class Account {
+    private int accountNumber;
+    private Patron patron;
+    protected TransactionLog transactions;
+
+    /**
+     * @param accountNumber the account number assigned by the bank to this new account
+     * @param patron the Patron who this account is being created for
+     */
+    protected Account(int accountNumber, Patron patron){
+        this.accountNumber = accountNumber;
+        this.patron = patron;
+        this.transactions = new TransactionLog(patron.getBank().getExchange());
+    }
+
+    /**
+     * @return the account number
+     */
+    public int getAccountNumber() {
+        return this.accountNumber;
+    }
+
+    /**
+     * @return the Patron who owns this account
+     */
+    public Patron getPatron() {
+        return this.patron;
+    }
+
+    /**
+     * @return an unmodifiable List of transactions executed on this account. The only way to add a transaction to this account is to call executeTransaction.
+     * The list covers the transactions executed before this call and is safe to iterate while other threads keep trading on this account.
+     * Its elements are rebuilt from the account's TransactionLog as they are read.
+     * @see #executeTransaction(Transaction)
+     * @see TransactionLog#view()
+     */
+    public List<Transaction> getTransactionHistory() {
+        return this.transactions.view();
+    }
+
+    /**
+     * Find the transactions executed on this account in a time range, of a type or of a listing, one page at a time,
+     * without reading the rest of the history. E.g. the last 50 transactions: new HistoryQuery().newestFirst().limit(50)
+     * @param query
+     * @return the first page of matching transactions after query's cursor
+     * @see HistoryPage#getNextCursor()
+     */
+    public HistoryPage getTransactionHistory(HistoryQuery query) {
+        if(query == null)
+            throw new IllegalArgumentException("Query cannot be null");
+        return this.transactions.query(query);
+    }
+
+    /**
+     * @return the number of transactions executed on this account so far
+     */
+    int getHistorySize() {
+        return this.transactions.size();
+    }
+
+    /**
+     * Copy the fields of a block of this account's transaction history into the given arrays, without creating Transaction objects.
+     * Must only be called with from + count at most a getHistorySize() read beforehand.
+     * @see TransactionLog#copyTo(int, int, long[], byte[], long[], int[])
+     */
+    void copyHistory(int from, int count, long[] timestamps, byte[] types, long[] amounts, int[] listingIds) {
+        this.transactions.copyTo(from, count, timestamps, types, amounts, listingIds);
+    }
+
+    /**
+     * Append a block of history loaded from a snapshot, as copied by copyHistory, without re-applying it to the balance or holdings.
+     * @see Snapshot
+     */
+    void restoreHistory(int count, long[] timestamps, byte[] types, long[] amounts, int[] listingIds) {
+        this.transactions.addAll(count, timestamps, types, amounts, listingIds);
+    }
+
+    /**
+     * Make room in this account's transaction history for at least capacity transactions, so that recording the next ones doesn't allocate.
+     * @param capacity
+     * @see BrokerageAccount#executeTrade(Transaction.TxType, StockListing, int)
+     */
+    void ensureHistoryCapacity(int capacity) {
+        this.transactions.ensureCapacity(capacity);
+    }
+
+    /**
+     * Publish a transaction just executed on this account to the Bank's TransactionEventStream, if it is enabled.
+     * Must be called under the Patron's lock, so that the stream sees each account's transactions in the order they were executed.
+     * @param type
+     * @param amount in minor units for a cash transaction, the number of shares for a stock transaction
+     * @param listing the listing traded, or null for a cash transaction
+     * @param nanoTimestamp
+     */
+    void publish(Transaction.TxType type, long amount, StockListing listing, long nanoTimestamp) {
+        TransactionEventStream events = this.patron.getBank().getEventStream();
+        if(events != null)
+            events.publish(this.accountNumber, type, amount, listing == null ? TransactionEventStream.NO_LISTING : listing.getId(), nanoTimestamp);
+    }
+
+    /**
+     * Record t, which has just been executed on this account, in the Bank's journal. Must be called under the Patron's lock,
+     * so that the journal sees each Patron's transactions in the order they were executed. Trades are journaled together with
+     * their cash leg by the BrokerageAccount.
+     * @param t
+     * @return the journal position to pass to awaitDurable, or -1 if the Bank isn't journaled
+     * @see #awaitDurable(long)
+     */
+    protected long journal(CashTransaction t) {
+        Journal journal = this.patron.getBank().getJournal();
+        if(journal == null)
+            return -1;
+        return journal.cashTransaction(this.accountNumber, t.getType(), t.getMinorAmount(), t.getNanoTimestamp());
+    }
+
+    /**
+     * Wait until the journal record at position is durable, after the Patron's lock has been released.
+     * A transaction nested inside another one on the same Patron doesn't wait, since the outer transaction's record comes later
+     * and waiting for it covers both.
+     * @param position a value returned by journal, or -1
+     * @see Journal#awaitDurable(long)
+     */
+    protected void awaitDurable(long position) {
+        if(position >= 0 && !this.patron.getLock().isHeldByCurrentThread())
+            this.patron.getBank().getJournal().awaitDurable(position);
+    }
+
+    /**
+     * Execute the given transaction (tx) on this account.
+     * Implementations must hold the Patron's lock for the whole transaction so that it is atomic.
+     * @param tx
+     * @throws InsufficientAssetsException if the Patron lacks the needed assets to execute tx
+     * @throws InvalidTransactionException if the type of transaction passed in is not valid/relevant to the type of account this method is called on
+     */
+    abstract void executeTransaction(Transaction tx) throws InsufficientAssetsException, InvalidTransactionException;
+
+    /**
+     * Execute the given transaction (tx) on this account like executeTransaction, but report a rejection as a status code instead of
+     * throwing, so that rejecting a transaction doesn't create an exception (with its stack trace) for it.
+     * @param tx
+     * @return TxStatus.OK if tx was executed, otherwise the reason it was rejected, in which case nothing changed
+     * @see TxStatus
+     * @see #executeTransaction(Transaction)
+     */
+    abstract byte tryExecute(Transaction tx);
+
+    /**
+     * The exception-based API over tryExecute: throw the exception that reports status for tx, if status isn't OK.
+     * @param status a value returned by tryExecute(tx) other than WRONG_TX_TYPE, which each account reports in its own way
+     * @param tx
+     * @throws InsufficientAssetsException if status is INSUFFICIENT_CASH or INSUFFICIENT_SHARES
+     * @throws InvalidTransactionException if status is NO_INVENTORY or INVALID_AMOUNT
+     */
+    protected void throwIfRejected(byte status, Transaction tx) throws InsufficientAssetsException, InvalidTransactionException {
+        switch(status) {
+            case TxStatus.OK -> {
+            }
+            case TxStatus.INSUFFICIENT_CASH, TxStatus.INSUFFICIENT_SHARES -> throw new InsufficientAssetsException(tx, this.patron);
+            case TxStatus.NO_INVENTORY -> throw new InvalidTransactionException("Not enough available stocks", tx.getType());
+            default -> throw new InvalidTransactionException("Invalid Amount", tx.getType());
+        }
+    }
+
+    /**
+     * Note that the only way to CHANGE the value of an account is by running transactions, i.e. by calling the executeTransaction method.
+     * @return returns the value of this account
+     * @see #executeTransaction(Transaction)
+     */
+    public double getValue() {
+        return Money.toDouble(this.getMinorValue());
+    }
+
+    /**
+     * @return the value of this account in minor units
+     * @see Money
+     */
+    abstract long getMinorValue();
+}
\ No newline at end of file
@@ -1,3 +1,5 @@
+package bank;
+
 /**
  * an exception to be thrown by the bank if it has reason to refuse to create an account
  * @see Bank#openNewSavingsAccount(Patron)
@@ -0,0 +1,100 @@
+package bank;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.Arrays;
+
+/**
+ * The balances of every SavingsAccount of a Bank, kept side by side in chunks of a long[] instead of one field per account object,
+ * so that bulk jobs such as interest accrual can sweep them as primitive arrays. Each account owns one slot, handed out when it is
+ * opened; the chunk a slot is in never moves, so the store grows without copying balances.
+ *
+ * A balance is written under its Patron's lock and read without it, like the volatile field it replaces: single slots are accessed
+ * with volatile reads and writes. A job holding the locks of a chunk's owners may read that chunk's array directly.
+ * @see SavingsAccount
+ * @see InterestAccrual
+ */
+class BalanceStore {
+    static final int CHUNK_BITS = 12;
+    static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+    private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+    private static final VarHandle SLOTS = MethodHandles.arrayElementVarHandle(long[].class);
+
+    private volatile long[][] balances;
+    private volatile SavingsAccount[][] owners;
+    private volatile int size;
+
+    BalanceStore() {
+        this.balances = new long[0][];
+        this.owners = new SavingsAccount[0][];
+    }
+
+    /**
+     * @param owner the account that will own the slot
+     * @return a new slot, with a balance of 0
+     */
+    synchronized int allocate(SavingsAccount owner) {
+        int slot = this.size;
+        int chunk = slot >>> CHUNK_BITS;
+        if(chunk == this.balances.length) {
+            long[][] balances = Arrays.copyOf(this.balances, Math.max(4, chunk * 2));
+            SavingsAccount[][] owners = Arrays.copyOf(this.owners, balances.length);
+            for(int c = chunk; c < balances.length; c++) {
+                balances[c] = new long[CHUNK_SIZE];
+                owners[c] = new SavingsAccount[CHUNK_SIZE];
+            }
+            this.balances = balances;
+            this.owners = owners;
+        }
+        this.owners[chunk][slot & CHUNK_MASK] = owner;
+        this.size = slot + 1;
+        return slot;
+    }
+
+    /**
+     * @param slot
+     * @return the balance in minor units
+     */
+    long get(int slot) {
+        return (long) SLOTS.getVolatile(this.balances[slot >>> CHUNK_BITS], slot & CHUNK_MASK);
+    }
+
+    /**
+     * @param slot
+     * @param balance in minor units
+     */
+    void set(int slot, long balance) {
+        SLOTS.setVolatile(this.balances[slot >>> CHUNK_BITS], slot & CHUNK_MASK, balance);
+    }
+
+    /**
+     * @return the number of slots handed out
+     */
+    int size() {
+        return this.size;
+    }
+
+    /**
+     * @param size a size() read beforehand
+     * @return the number of chunks holding the first size slots
+     */
+    static int chunkCount(int size) {
+        return (size + CHUNK_MASK) >>> CHUNK_BITS;
+    }
+
+    /**
+     * @param chunk
+     * @return the balances of the slots chunk * CHUNK_SIZE and up; only to be read directly under the owners' locks
+     */
+    long[] balancesOf(int chunk) {
+        return this.balances[chunk];
+    }
+
+    /**
+     * @param chunk
+     * @return the owners of the slots chunk * CHUNK_SIZE and up; null past size()
+     */
+    SavingsAccount[] ownersOf(int chunk) {
+        return this.owners[chunk];
+    }
+}
@@ -0,0 +1,708 @@
+package bank;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.IntStream;
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * The Bank may be used by many client threads at once. Transactions are made atomic by the owning Patron's lock
+ * (see Patron#getLock()), the Bank's own collections are concurrent, and there is no bank-wide lock.
+ */
+public class Bank {
+    private static final int PARALLEL_BATCH_THRESHOLD = 4096;
+    private static final AtomicInteger NEXT_METRICS_ID = new AtomicInteger();
+
+    private Set<Account> accounts;
+    private IdIndex<Account> accountsByNumber;
+    private Set<Patron> patrons;
+    private IdIndex<Patron> patronsById;
+    private final BalanceStore balances;
+    private StockExchange exchange;
+    private volatile Journal journal;
+    private final ReentrantLock checkpointLock;
+    private volatile TransactionMetrics metrics;
+    private ObjectName metricsName;
+    private volatile TransactionEventStream events;
+
+    /**
+     * @param exchange the stock exchange on which all stock are listed
+     * @throws IllegalArgumentException if exchange is null
+     */
+    protected Bank(StockExchange exchange) {
+        this(exchange, 0, 1);
+    }
+
+    /**
+     * Create a Bank that only hands out the patron ids and account numbers firstId, firstId + idStride, firstId + 2 * idStride, ...
+     * so that several Banks sharing an exchange never hand out the same one, and the Bank holding any id can be found from it.
+     * @param exchange the stock exchange on which all stock are listed
+     * @param firstId the first patron id and account number
+     * @param idStride the difference between consecutive ids
+     * @throws IllegalArgumentException if exchange is null, firstId < 0 or idStride <= firstId
+     * @see ShardedBank
+     */
+    Bank(StockExchange exchange, int firstId, int idStride) {
+        if(exchange == null)
+            throw new IllegalArgumentException("Exchange cannot be null");
+        if(firstId < 0 || idStride <= firstId)
+            throw new IllegalArgumentException("Ids must satisfy 0 <= firstId < idStride");
+        this.exchange = exchange;
+        this.accounts = ConcurrentHashMap.newKeySet();
+        this.accountsByNumber = new IdIndex<>(firstId, idStride);
+        this.patrons = ConcurrentHashMap.newKeySet();
+        this.patronsById = new IdIndex<>(firstId, idStride);
+        this.balances = new BalanceStore();
+        this.checkpointLock = new ReentrantLock();
+    }
+
+    /**
+     * Create a Bank whose state is rebuilt from the journal in directory, and which journals every later change to that directory.
+     * If the directory holds no journal yet, the Bank starts out empty. If it holds a snapshot, the newest one is loaded, including
+     * every account's transaction history, and only the journal segments written after it are read.
+     * @param exchange an exchange with no listings; the journaled listings are recreated on it
+     * @param directory the directory holding the journal's segment files
+     * @param policy when journal records are forced to disk
+     * @return the recovered Bank
+     * @throws IOException if the journal can't be read or written
+     * @throws IllegalArgumentException if exchange is null or already has listings
+     * @see Journal
+     * @see #checkpoint()
+     */
+    protected static Bank recover(StockExchange exchange, Path directory, Journal.FsyncPolicy policy) throws IOException {
+        if(exchange == null || !exchange.getAllCurrentListings().isEmpty())
+            throw new IllegalArgumentException("Exchange must exist and have no listings");
+        Bank bank = new Bank(exchange);
+        Restorer restorer = bank.new Restorer();
+        long covered = Snapshot.loadLatest(directory, restorer);
+        Journal journal = Journal.open(directory, policy, restorer, covered + 1);
+        bank.journal = journal;
+        exchange.setJournal(journal);
+        return bank;
+    }
+
+    /**
+     * Create a new Patron whose ID is the next unique available Patron ID and whose Bank is set to this bank.
+     * Add the new Patron to the Bank's Set of Patrons.
+     * No two Patrons can have the same ID. Each ID which is assigned should be greater than the previous ID.
+     * @return a new Patron with a unique ID, but no accounts
+     */
+    public Patron createNewPatron() throws ApplicationDeniedException {
+        Patron newPatron = new Patron(allocate(this.patronsById), this);
+        this.addPatron(newPatron);
+        Journal journal = this.journal;
+        if(journal != null)
+            journal.awaitDurable(journal.patronCreated(newPatron.getId()));
+        return newPatron;
+    }
+
+    /**
+     * Create a new SavingsAccount for the Patron.
+     * The SavingsAccount's id must be the next unique account ID available.
+     * No two accounts of ANY KIND can have the same ID. Each ID which is assigned should be greater than the previous ID.
+     * Add the new SavingsAccount to the Bank's Set of Accounts.
+     * @param p the Patron for whom the account is being created
+     * @return the SavingsAccount's id
+     * @throws ApplicationDeniedException thrown if Patron already has a SavingsAccount
+     * @throws IllegalArgumentException if p is null
+     */
+    public int openNewSavingsAccount(Patron p) throws ApplicationDeniedException, IllegalArgumentException {
+        if(p == null)
+            throw new IllegalArgumentException("Patron cannot be null");
+        ReentrantLock lock = p.getLock();
+        long position = -1;
+        int savingsId;
+        lock.lock();
+        try {
+            if(p.getSavingsAccount() != null)
+                throw new ApplicationDeniedException("Patron already has a savings account");
+
+            savingsId = allocate(this.accountsByNumber);
+            SavingsAccount savingsAcc = new SavingsAccount(savingsId, p);
+            p.setSavingsAccount(savingsAcc);
+            this.addAccount(savingsAcc);
+            if(this.journal != null)
+                position = this.journal.savingsAccountOpened(p.getId(), savingsId);
+        } finally {
+            lock.unlock();
+        }
+        if(position >= 0)
+            this.journal.awaitDurable(position);
+        return savingsId;
+    }
+
+    /**
+     * Create a new BrokerageAccount for the Patron.
+     * The BrokerageAccount's id must be the next unique account ID available.
+     * No two accounts of ANY KIND can have the same ID. Each ID which is assigned should be greater than the previous ID.
+     * Add the new BrokerageAccount to the Bank's Set of Accounts.
+     * @param p the Patron for whom the account is being created
+     * @return the BrokerageAccount's id
+     * @throws ApplicationDeniedException thrown if the Patron doesn't have a SavingsAccount or DOES already have a BorkerageAccount
+     * @throws IllegalArgumentException if p is null
+     */
+    public int openNewBrokerageAccount(Patron p) throws ApplicationDeniedException, IllegalArgumentException {
+        if(p == null)
+            throw new IllegalArgumentException("Patron cannot be null");
+        ReentrantLock lock = p.getLock();
+        long position = -1;
+        int brokerageId;
+        lock.lock();
+        try {
+            if(p.getBrokerageAccount() != null)
+                throw new ApplicationDeniedException("Patron already has a brokerage account");
+
+            brokerageId = allocate(this.accountsByNumber);
+            BrokerageAccount brokerageAcc = new BrokerageAccount(brokerageId, p);
+            p.setBrokerageAccount(brokerageAcc);
+            this.addAccount(brokerageAcc);
+            if(this.journal != null)
+                position = this.journal.brokerageAccountOpened(p.getId(), brokerageId);
+        } finally {
+            lock.unlock();
+        }
+        if(position >= 0)
+            this.journal.awaitDurable(position);
+        return brokerageId;
+    }
+
+    private static int allocate(IdIndex<?> ids) throws ApplicationDeniedException {
+        try {
+            return ids.allocate();
+        } catch(IllegalStateException e) {
+            throw new ApplicationDeniedException("The bank has run out of ids");
+        }
+    }
+
+    private void addPatron(Patron patron) {
+        this.patrons.add(patron);
+        this.patronsById.put(patron.getId(), patron);
+    }
+
+    private void addAccount(Account account) {
+        this.accounts.add(account);
+        this.accountsByNumber.put(account.getAccountNumber(), account);
+    }
+
+    /**
+     * Find an account in constant time, without boxing accountNumber.
+     * @param accountNumber
+     * @return the account with the given number, or null if there is none
+     * @see IdIndex
+     */
+    public Account getAccount(int accountNumber) {
+        return this.accountsByNumber.get(accountNumber);
+    }
+
+    /**
+     * Find a Patron in constant time, without boxing patronId.
+     * @param patronId
+     * @return the Patron with the given id, or null if there is none
+     * @see IdIndex
+     */
+    public Patron getPatron(int patronId) {
+        return this.patronsById.get(patronId);
+    }
+
+    /**
+     * Execute every transaction in batch on the account it was added with, and report the result of each one instead of throwing.
+     * Items are grouped by Patron: each Patron's lock is taken once for all of that Patron's items, which run in the order they were added.
+     * Different Patrons' groups have no ordering between them and large batches run them in parallel on the common fork-join pool.
+     * If the Bank is journaled, the whole batch waits for the journal once, after every item has run.
+     * Listings need no grouping since their inventory is updated lock-free.
+     * @param batch
+     * @return one result code per item, at the item's index
+     * @throws IllegalArgumentException if batch is null
+     * @see TransactionBatch#OK
+     */
+    public byte[] executeBatch(TransactionBatch batch) {
+        if(batch == null)
+            throw new IllegalArgumentException("Batch cannot be null");
+        int size = batch.size();
+        byte[] results = new byte[size];
+        Account[] targets = new Account[size];
+        //sort by patron id, then by position in the batch, so each patron's items form one run in their original order
+        long[] order = new long[size];
+        int found = 0;
+        for(int i = 0; i < size; i++) {
+            Account account = this.getAccount(batch.getAccountNumber(i));
+            if(account == null) {
+                results[i] = TransactionBatch.NO_SUCH_ACCOUNT;
+                continue;
+            }
+            targets[i] = account;
+            order[found++] = ((long) account.getPatron().getId() << 32) | i;
+        }
+        Arrays.sort(order, 0, found);
+
+        int[] groupStarts = new int[found + 1];
+        int groups = 0;
+        for(int i = 0; i < found; i++) {
+            if(i == 0 || (order[i] >>> 32) != (order[i - 1] >>> 32))
+                groupStarts[groups++] = i;
+        }
+        groupStarts[groups] = found;
+
+        IntStream stream = IntStream.range(0, groups);
+        if(found >= PARALLEL_BATCH_THRESHOLD)
+            stream = stream.parallel();
+        stream.forEach(g -> {
+            ReentrantLock lock = targets[(int) order[groupStarts[g]]].getPatron().getLock();
+            lock.lock();
+            try {
+                for(int k = groupStarts[g]; k < groupStarts[g + 1]; k++) {
+                    int i = (int) order[k];
+                    results[i] = executeForBatch(targets[i], batch.getTransaction(i));
+                }
+            } finally {
+                lock.unlock();
+            }
+        });
+
+        Journal journal = this.journal;
+        if(journal != null)
+            journal.awaitDurable(journal.getWrittenPosition());
+        return results;
+    }
+
+    //rejected items are common in a settlement file, so they go through tryExecute rather than cost an exception each
+    private static byte executeForBatch(Account account, Transaction tx) {
+        byte status = account.tryExecute(tx);
+        if(status == TxStatus.OK)
+            return TransactionBatch.OK;
+        return TxStatus.isInsufficientAssets(status) ? TransactionBatch.INSUFFICIENT_ASSETS : TransactionBatch.INVALID_TRANSACTION;
+    }
+
+    /**
+     * Move amount from one SavingsAccount to another as a single atomic step: no thread ever sees the money gone from one account and
+     * not yet in the other, and a journaled Bank records both legs in one journal record. Both Patrons' locks are held for the move,
+     * always taken in order of Patron id, so transfers in opposite directions between the same Patrons can never deadlock.
+     * Each leg is recorded in its account's history, as a WITHDRAW and a DEPOSIT with the same timestamp.
+     * @param fromAccount the number of the SavingsAccount to withdraw from
+     * @param toAccount the number of the SavingsAccount to deposit to
+     * @param amount in minor units
+     * @return TxStatus.OK, WRONG_TX_TYPE if either account isn't a SavingsAccount, INSUFFICIENT_CASH if amount is more than the
+     * source's balance, or INVALID_AMOUNT if it would overflow the target's balance; unless OK, no money moved
+     * @throws IllegalArgumentException if either account doesn't exist, they are the same account, or amount <= 0
+     */
+    public byte transfer(int fromAccount, int toAccount, long amount) {
+        if(amount <= 0)
+            throw new IllegalArgumentException("Amount must be > 0");
+        Account source = this.requireAccount(fromAccount);
+        Account target = this.requireAccount(toAccount);
+        if(source == target)
+            throw new IllegalArgumentException("Cannot transfer to the same account");
+        Journal journal = this.journal;
+        long position = this.transferLocked(source, target, amount, journal);
+        if(position < 0)
+            return (byte) -position;
+        if(journal != null)
+            journal.awaitDurable(position);
+        return TxStatus.OK;
+    }
+
+    /**
+     * Make several transfers out of one SavingsAccount, e.g. a payroll run. Each transfer is atomic on its own as in
+     * transfer(int, int, long), and they run in order, so a transfer rejected for INSUFFICIENT_CASH doesn't stop smaller ones after it.
+     * Every account is looked up before any money moves, and a journaled Bank waits for the journal once, after the last transfer.
+     * @param fromAccount the number of the SavingsAccount to withdraw from
+     * @param toAccounts the numbers of the SavingsAccounts to deposit to
+     * @param amounts in minor units, one per account in toAccounts
+     * @return the TxStatus of each transfer, at its index
+     * @throws IllegalArgumentException if the arrays are null or of different lengths, any account doesn't exist, a target is the
+     * source account, or an amount is <= 0
+     * @see #transfer(int, int, long)
+     */
+    public byte[] transfer(int fromAccount, int[] toAccounts, long[] amounts) {
+        if(toAccounts == null || amounts == null || toAccounts.length != amounts.length)
+            throw new IllegalArgumentException("Need one amount per target account");
+        Account source = this.requireAccount(fromAccount);
+        Account[] targets = new Account[toAccounts.length];
+        for(int i = 0; i < targets.length; i++) {
+            if(amounts[i] <= 0)
+                throw new IllegalArgumentException("Amount must be > 0");
+            targets[i] = this.requireAccount(toAccounts[i]);
+            if(targets[i] == source)
+                throw new IllegalArgumentException("Cannot transfer to the same account");
+        }
+        Journal journal = this.journal;
+        byte[] results = new byte[targets.length];
+        for(int i = 0; i < targets.length; i++) {
+            long position = this.transferLocked(source, targets[i], amounts[i], journal);
+            results[i] = position < 0 ? (byte) -position : TxStatus.OK;
+        }
+        if(journal != null)
+            journal.awaitDurable(journal.getWrittenPosition());
+        return results;
+    }
+
+    //takes both Patrons' locks in id order and moves the money; returns the journal position, 0 if unjournaled, or -status if rejected
+    private long transferLocked(Account source, Account target, long amount, Journal journal) {
+        if(!(source instanceof SavingsAccount from) || !(target instanceof SavingsAccount to))
+            return -TxStatus.WRONG_TX_TYPE;
+        Patron a = from.getPatron();
+        Patron b = to.getPatron();
+        ReentrantLock first = (a.getId() < b.getId() ? a : b).getLock();
+        ReentrantLock second = (a.getId() < b.getId() ? b : a).getLock();
+        first.lock();
+        second.lock();
+        try {
+            if(from.getMinorValue() < amount)
+                return -TxStatus.INSUFFICIENT_CASH;
+            if(to.getMinorValue() > Long.MAX_VALUE - amount)
+                return -TxStatus.INVALID_AMOUNT;
+            long timestamp = System.nanoTime();
+            from.applyCashLeg(Transaction.TxType.WITHDRAW, amount, timestamp);
+            to.applyCashLeg(Transaction.TxType.DEPOSIT, amount, timestamp);
+            return journal == null ? 0 : journal.transfer(from.getAccountNumber(), to.getAccountNumber(), amount, timestamp);
+        } finally {
+            second.unlock();
+            first.unlock();
+        }
+    }
+
+    private Account requireAccount(int accountNumber) {
+        Account account = this.getAccount(accountNumber);
+        if(account == null)
+            throw new IllegalArgumentException("No account " + accountNumber);
+        return account;
+    }
+
+    /**
+     * Aggregate the balances and holdings of every Patron into a BankReport. Patrons are split among the threads of the common
+     * fork-join pool (or of the pool this is called from), each adding to its own totals, which are merged at the end.
+     * Holdings are valued at the prices listings have when this is called. Trading is not paused; each Patron's lock
+     * is only held while their own balances are read.
+     *
+     * The report is therefore not a point-in-time view of the Bank: each Patron is read at a different moment. A transfer between
+     * two patrons, or an OrderBook trade, that runs between the reads of its two sides is counted on both sides or on neither, so
+     * the totals can be off by the amounts in flight. Use createConsistentReport when the totals must balance exactly.
+     * @return the report
+     * @see BankReport
+     * @see #createConsistentReport()
+     */
+    public BankReport createReport() {
+        List<StockListing> listings = this.exchange.getAllCurrentListings();
+        long[] prices = pricesOf(listings);
+        BankReport.Accumulator totals = this.patrons.parallelStream()
+                .collect(() -> new BankReport.Accumulator(prices), BankReport.Accumulator::add, BankReport.Accumulator::merge);
+        return new BankReport(listings, prices, totals);
+    }
+
+    /**
+     * Aggregate the balances and holdings of every Patron into a BankReport that is a point-in-time view of the Bank.
+     * Every Patron's lock is taken, in id order like any other multi-patron operation, and held only while their balances and share
+     * counts are copied, in parallel, so no transaction is counted on one side only. The copies are then added up as in createReport
+     * after every lock has been released. Trading waits for the copy, which is short next to the aggregation, but not for the rest.
+     * Patrons created while the locks are being taken are not included.
+     * @return the report
+     * @see #createReport()
+     */
+    public BankReport createConsistentReport() {
+        Patron[] all = this.patrons.toArray(new Patron[0]);
+        Arrays.sort(all, Comparator.comparingInt(Patron::getId));
+        List<StockListing> listings = this.exchange.getAllCurrentListings();
+        long[] prices = pricesOf(listings);
+        BankReport.PatronCopy[] copies = new BankReport.PatronCopy[all.length];
+        int locked = 0;
+        try {
+            for(; locked < all.length; locked++)
+                all[locked].getLock().lock();
+            //the workers read patrons whose locks this thread holds, which the locks published to this thread before the fork
+            IntStream.range(0, all.length).parallel().forEach(i -> copies[i] = new BankReport.PatronCopy(all[i]));
+        } finally {
+            while(locked > 0)
+                all[--locked].getLock().unlock();
+        }
+        BankReport.Accumulator totals = Arrays.stream(copies).parallel()
+                .collect(() -> new BankReport.Accumulator(prices), BankReport.Accumulator::add, BankReport.Accumulator::merge);
+        return new BankReport(listings, prices, totals);
+    }
+
+    private static long[] pricesOf(List<StockListing> listings) {
+        long[] prices = new long[listings.size()];
+        for(int id = 0; id < prices.length; id++)
+            prices[id] = listings.get(id).getMinorPrice();
+        return prices;
+    }
+
+    /**
+     * Credit interest to every SavingsAccount at once, e.g. as a nightly job. Balances are swept in parallel chunks straight from
+     * the Bank's balance store; each credit is recorded in the account's history as a DEPOSIT and journaled, without creating a
+     * CashTransaction per account. Only positive balances earn interest, rounded down to the minor unit.
+     * Trading is not paused: a Patron's lock is only held while their chunk of accounts is credited, and a Patron whose lock is
+     * busy is credited once it is free.
+     * @param rate the interest for the period, as a fraction of the balance between 0 and 1, applied to 9 decimal places
+     * @return the total interest credited, in minor units
+     * @throws IllegalArgumentException if rate is NaN or outside [0, 1]
+     * @see InterestAccrual
+     */
+    public long accrueInterest(double rate) {
+        return InterestAccrual.accrue(this.balances, InterestAccrual.scaledRate(rate), this.journal);
+    }
+
+    /**
+     * Write an account statement for every Patron into directory, one file each, streaming their history with bounded memory.
+     * Patrons are written in parallel on the common fork-join pool (or the pool this is called from), and trading is not paused.
+     * @param directory created if it doesn't exist
+     * @param format
+     * @return the number of statements written
+     * @throws IOException if a statement can't be written
+     * @throws IllegalArgumentException if format is null
+     * @see StatementWriter
+     */
+    public int writeStatements(Path directory, StatementWriter.Format format) throws IOException {
+        return new StatementWriter(format).writeAll(this, directory);
+    }
+
+    /**
+     *
+     * @return an unmodifiable set of all the accounts (both Savings and Brokerage)
+     * @see Collections#unmodifiableSet(Set)
+     */
+    protected Set<Account> getAllAccounts() {
+        return Collections.unmodifiableSet(accounts);
+    }
+
+    /**
+     *
+     * @return an unmodifiable set of all the Patrons
+     * @see Collections#unmodifiableSet(Set)
+     */
+    protected Set<Patron> getAllPatrons() {
+        return Collections.unmodifiableSet(patrons);
+    }
+
+    /**
+     * @return the exchange used by this Bank
+     */
+    protected StockExchange getExchange() {
+        return this.exchange;
+    }
+
+    /**
+     * @return the journal recording this Bank's changes, or null if the Bank isn't journaled
+     * @see #recover(StockExchange, Path, Journal.FsyncPolicy)
+     */
+    Journal getJournal() {
+        return this.journal;
+    }
+
+    /**
+     * @return the store holding the balance of every SavingsAccount of this Bank
+     */
+    BalanceStore getBalanceStore() {
+        return this.balances;
+    }
+
+    /**
+     * Start collecting TransactionMetrics for the transactions executed on this Bank's accounts, and register them with the
+     * platform MBean server as Bank:type=TransactionMetrics,name=bank-N so they can be read over JMX. Does nothing if they are already enabled.
+     * @return the metrics
+     * @throws IllegalStateException if the MBean can't be registered
+     * @see #disableMetrics()
+     */
+    public synchronized TransactionMetrics enableMetrics() {
+        if(this.metrics != null)
+            return this.metrics;
+        TransactionMetrics metrics = new TransactionMetrics(this.exchange);
+        try {
+            ObjectName name = new ObjectName("Bank:type=TransactionMetrics,name=bank-" + NEXT_METRICS_ID.getAndIncrement());
+            ManagementFactory.getPlatformMBeanServer().registerMBean(metrics, name);
+            this.metricsName = name;
+        } catch(JMException e) {
+            throw new IllegalStateException("Could not register the metrics MBean", e);
+        }
+        this.metrics = metrics;
+        return metrics;
+    }
+
+    /**
+     * Stop collecting TransactionMetrics and unregister their MBean. Does nothing if they aren't enabled.
+     * @see #enableMetrics()
+     */
+    public synchronized void disableMetrics() {
+        if(this.metrics == null)
+            return;
+        this.metrics = null;
+        try {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(this.metricsName);
+        } catch(JMException e) {
+            //already unregistered by someone else
+        }
+        this.metricsName = null;
+    }
+
+    /**
+     * @return the metrics being collected for this Bank, or null if metrics are disabled
+     * @see #enableMetrics()
+     */
+    TransactionMetrics getMetrics() {
+        return this.metrics;
+    }
+
+    /**
+     * Start publishing every transaction executed on this Bank's accounts to a TransactionEventStream, which downstream systems
+     * subscribe to. Does nothing but return the stream if it is already enabled.
+     * @param capacity the number of events the stream keeps for subscribers that are behind or replaying; rounded up to a power of 2
+     * @return the stream
+     * @throws IllegalArgumentException if capacity <= 0
+     * @see #disableEventStream()
+     */
+    public synchronized TransactionEventStream enableEventStream(int capacity) {
+        if(this.events == null)
+            this.events = new TransactionEventStream(this.exchange, capacity, TransactionEventStream.DEFAULT_BATCH_SIZE);
+        return this.events;
+    }
+
+    /**
+     * Stop publishing transactions and close the stream, so its subscribers complete once they have received every event.
+     * Does nothing if it isn't enabled.
+     * @see #enableEventStream(int)
+     */
+    public synchronized void disableEventStream() {
+        if(this.events == null)
+            return;
+        this.events.close();
+        this.events = null;
+    }
+
+    /**
+     * @return the stream transactions are published to, or null if it is disabled
+     * @see #enableEventStream(int)
+     */
+    TransactionEventStream getEventStream() {
+        return this.events;
+    }
+
+    /**
+     * Write a snapshot of this Bank so that the next recovery only has to replay the journal written after it.
+     * The journal's current segment is sealed, and the snapshot is built from the previous snapshot and the sealed segments
+     * in a separate shadow Bank, so transactions keep running while it is written. Only one checkpoint runs at a time.
+     * Afterwards the journal segments covered by every retained snapshot are deleted.
+     * @return the path of the snapshot file
+     * @throws IOException if the journal or the snapshot can't be read or written
+     * @throws IllegalStateException if this Bank isn't journaled
+     * @see Snapshot
+     */
+    protected Path checkpoint() throws IOException {
+        Journal journal = this.journal;
+        if(journal == null)
+            throw new IllegalStateException("Bank isn't journaled");
+        this.checkpointLock.lock();
+        try {
+            long sealed = journal.seal();
+            Path directory = journal.getDirectory();
+            Bank shadow = new Bank(new StockExchange());
+            Restorer restorer = shadow.new Restorer();
+            long covered = Snapshot.loadLatest(directory, restorer);
+            if(covered >= sealed)
+                return directory.resolve(String.format("snapshot-%020d.snap", covered));
+            Journal.replaySealed(directory, covered + 1, sealed, restorer);
+            Path snapshot = Snapshot.write(directory, shadow, sealed);
+            journal.retire(Snapshot.oldestCovered(directory));
+            return snapshot;
+        } finally {
+            this.checkpointLock.unlock();
+        }
+    }
+
+    /**
+     * Applies snapshot entries and journal records straight to the Bank's state. Transactions are restored without re-running their side effects,
+     * e.g. a BUY's record carries its cash leg, which is applied as it was recorded rather than priced again.
+     */
+    class Restorer implements Journal.Replayer {
+        @Override
+        public void patronCreated(int patronId) {
+            addPatron(new Patron(patronId, Bank.this));
+            patronsById.allocatedUpTo(patronId);
+        }
+
+        @Override
+        public void savingsAccountOpened(int patronId, int accountNumber) {
+            Patron patron = getPatron(patronId);
+            SavingsAccount account = new SavingsAccount(accountNumber, patron);
+            patron.restoreSavingsAccount(account);
+            this.opened(account);
+        }
+
+        @Override
+        public void brokerageAccountOpened(int patronId, int accountNumber) {
+            Patron patron = getPatron(patronId);
+            BrokerageAccount account = new BrokerageAccount(accountNumber, patron);
+            patron.restoreBrokerageAccount(account);
+            this.opened(account);
+        }
+
+        private void opened(Account account) {
+            addAccount(account);
+            accountsByNumber.allocatedUpTo(account.getAccountNumber());
+        }
+
+        @Override
+        public void listingCreated(String tickerSymbol, long initialPrice, int availableShares) {
+            exchange.createNewListingAtMinorPrice(tickerSymbol, initialPrice, availableShares);
+        }
+
+        StockListing listingRestored(String tickerSymbol, long price, int availableShares) {
+            exchange.createNewListingAtMinorPrice(tickerSymbol, price, availableShares);
+            return exchange.getStockListing(tickerSymbol);
+        }
+
+        void balanceRestored(int accountNumber, long balance) {
+            ((SavingsAccount) getAccount(accountNumber)).restoreBalance(balance);
+        }
+
+        void holdingRestored(int accountNumber, StockListing listing, int quantity) {
+            ((BrokerageAccount) getAccount(accountNumber)).restoreHolding(listing, quantity);
+        }
+
+        void historyRestored(int accountNumber, int count, long[] timestamps, byte[] types, long[] amounts, int[] listingIds) {
+            getAccount(accountNumber).restoreHistory(count, timestamps, types, amounts, listingIds);
+        }
+
+        @Override
+        public void availableSharesChanged(String tickerSymbol, int delta) {
+            exchange.getStockListing(tickerSymbol).restoreAvailableShares(delta);
+        }
+
+        @Override
+        public void priceChanged(String tickerSymbol, long price) {
+            exchange.getStockListing(tickerSymbol).setMinorPrice(price);
+        }
+
+        @Override
+        public void cashTransaction(int accountNumber, Transaction.TxType type, long amount, long nanoTimestamp) {
+            ((SavingsAccount) getAccount(accountNumber)).restore(new CashTransaction(type, amount, nanoTimestamp));
+        }
+
+        @Override
+        public void trade(int accountNumber, Transaction.TxType type, String tickerSymbol, int quantity, long cashAmount, long nanoTimestamp) {
+            StockListing listing = exchange.getStockListing(tickerSymbol);
+            ((BrokerageAccount) getAccount(accountNumber)).restore(new StockTransaction(listing, type, quantity, nanoTimestamp), cashAmount);
+        }
+
+        @Override
+        public void transfer(int fromAccount, int toAccount, long amount, long nanoTimestamp) {
+            ((SavingsAccount) getAccount(fromAccount)).restore(new CashTransaction(Transaction.TxType.WITHDRAW, amount, nanoTimestamp));
+            ((SavingsAccount) getAccount(toAccount)).restore(new CashTransaction(Transaction.TxType.DEPOSIT, amount, nanoTimestamp));
+        }
+
+        @Override
+        public void fill(int buyerAccount, int sellerAccount, String tickerSymbol, int quantity, long cashAmount, long nanoTimestamp) {
+            StockListing listing = exchange.getStockListing(tickerSymbol);
+            ((BrokerageAccount) getAccount(buyerAccount)).restoreFill(new StockTransaction(listing, Transaction.TxType.BUY, quantity, nanoTimestamp), cashAmount);
+            ((BrokerageAccount) getAccount(sellerAccount)).restoreFill(new StockTransaction(listing, Transaction.TxType.SELL, quantity, nanoTimestamp), cashAmount);
+        }
+    }
+}
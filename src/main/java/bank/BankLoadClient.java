@@ -0,0 +1,169 @@
+package bank;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.Socket;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Load tests a BankServer over many concurrent connections. Each connection runs on its own thread (virtual where available) as one
+ * patron: it creates the patron and both accounts and deposits cash, then until the test ends it sends a pipeline of TRADE requests,
+ * alternating BUY and SELL of one share, and waits for all their responses before sending the next pipeline.
+ * Prints one CSV line: connections, pipeline depth, seconds, requests completed, requests per second, how many were rejected or failed,
+ * and latency percentiles in microseconds, measured from sending a pipeline to reading each response.
+ *
+ * Usage: java BankLoadClient [host] [port] [connections] [pipeline depth] [seconds]
+ */
+public class BankLoadClient {
+    private static final int BUFFER_SIZE = 8192;
+
+    private final LatencyHistogram latencies = new LatencyHistogram();
+    private final LongAdder completed = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final AtomicLong failures = new AtomicLong();
+    private volatile boolean running = true;
+
+    public static void main(String[] args) throws Exception {
+        String host = args.length > 0 ? args[0] : "localhost";
+        int port = args.length > 1 ? Integer.parseInt(args[1]) : 7070;
+        int connections = args.length > 2 ? Integer.parseInt(args[2]) : 1000;
+        int depth = args.length > 3 ? Integer.parseInt(args[3]) : 8;
+        int seconds = args.length > 4 ? Integer.parseInt(args[4]) : 10;
+        new BankLoadClient().run(host, port, connections, depth, seconds);
+    }
+
+    public void run(String host, int port, int connections, int depth, int seconds) throws Exception {
+        ExecutorService threads = VirtualThreads.newThreadPerTaskExecutor("load-client", connections);
+        CountDownLatch ready = new CountDownLatch(connections);
+        CountDownLatch start = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(connections);
+        for(int c = 0; c < connections; c++) {
+            threads.execute(() -> {
+                boolean[] counted = new boolean[1];
+                try {
+                    this.connection(host, port, depth, () -> {
+                        counted[0] = true;
+                        ready.countDown();
+                    }, start);
+                } catch(Exception e) {
+                    if(this.failures.getAndIncrement() == 0)
+                        e.printStackTrace();
+                    //a connection that failed while setting up must not hold up the others
+                    if(!counted[0])
+                        ready.countDown();
+                } finally {
+                    done.countDown();
+                }
+            });
+        }
+        ready.await();
+        this.latencies.reset();
+        long begin = System.nanoTime();
+        start.countDown();
+        Thread.sleep(seconds * 1000L);
+        this.running = false;
+        long elapsed = System.nanoTime() - begin;
+        long requests = this.completed.sum();
+        done.await();
+        threads.shutdown();
+
+        System.out.println("benchmark,connections,depth,seconds,requests,requests_per_sec,rejected,failed_connections,p50_us,p99_us,p99.9_us,max_us");
+        System.out.println("bank_server_trade," + connections + "," + depth + "," + seconds + "," + requests + "," + (long) (requests / (elapsed / 1e9))
+                + "," + this.rejected.sum() + "," + this.failures.get() + "," + micros(this.latencies.getValueAtPercentile(50))
+                + "," + micros(this.latencies.getValueAtPercentile(99)) + "," + micros(this.latencies.getValueAtPercentile(99.9))
+                + "," + micros(this.latencies.getMax()));
+    }
+
+    private static String micros(long nanos) {
+        return String.format("%.1f", nanos / 1e3);
+    }
+
+    /**
+     * @param ready run once the connection is set up
+     * @param start opened when every connection is set up
+     */
+    private void connection(String host, int port, int depth, Runnable ready, CountDownLatch start) throws Exception {
+        try(Socket socket = new Socket(host, port)) {
+            socket.setTcpNoDelay(true);
+            DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream(), BUFFER_SIZE));
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream(), BUFFER_SIZE));
+
+            int patron = call(in, out, BankProtocol.CREATE_PATRON, null).readInt();
+            int savings = call(in, out, BankProtocol.OPEN_SAVINGS, o -> o.writeInt(patron)).readInt();
+            int brokerage = call(in, out, BankProtocol.OPEN_BROKERAGE, o -> o.writeInt(patron)).readInt();
+            call(in, out, BankProtocol.CASH, o -> {
+                o.writeInt(savings);
+                o.writeByte(Transaction.TxType.DEPOSIT.ordinal());
+                o.writeLong(Money.of(1e9));
+            });
+            int listings = call(in, out, BankProtocol.GET_LISTING_COUNT, null).readInt();
+            int listing = Math.floorMod(patron, listings);
+            ready.run();
+            start.await();
+
+            int next = 0;
+            while(this.running) {
+                long sent = System.nanoTime();
+                for(int i = 0; i < depth; i++) {
+                    Transaction.TxType type = ((next + i) & 1) == 0 ? Transaction.TxType.BUY : Transaction.TxType.SELL;
+                    out.writeInt(18);
+                    out.writeInt(next + i);
+                    out.writeByte(BankProtocol.TRADE);
+                    out.writeInt(brokerage);
+                    out.writeByte(type.ordinal());
+                    out.writeInt(listing);
+                    out.writeInt(1);
+                }
+                out.flush();
+                for(int i = 0; i < depth; i++) {
+                    int length = in.readInt();
+                    int requestId = in.readInt();
+                    byte status = in.readByte();
+                    in.skipBytes(length - 5);
+                    if(requestId != next + i)
+                        throw new IOException("Response " + requestId + " out of order, expected " + (next + i));
+                    this.latencies.record(System.nanoTime() - sent);
+                    if(this.running) {
+                        this.completed.increment();
+                        if(status != TxStatus.OK)
+                            this.rejected.increment();
+                    }
+                }
+                next += depth;
+            }
+        }
+    }
+
+    interface Arguments {
+        void write(DataOutputStream out) throws IOException;
+    }
+
+    //send one request and wait for its response; returns the results
+    private static DataInputStream call(DataInputStream in, DataOutputStream out, byte operation, Arguments arguments) throws IOException {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        DataOutputStream request = new DataOutputStream(buffer);
+        if(arguments != null)
+            arguments.write(request);
+        out.writeInt(5 + buffer.size());
+        out.writeInt(0);
+        out.writeByte(operation);
+        buffer.writeTo(out);
+        out.flush();
+        int length = in.readInt();
+        in.readInt();
+        byte status = in.readByte();
+        byte[] results = new byte[length - 5];
+        in.readFully(results);
+        if(status != TxStatus.OK)
+            throw new IOException("Request " + operation + " failed with status " + status);
+        return new DataInputStream(new ByteArrayInputStream(results));
+    }
+}
@@ -0,0 +1,64 @@
+package bank;
+
+/**
+ * The binary protocol spoken by BankServer. All numbers are big-endian, as written by DataOutputStream.
+ *
+ * A request is a frame: int length of the rest of the frame, int request id, byte operation, then the operation's arguments.
+ * A response is a frame: int length of the rest of the frame, the int request id it answers, byte status, then the results if the
+ * status is OK. A client may send any number of requests without waiting for responses; each connection answers its requests in
+ * the order they were sent. Money is in minor units, listings are identified by listing id and TxTypes by their ordinal.
+ *
+ *   operation            arguments                                    results
+ *   CREATE_PATRON                                                     int patron id
+ *   OPEN_SAVINGS         int patron id                                int account number
+ *   OPEN_BROKERAGE       int patron id                                int account number
+ *   CASH                 int account number, byte type, long amount
+ *   TRADE                int account number, byte type, int listing id, int quantity
+ *   GET_VALUE            int account number                           long value
+ *   GET_QUANTITY         int account number, int listing id           int shares owned
+ *   GET_NET_WORTH        int patron id                                long net worth
+ *   GET_PRICE            int listing id                               long price
+ *   GET_LISTING_COUNT                                                 int number of listings
+ *   GET_HISTORY          int account number, int limit                int count, then per transaction, newest first:
+ *                                                                     byte type, long timestamp, long amount or quantity, int listing id or -1
+ *
+ * The status is a TxStatus code, or one of the codes below for requests that fail before reaching an account.
+ * @see BankServer
+ * @see TxStatus
+ */
+public final class BankProtocol {
+    public static final byte CREATE_PATRON = 1;
+    public static final byte OPEN_SAVINGS = 2;
+    public static final byte OPEN_BROKERAGE = 3;
+    public static final byte CASH = 4;
+    public static final byte TRADE = 5;
+    public static final byte GET_VALUE = 6;
+    public static final byte GET_QUANTITY = 7;
+    public static final byte GET_NET_WORTH = 8;
+    public static final byte GET_PRICE = 9;
+    public static final byte GET_LISTING_COUNT = 10;
+    public static final byte GET_HISTORY = 11;
+
+    /** there is no Patron with the given id */
+    public static final byte NO_SUCH_PATRON = 16;
+    /** there is no account with the given number */
+    public static final byte NO_SUCH_ACCOUNT = 17;
+    /** there is no listing with the given id */
+    public static final byte NO_SUCH_LISTING = 18;
+    /** the Bank denied opening the account */
+    public static final byte DENIED = 19;
+    /** the operation is unknown or its arguments are malformed */
+    public static final byte BAD_REQUEST = 20;
+    /** the server failed while executing the request, e.g. it ran out of ids or its journal failed; the request may have taken effect */
+    public static final byte SERVER_ERROR = 21;
+
+    /** the longest request frame a server accepts, not counting its length field; a longer one closes the connection */
+    public static final int MAX_REQUEST_LENGTH = 64;
+    /** the most transactions a GET_HISTORY request returns */
+    public static final int MAX_HISTORY = 1000;
+    /** the bytes a GET_HISTORY response takes per transaction */
+    static final int HISTORY_ENTRY_LENGTH = 21;
+
+    private BankProtocol() {
+    }
+}
@@ -0,0 +1,301 @@
+package bank;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * End-of-day figures for a whole Bank: total deposits, assets under custody, shares held of each listing and the distribution of
+ * patrons' net worth. Every holding is valued at the prices the listings had when the report started, so the figures add up
+ * even though prices keep moving while it runs.
+ *
+ * Bank.createReport reads each Patron under their lock, so none of their transactions is counted half done, but the lock is only held
+ * while that Patron's balances are read: trading carries on while the report runs, and each Patron's figures are as of the moment they
+ * were read. Money moving between two patrons while the report runs may be counted on both sides or on neither, so totals such as
+ * deposits are skewed by whatever was in flight. Bank.createConsistentReport holds every Patron's lock while it copies their balances
+ * and share counts, and adds the copies up after releasing them, so its totals are exact as of a single moment.
+ * Patrons created while the report runs may or may not be included.
+ * @see Bank#createReport()
+ * @see Bank#createConsistentReport()
+ */
+public class BankReport {
+    /** the number of net worth buckets: below 1, then one per power of 10 from [1, 10) up to [10^13, 10^14), then 10^14 and above */
+    public static final int NET_WORTH_BUCKETS = 16;
+
+    private final List<StockListing> listings;
+    private final long[] prices;
+    private final int patrons;
+    private final int savingsAccounts;
+    private final int brokerageAccounts;
+    private final long deposits;
+    private final long custody;
+    private final long[] sharesByListing;
+    private final long[] netWorthBuckets;
+    private final long maxNetWorth;
+
+    BankReport(List<StockListing> listings, long[] prices, Accumulator totals) {
+        this.listings = listings;
+        this.prices = prices;
+        this.patrons = totals.patrons;
+        this.savingsAccounts = totals.savingsAccounts;
+        this.brokerageAccounts = totals.brokerageAccounts;
+        this.deposits = totals.deposits;
+        this.custody = totals.custody;
+        this.sharesByListing = totals.sharesByListing;
+        this.netWorthBuckets = totals.netWorthBuckets;
+        this.maxNetWorth = totals.patrons == 0 ? 0 : totals.maxNetWorth;
+    }
+
+    /**
+     * One Patron's balance and share counts, copied under their lock so that they can be added up after it is released.
+     * @see Bank#createConsistentReport()
+     */
+    static final class PatronCopy {
+        private final boolean hasSavings;
+        private final long cash;
+        private final boolean hasBrokerage;
+        private final int holdings;
+        private final int[] listingIds;
+        private final int[] quantities;
+
+        /**
+         * Must be called under the patron's lock.
+         */
+        PatronCopy(Patron patron) {
+            SavingsAccount savings = patron.getSavingsAccount();
+            BrokerageAccount brokerage = patron.getBrokerageAccount();
+            this.hasSavings = savings != null;
+            this.cash = savings == null ? 0 : savings.getMinorValue();
+            this.hasBrokerage = brokerage != null;
+            int count = brokerage == null ? 0 : brokerage.getHoldingCount();
+            this.listingIds = new int[count];
+            this.quantities = new int[count];
+            this.holdings = brokerage == null ? 0 : brokerage.copyHoldings(this.listingIds, this.quantities, new long[count]);
+        }
+    }
+
+    /**
+     * The running totals of one worker thread of a report. Each thread adds patrons to its own accumulator without sharing anything,
+     * and the accumulators are merged when the threads are done.
+     */
+    static final class Accumulator {
+        private final long[] prices;
+        private int patrons;
+        private int savingsAccounts;
+        private int brokerageAccounts;
+        private long deposits;
+        private long custody;
+        private final long[] sharesByListing;
+        private final long[] netWorthBuckets;
+        private long maxNetWorth;
+
+        Accumulator(long[] prices) {
+            this.prices = prices;
+            this.sharesByListing = new long[prices.length];
+            this.netWorthBuckets = new long[NET_WORTH_BUCKETS];
+            this.maxNetWorth = Long.MIN_VALUE;
+        }
+
+        /**
+         * count patron and their accounts, under the patron's lock
+         */
+        void add(Patron patron) {
+            ReentrantLock lock = patron.getLock();
+            lock.lock();
+            try {
+                this.addHeld(patron);
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        /**
+         * count patron and their accounts; the caller holds the patron's lock
+         */
+        private void addHeld(Patron patron) {
+            long cash = 0;
+            long holdings = 0;
+            SavingsAccount savings = patron.getSavingsAccount();
+            BrokerageAccount brokerage = patron.getBrokerageAccount();
+            if(savings != null) {
+                this.savingsAccounts++;
+                cash = savings.getMinorValue();
+            }
+            if(brokerage != null) {
+                this.brokerageAccounts++;
+                holdings = brokerage.addHoldingsTo(this.sharesByListing, this.prices);
+            }
+            this.addNetWorth(cash, holdings);
+        }
+
+        /**
+         * count a patron and their accounts from a copy taken under their lock
+         * @see Bank#createConsistentReport()
+         */
+        void add(PatronCopy copy) {
+            long holdings = 0;
+            if(copy.hasSavings)
+                this.savingsAccounts++;
+            if(copy.hasBrokerage)
+                this.brokerageAccounts++;
+            for(int i = 0; i < copy.holdings; i++) {
+                int id = copy.listingIds[i];
+                if(id >= this.prices.length)
+                    continue;
+                this.sharesByListing[id] += copy.quantities[i];
+                holdings = Money.add(holdings, Money.times(this.prices[id], copy.quantities[i]));
+            }
+            this.addNetWorth(copy.cash, holdings);
+        }
+
+        private void addNetWorth(long cash, long holdings) {
+            this.patrons++;
+            this.deposits = Money.add(this.deposits, cash);
+            this.custody = Money.add(this.custody, holdings);
+            long netWorth = Money.add(cash, holdings);
+            this.netWorthBuckets[bucketOf(netWorth)]++;
+            this.maxNetWorth = Math.max(this.maxNetWorth, netWorth);
+        }
+
+        /**
+         * add the totals of other to this one's
+         */
+        void merge(Accumulator other) {
+            this.patrons += other.patrons;
+            this.savingsAccounts += other.savingsAccounts;
+            this.brokerageAccounts += other.brokerageAccounts;
+            this.deposits = Money.add(this.deposits, other.deposits);
+            this.custody = Money.add(this.custody, other.custody);
+            for(int i = 0; i < this.sharesByListing.length; i++)
+                this.sharesByListing[i] += other.sharesByListing[i];
+            for(int i = 0; i < NET_WORTH_BUCKETS; i++)
+                this.netWorthBuckets[i] += other.netWorthBuckets[i];
+            this.maxNetWorth = Math.max(this.maxNetWorth, other.maxNetWorth);
+        }
+    }
+
+    private static int bucketOf(long netWorth) {
+        int bucket = 0;
+        for(long units = netWorth / Money.MINOR_PER_UNIT; units > 0 && bucket < NET_WORTH_BUCKETS - 1; bucket++)
+            units /= 10;
+        return bucket;
+    }
+
+    /**
+     * @param bucket between 0 and NET_WORTH_BUCKETS - 1
+     * @return the lowest net worth in the bucket, in minor units, or Long.MIN_VALUE for bucket 0
+     * @throws IllegalArgumentException if there is no such bucket
+     */
+    public static long getNetWorthBucketStart(int bucket) {
+        if(bucket < 0 || bucket >= NET_WORTH_BUCKETS)
+            throw new IllegalArgumentException("No such bucket " + bucket);
+        if(bucket == 0)
+            return Long.MIN_VALUE;
+        long start = Money.MINOR_PER_UNIT;
+        for(int i = 1; i < bucket; i++)
+            start *= 10;
+        return start;
+    }
+
+    /**
+     * @return the number of Patrons in the report
+     */
+    public int getPatronCount() {
+        return this.patrons;
+    }
+
+    /**
+     * @return the number of SavingsAccounts in the report
+     */
+    public int getSavingsAccountCount() {
+        return this.savingsAccounts;
+    }
+
+    /**
+     * @return the number of BrokerageAccounts in the report
+     */
+    public int getBrokerageAccountCount() {
+        return this.brokerageAccounts;
+    }
+
+    /**
+     * @return the sum of every SavingsAccount's balance, in minor units
+     */
+    public long getMinorTotalDeposits() {
+        return this.deposits;
+    }
+
+    /**
+     * @return the sum of every SavingsAccount's balance
+     * @see #getMinorTotalDeposits()
+     */
+    public double getTotalDeposits() {
+        return Money.toDouble(this.deposits);
+    }
+
+    /**
+     * @return the value of every share held in a BrokerageAccount at the report's prices, in minor units
+     */
+    public long getMinorAssetsUnderCustody() {
+        return this.custody;
+    }
+
+    /**
+     * @return the value of every share held in a BrokerageAccount at the report's prices
+     * @see #getMinorAssetsUnderCustody()
+     */
+    public double getAssetsUnderCustody() {
+        return Money.toDouble(this.custody);
+    }
+
+    /**
+     * @param listing
+     * @return the number of shares of listing held over all BrokerageAccounts, or 0 if it was listed after the report started
+     */
+    public long getSharesHeld(StockListing listing) {
+        int id = listing.getId();
+        return id < this.sharesByListing.length ? this.sharesByListing[id] : 0;
+    }
+
+    /**
+     * @param listing
+     * @return the price in minor units the report valued listing at, or 0 if it was listed after the report started
+     */
+    public long getMinorPrice(StockListing listing) {
+        int id = listing.getId();
+        return id < this.prices.length ? this.prices[id] : 0;
+    }
+
+    /**
+     * @return the number of shares held of each listing, by ticker symbol in order of listing id
+     */
+    public Map<String, Long> getHoldingsByTicker() {
+        Map<String, Long> holdings = new LinkedHashMap<>();
+        for(int id = 0; id < this.prices.length; id++)
+            holdings.put(this.listings.get(id).getTickerSymbol(), this.sharesByListing[id]);
+        return holdings;
+    }
+
+    /**
+     * @return the number of Patrons whose net worth falls in each bucket
+     * @see #getNetWorthBucketStart(int)
+     */
+    public long[] getNetWorthDistribution() {
+        return this.netWorthBuckets.clone();
+    }
+
+    /**
+     * @return the highest net worth of any Patron in minor units, or 0 if there are no Patrons
+     */
+    public long getMinorMaxNetWorth() {
+        return this.maxNetWorth;
+    }
+
+    /**
+     * @return the mean net worth of the Patrons in minor units, rounded down, or 0 if there are no Patrons
+     */
+    public long getMinorMeanNetWorth() {
+        return this.patrons == 0 ? 0 : Money.add(this.deposits, this.custody) / this.patrons;
+    }
+}
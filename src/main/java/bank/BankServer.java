@@ -0,0 +1,355 @@
+package bank;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Serves a Bank over TCP with the binary BankProtocol. Each connection is handled by its own thread, reading a request, executing it
+ * and writing the response with plain blocking I/O. On Java 21 and later these are virtual threads, so tens of thousands of mostly
+ * idle connections cost little more than their buffers. On older JVMs, such as the Java 17 this is built for, they are platform
+ * threads, and at most MAX_PLATFORM_CONNECTIONS connections are served at once: a connection accepted beyond that is closed straight away.
+ *
+ * If accepting a connection fails, e.g. because the process is out of file descriptors, the acceptor backs off before trying again
+ * instead of spinning. If it keeps failing, the server stops accepting connections; getAcceptFailure returns the last error.
+ *
+ * Pipelined requests are answered in order, and responses are only flushed once the connection has no more requests buffered,
+ * so a client that sends requests in batches gets its responses back in as few writes.
+ *
+ * A connection keeps only small buffers, sized for requests and for the results of every operation but GET_HISTORY. A GET_HISTORY
+ * response is built in a buffer borrowed from a pool shared by all connections and returned once the response is written.
+ * @see BankProtocol
+ * @see BankLoadClient
+ */
+public class BankServer implements Closeable {
+    //enough for a batch of pipelined requests or responses; a larger write bypasses the buffer
+    private static final int BUFFER_SIZE = 1024;
+    //the longest results of any operation except GET_HISTORY
+    private static final int REPLY_SIZE = 8;
+    private static final int HISTORY_REPLY_SIZE = 4 + BankProtocol.MAX_HISTORY * BankProtocol.HISTORY_ENTRY_LENGTH;
+    private static final int BACKLOG = 4096;
+    //the most connections served at once on platform threads, each of which has its own stack
+    static final int MAX_PLATFORM_CONNECTIONS = 2048;
+    private static final long MAX_ACCEPT_BACKOFF_MILLIS = 1000;
+    //consecutive failed accepts after which the error is taken to be permanent, about 40 seconds of backing off
+    private static final int MAX_ACCEPT_FAILURES = 50;
+    private static final Transaction.TxType[] TYPES = Transaction.TxType.values();
+
+    private final Bank bank;
+    private final ServerSocket serverSocket;
+    private final ExecutorService connections;
+    private final Set<Socket> open;
+    private final ConcurrentLinkedQueue<ByteBuffer> historyReplies;
+    private Thread acceptor;
+    private volatile IOException acceptFailure;
+
+    /**
+     * @param bank the Bank to serve
+     * @param port the TCP port to listen on, or 0 for any free port
+     * @throws IOException if the port can't be bound
+     * @throws IllegalArgumentException if bank is null
+     */
+    public BankServer(Bank bank, int port) throws IOException {
+        if(bank == null)
+            throw new IllegalArgumentException("Bank cannot be null");
+        this.bank = bank;
+        this.serverSocket = new ServerSocket(port, BACKLOG);
+        this.connections = VirtualThreads.newThreadPerTaskExecutor("bank-connection", MAX_PLATFORM_CONNECTIONS);
+        this.open = ConcurrentHashMap.newKeySet();
+        this.historyReplies = new ConcurrentLinkedQueue<>();
+    }
+
+    /**
+     * Start accepting connections on a new thread.
+     * @throws IllegalStateException if the server was already started
+     */
+    public synchronized void start() {
+        if(this.acceptor != null)
+            throw new IllegalStateException("Server already started");
+        this.acceptor = new Thread(this::accept, "bank-acceptor");
+        this.acceptor.start();
+    }
+
+    /**
+     * @return the TCP port the server listens on
+     */
+    public int getPort() {
+        return this.serverSocket.getLocalPort();
+    }
+
+    /**
+     * @return the number of connections currently open
+     */
+    public int getConnectionCount() {
+        return this.open.size();
+    }
+
+    /**
+     * @return the error that made the server stop accepting connections, or null if it is still accepting or was closed
+     */
+    public IOException getAcceptFailure() {
+        return this.acceptFailure;
+    }
+
+    /**
+     * Stop accepting connections and close every open one. Requests being executed finish, but their responses are lost.
+     */
+    @Override
+    public void close() throws IOException {
+        this.serverSocket.close();
+        for(Socket socket : this.open) {
+            try {
+                socket.close();
+            } catch(IOException e) {
+                //closing anyway
+            }
+        }
+        this.connections.shutdown();
+    }
+
+    private void accept() {
+        int failures = 0;
+        long backoff = 0;
+        while(!this.serverSocket.isClosed()) {
+            Socket socket;
+            try {
+                socket = this.serverSocket.accept();
+            } catch(IOException e) {
+                if(this.serverSocket.isClosed())
+                    return;
+                if(++failures == MAX_ACCEPT_FAILURES) {
+                    this.acceptFailure = e;
+                    closeQuietly(this.serverSocket);
+                    throw new UncheckedIOException("Stopped accepting connections", e);
+                }
+                //e.g. out of file descriptors until some connections close; retrying at once would only spin
+                backoff = Math.min(MAX_ACCEPT_BACKOFF_MILLIS, Math.max(1, backoff * 2));
+                try {
+                    Thread.sleep(backoff);
+                } catch(InterruptedException interrupted) {
+                    return;
+                }
+                continue;
+            }
+            failures = 0;
+            backoff = 0;
+            this.open.add(socket);
+            try {
+                socket.setTcpNoDelay(true);
+                this.connections.execute(() -> this.serve(socket));
+            } catch(IOException | RejectedExecutionException e) {
+                //the connection failed before it started, the server was closed while it was being accepted,
+                //or every platform thread is serving a connection
+                this.open.remove(socket);
+                closeQuietly(socket);
+            }
+        }
+    }
+
+    private static void closeQuietly(Closeable closeable) {
+        try {
+            closeable.close();
+        } catch(IOException ignored) {
+        }
+    }
+
+    private void serve(Socket socket) {
+        try(socket) {
+            DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream(), BUFFER_SIZE));
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream(), BUFFER_SIZE));
+            byte[] frame = new byte[BankProtocol.MAX_REQUEST_LENGTH];
+            ByteBuffer request = ByteBuffer.wrap(frame);
+            ByteBuffer small = ByteBuffer.allocate(REPLY_SIZE);
+            while(true) {
+                int length;
+                try {
+                    length = in.readInt();
+                } catch(EOFException e) {
+                    return;
+                }
+                if(length < 5 || length > BankProtocol.MAX_REQUEST_LENGTH)
+                    return;
+                in.readFully(frame, 0, length);
+                request.clear().limit(length);
+                int requestId = request.getInt();
+                byte operation = request.get();
+                ByteBuffer reply = operation == BankProtocol.GET_HISTORY ? this.borrowHistoryReply() : small;
+                try {
+                    reply.clear();
+                    byte status = this.handle(operation, request, reply);
+                    if(status != TxStatus.OK)
+                        reply.clear();
+                    out.writeInt(5 + reply.position());
+                    out.writeInt(requestId);
+                    out.writeByte(status);
+                    out.write(reply.array(), 0, reply.position());
+                } finally {
+                    if(reply != small)
+                        this.historyReplies.offer(reply);
+                }
+                if(in.available() == 0)
+                    out.flush();
+            }
+        } catch(IOException e) {
+            //the client went away or the server is closing
+        } finally {
+            this.open.remove(socket);
+        }
+    }
+
+    //the pool never holds more buffers than there have been concurrent GET_HISTORY requests
+    private ByteBuffer borrowHistoryReply() {
+        ByteBuffer reply = this.historyReplies.poll();
+        return reply != null ? reply : ByteBuffer.allocate(HISTORY_REPLY_SIZE);
+    }
+
+    /**
+     * execute one request
+     * @param operation
+     * @param request the request's arguments
+     * @param reply where the results are written, with room for HISTORY_REPLY_SIZE bytes for GET_HISTORY and REPLY_SIZE otherwise
+     * @return the response status; SERVER_ERROR if executing the request failed, so that one failure doesn't drop the connection
+     */
+    private byte handle(byte operation, ByteBuffer request, ByteBuffer reply) {
+        try {
+            switch(operation) {
+                case BankProtocol.CREATE_PATRON:
+                    reply.putInt(this.bank.createNewPatron().getId());
+                    return TxStatus.OK;
+                case BankProtocol.OPEN_SAVINGS:
+                case BankProtocol.OPEN_BROKERAGE: {
+                    Patron patron = this.bank.getPatron(request.getInt());
+                    if(patron == null)
+                        return BankProtocol.NO_SUCH_PATRON;
+                    int accountNumber = operation == BankProtocol.OPEN_SAVINGS ? this.bank.openNewSavingsAccount(patron) : this.bank.openNewBrokerageAccount(patron);
+                    reply.putInt(accountNumber);
+                    return TxStatus.OK;
+                }
+                case BankProtocol.CASH: {
+                    Account account = this.bank.getAccount(request.getInt());
+                    Transaction.TxType type = type(request.get());
+                    long amount = request.getLong();
+                    if(account == null)
+                        return BankProtocol.NO_SUCH_ACCOUNT;
+                    return account.tryExecute(CashTransaction.ofMinorUnits(type, amount));
+                }
+                case BankProtocol.TRADE: {
+                    Account account = this.bank.getAccount(request.getInt());
+                    Transaction.TxType type = type(request.get());
+                    StockListing listing = this.bank.getExchange().getStockListing(request.getInt());
+                    int quantity = request.getInt();
+                    if(account == null)
+                        return BankProtocol.NO_SUCH_ACCOUNT;
+                    if(listing == null)
+                        return BankProtocol.NO_SUCH_LISTING;
+                    if(!(account instanceof BrokerageAccount brokerage))
+                        return TxStatus.WRONG_TX_TYPE;
+                    return brokerage.tryExecuteTrade(type, listing, quantity);
+                }
+                case BankProtocol.GET_VALUE: {
+                    Account account = this.bank.getAccount(request.getInt());
+                    if(account == null)
+                        return BankProtocol.NO_SUCH_ACCOUNT;
+                    reply.putLong(account.getMinorValue());
+                    return TxStatus.OK;
+                }
+                case BankProtocol.GET_QUANTITY: {
+                    Account account = this.bank.getAccount(request.getInt());
+                    StockListing listing = this.bank.getExchange().getStockListing(request.getInt());
+                    if(!(account instanceof BrokerageAccount brokerage))
+                        return BankProtocol.NO_SUCH_ACCOUNT;
+                    if(listing == null)
+                        return BankProtocol.NO_SUCH_LISTING;
+                    reply.putInt(brokerage.getQuantityOwned(listing));
+                    return TxStatus.OK;
+                }
+                case BankProtocol.GET_NET_WORTH: {
+                    Patron patron = this.bank.getPatron(request.getInt());
+                    if(patron == null)
+                        return BankProtocol.NO_SUCH_PATRON;
+                    reply.putLong(patron.getMinorNetWorth());
+                    return TxStatus.OK;
+                }
+                case BankProtocol.GET_PRICE: {
+                    StockListing listing = this.bank.getExchange().getStockListing(request.getInt());
+                    if(listing == null)
+                        return BankProtocol.NO_SUCH_LISTING;
+                    reply.putLong(listing.getMinorPrice());
+                    return TxStatus.OK;
+                }
+                case BankProtocol.GET_LISTING_COUNT:
+                    reply.putInt(this.bank.getExchange().getListingCount());
+                    return TxStatus.OK;
+                case BankProtocol.GET_HISTORY: {
+                    Account account = this.bank.getAccount(request.getInt());
+                    int limit = Math.min(request.getInt(), BankProtocol.MAX_HISTORY);
+                    if(account == null)
+                        return BankProtocol.NO_SUCH_ACCOUNT;
+                    HistoryPage page = account.getTransactionHistory(new HistoryQuery().newestFirst().limit(limit));
+                    reply.putInt(page.getTransactions().size());
+                    for(Transaction tx : page.getTransactions())
+                        putTransaction(reply, tx);
+                    return TxStatus.OK;
+                }
+                default:
+                    return BankProtocol.BAD_REQUEST;
+            }
+        } catch(ApplicationDeniedException e) {
+            return BankProtocol.DENIED;
+        } catch(InvalidTransactionException e) {
+            return e.getType() == Transaction.TxType.DEPOSIT || e.getType() == Transaction.TxType.WITHDRAW ? TxStatus.INVALID_AMOUNT : TxStatus.WRONG_TX_TYPE;
+        } catch(BufferUnderflowException | IllegalArgumentException e) {
+            return BankProtocol.BAD_REQUEST;
+        } catch(RuntimeException e) {
+            return BankProtocol.SERVER_ERROR;
+        }
+    }
+
+    private static Transaction.TxType type(byte ordinal) {
+        if(ordinal < 0 || ordinal >= TYPES.length)
+            throw new IllegalArgumentException("Unknown type " + ordinal);
+        return TYPES[ordinal];
+    }
+
+    private static void putTransaction(ByteBuffer reply, Transaction tx) {
+        reply.put((byte) tx.getType().ordinal());
+        reply.putLong(tx.getNanoTimestamp());
+        if(tx instanceof StockTransaction t) {
+            reply.putLong(t.getQuantity());
+            reply.putInt(t.getStock().getId());
+        } else {
+            reply.putLong(((CashTransaction) tx).getMinorAmount());
+            reply.putInt(-1);
+        }
+    }
+
+    /**
+     * Serve a new, empty Bank whose exchange has a number of listings, SYM0, SYM1, ..., until the process is killed.
+     *
+     * Usage: java BankServer [port] [listings]
+     */
+    public static void main(String[] args) throws Exception {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : 7070;
+        int listings = args.length > 1 ? Integer.parseInt(args[1]) : 100;
+        StockExchange exchange = new StockExchange();
+        for(int i = 0; i < listings; i++)
+            exchange.createNewListing("SYM" + i, 100, Integer.MAX_VALUE);
+        BankServer server = new BankServer(new Bank(exchange), port);
+        server.start();
+        System.out.println("Serving on port " + server.getPort() + (VirtualThreads.available() ? " with virtual threads" : " with platform threads"));
+    }
+}
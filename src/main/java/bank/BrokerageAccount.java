@@ -0,0 +1,396 @@
+package bank;
+
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Models a brokerage account, i.e. an account used to buy, sell, and own stocks
+ */
+public class BrokerageAccount extends Account {
+    private HoldingTable holdings;
+    //sum of the counted values of all holdings in minor units
+    private final AtomicLong value;
+
+    /**
+     * This will be called by the Bank class.
+     * @param accountNumber the account number assigned by the bank to this new account
+     * @param patron the Patron who owns this account
+     * @see Bank#openNewBrokerageAccount(Patron)
+     */
+    protected BrokerageAccount(int accountNumber, Patron patron) {
+        super(accountNumber, patron);
+        this.holdings = new HoldingTable();
+        this.value = new AtomicLong();
+    }
+
+    /**
+     * @return an unmodifiable list of all the shares of stock currently owned by this account
+     * @see Collections#unmodifiableList(List)
+     */
+    public List<StockShares> getListOfShares() {
+        return Collections.unmodifiableList(this.holdings.toList());
+    }
+
+    /**
+     * If the transaction is not an instanceof StockTransaction, throw an IllegalArgumentException.
+     *
+     * If tx.getType() is BUY, do the following:
+     *         If there aren't enough shares of the stock available for purchase, or the cost overflows, throw an InvalidTransactionException.
+     *         The total amount of cash needed for the tx  = tx.getQuantity() * tx.getStock().getPrice(). If the patron doesn't have enough cash in his SavingsAccount for this transaction, throw InsufficientAssetsException.
+     *         If he does have enough cash, do the following:
+     *         1) reduce available share of StockListing by tx.getQuantity() (the shares are reserved before the cash check and released if the purchase fails)
+     *         2) reduce cash in patron's savings account by tx.getQuantity() * StockListing.getPrice()
+     *         3) create a new StockShare for this stock with the quantity set to tx.getQuantity() and listing set to tx.getStock() (or increase StockShare quantity, if there already is a StockShare instance in this account, by tx.getQuantity())
+     *         4) add this to the set of transactions recorded in this account
+     *
+     * If tx.getType() is SELL, do the following:
+     *          //If this account doesn't have the specified number of shares in the given stock, throw an InsufficientAssetsException.
+     *          //Reduce the patron's shares in the stock by the tx.getQuantity()
+     *          //The revenue from the sale = the current price per share of the stock * number of shares to be sold. Use a DEPOSIT transaction to add the revenue to the Patron's savings account.
+     *
+     * The cash leg is applied to the savings account and recorded in its history without creating a nested CashTransaction,
+     * and the trade is journaled as one record together with its cash leg.
+     * @param tx the transaction to execute on this account
+     * @see StockTransaction
+     * @see #tryExecute(Transaction)
+     * @see #executeTrade(Transaction.TxType, StockListing, int)
+     */
+    @Override
+    public void executeTransaction(Transaction tx) throws InsufficientAssetsException,InvalidTransactionException {
+        byte status = this.tryExecute(tx);
+        if(status == TxStatus.WRONG_TX_TYPE)
+            throw new IllegalArgumentException("Must be a Stock Transaction");
+        this.throwIfRejected(status, tx);
+    }
+
+    /**
+     * @param tx
+     * @return TxStatus.OK, WRONG_TX_TYPE if tx is not a StockTransaction, NO_INVENTORY or INSUFFICIENT_CASH for a BUY,
+     * INSUFFICIENT_SHARES for a SELL, or INVALID_AMOUNT if the cost of the trade is too large to hold in a balance
+     * @see #executeTransaction(Transaction)
+     */
+    @Override
+    public byte tryExecute(Transaction tx) {
+        if(!(tx instanceof StockTransaction t))
+            return this.rejectEarly(tx.getType(), TxStatus.WRONG_TX_TYPE);
+        return this.execute(t.getType(), t.getStock(), t.getQuantity(), t.getNanoTimestamp());
+    }
+
+    /**
+     * Execute a trade given by its fields, without creating a StockTransaction. This has the same effect as
+     * executeTransaction(new StockTransaction(stock, type, quantity)) and is recorded in the history and the journal identically.
+     * Once the account holds the stock and its history has room for the entries, a trade that succeeds allocates nothing.
+     * @param type BUY or SELL
+     * @param stock
+     * @param quantity
+     * @throws InvalidTransactionException thrown if type is neither BUY nor SELL, if quantity <= 0, if stock == null, or as executeTransaction throws it
+     * @throws InsufficientAssetsException as executeTransaction throws it
+     * @see #tryExecuteTrade(Transaction.TxType, StockListing, int)
+     * @see Account#ensureHistoryCapacity(int)
+     */
+    public void executeTrade(Transaction.TxType type, StockListing stock, int quantity) throws InsufficientAssetsException, InvalidTransactionException {
+        if(!(type == Transaction.TxType.BUY || type == Transaction.TxType.SELL))
+            throw new InvalidTransactionException("Transaction type must be BUY or SELL", type);
+        if(quantity <= 0)
+            throw new InvalidTransactionException("Quantity must be > 0", type);
+        if(stock == null)
+            throw new InvalidTransactionException("Listing cannot be null", type);
+        long nanoTimestamp = System.nanoTime();
+        byte status = this.execute(type, stock, quantity, nanoTimestamp);
+        if(status != TxStatus.OK)
+            this.throwIfRejected(status, new StockTransaction(stock, type, quantity, nanoTimestamp));
+    }
+
+    /**
+     * Execute a trade given by its fields like executeTrade, reporting a rejection as a status code. Neither executing nor rejecting
+     * a trade allocates, once the account holds the stock and its history has room.
+     * @param type BUY or SELL
+     * @param stock
+     * @param quantity
+     * @return as tryExecute, and WRONG_TX_TYPE if type is neither BUY nor SELL, or INVALID_AMOUNT if quantity <= 0 or stock == null
+     * @see #executeTrade(Transaction.TxType, StockListing, int)
+     */
+    public byte tryExecuteTrade(Transaction.TxType type, StockListing stock, int quantity) {
+        if(!(type == Transaction.TxType.BUY || type == Transaction.TxType.SELL))
+            return this.rejectEarly(type, TxStatus.WRONG_TX_TYPE);
+        if(quantity <= 0 || stock == null)
+            return this.rejectEarly(type, TxStatus.INVALID_AMOUNT);
+        return this.execute(type, stock, quantity, System.nanoTime());
+    }
+
+    private byte rejectEarly(Transaction.TxType type, byte status) {
+        TransactionMetrics metrics = this.getPatron().getBank().getMetrics();
+        if(metrics != null)
+            metrics.recordRejected(type, status);
+        return status;
+    }
+
+    private byte execute(Transaction.TxType type, StockListing stock, int quantity, long nanoTimestamp) {
+        TransactionMetrics metrics = this.getPatron().getBank().getMetrics();
+        if(metrics == null)
+            return this.trade(type, stock, quantity, nanoTimestamp);
+        long start = System.nanoTime();
+        byte status = this.trade(type, stock, quantity, nanoTimestamp);
+        metrics.record(type, status, stock, this.getAccountNumber(), System.nanoTime() - start);
+        return status;
+    }
+
+    private byte trade(Transaction.TxType type, StockListing stock, int quantity, long nanoTimestamp) {
+        Patron patron = this.getPatron();
+        SavingsAccount savings = patron.getSavingsAccount();
+        ReentrantLock lock = patron.getLock();
+        long position = -1;
+        lock.lock();
+        try {
+            StockShares shares = this.holdings.get(stock.getId());
+            long amount = cost(stock, quantity);
+            switch(type) {
+                case BUY:
+                    //every overflow is ruled out before anything changes, so a trade is never left half applied
+                    if(amount < 0 || !this.canHold(stock, shares, quantity))
+                        return TxStatus.INVALID_AMOUNT;
+                    //take the shares first so no other patron can buy them out from under us while we pay
+                    if(!stock.reserveShares(quantity))
+                        return TxStatus.NO_INVENTORY;
+                    if(savings.getMinorValue() < amount) {
+                        stock.rollbackReservation(quantity);
+                        return TxStatus.INSUFFICIENT_CASH;
+                    }
+                    try {
+                        savings.applyCashLeg(Transaction.TxType.WITHDRAW, amount, nanoTimestamp);
+                    } catch(RuntimeException e) {
+                        stock.rollbackReservation(quantity);
+                        throw e;
+                    }
+                    stock.commitReservation(quantity);
+
+                    this.changeQuantity(stock, shares, quantity);
+                    break;
+                case SELL:
+                    if(shares == null || shares.getQuantity() < quantity)
+                        return TxStatus.INSUFFICIENT_SHARES;
+                    if(amount < 0 || savings.getMinorValue() > Long.MAX_VALUE - amount)
+                        return TxStatus.INVALID_AMOUNT;
+                    savings.applyCashLeg(Transaction.TxType.DEPOSIT, amount, nanoTimestamp);
+
+                    this.changeQuantity(stock, shares, -quantity);
+                    break;
+                default:
+                    return TxStatus.WRONG_TX_TYPE;
+            }
+            this.transactions.addStock(type, stock, quantity, nanoTimestamp);
+            this.publish(type, quantity, stock, nanoTimestamp);
+            Journal journal = patron.getBank().getJournal();
+            if(journal != null)
+                position = journal.trade(this.getAccountNumber(), type, stock, quantity, amount, nanoTimestamp);
+        } finally {
+            lock.unlock();
+        }
+        this.awaitDurable(position);
+        return TxStatus.OK;
+    }
+
+    //the current price of quantity shares in minor units, or -1 if it overflows
+    private static long cost(StockListing stock, int quantity) {
+        try {
+            return Money.times(stock.getMinorPrice(), quantity);
+        } catch(ArithmeticException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Whether this account's holding of stock can grow by quantity without its quantity, its value at the current price or the
+     * account's value overflowing. Must be called under the Patron's lock.
+     */
+    private boolean canHold(StockListing stock, StockShares shares, int quantity) {
+        long held = (shares == null ? 0 : shares.getQuantity()) + (long) quantity;
+        if(held > Integer.MAX_VALUE)
+            return false;
+        long counted = shares == null ? 0 : shares.getCounted();
+        try {
+            Money.add(this.value.get(), Money.times(stock.getMinorPrice(), held) - counted);
+            return true;
+        } catch(ArithmeticException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Re-apply a trade read back from the Bank's journal, with its cash leg on the Patron's savings account.
+     * A SELL never returned shares to the listing.
+     * @param t
+     * @param cashAmount the cash leg in minor units
+     * @see Bank#recover(StockExchange, java.nio.file.Path, Journal.FsyncPolicy)
+     */
+    void restore(StockTransaction t, long cashAmount) {
+        if(t.getType() == Transaction.TxType.BUY)
+            t.getStock().restoreAvailableShares(-t.getQuantity());
+        this.restoreFill(t, cashAmount);
+    }
+
+    /**
+     * re-apply one side of an OrderBook trade read back from the Bank's journal; this account's shares and its Patron's cash move
+     * @see #settleFill(Transaction.TxType, StockListing, int, long, long)
+     */
+    void restoreFill(StockTransaction t, long cashAmount) {
+        Transaction.TxType cashType = t.getType() == Transaction.TxType.BUY ? Transaction.TxType.WITHDRAW : Transaction.TxType.DEPOSIT;
+        this.getPatron().getSavingsAccount().restore(new CashTransaction(cashType, cashAmount, t.getNanoTimestamp()));
+        this.moveShares(t);
+        this.transactions.add(t);
+    }
+
+    private void moveShares(StockTransaction t) {
+        StockListing stock = t.getStock();
+        int delta = t.getType() == Transaction.TxType.BUY ? t.getQuantity() : -t.getQuantity();
+        this.changeQuantity(stock, this.holdings.get(stock.getId()), delta);
+    }
+
+    /**
+     * Change the quantity held of stock by delta and keep the account's value in step. Must be called under the Patron's lock.
+     * A holding is registered with its listing before its quantity rises above 0 and its price is read, so a concurrent price change
+     * either revalues it or happened before the read. It is removed from the listing once its quantity drops to 0.
+     * @param stock
+     * @param shares the current holding of stock, or null if there is none yet
+     * @param delta
+     */
+    private void changeQuantity(StockListing stock, StockShares shares, int delta) {
+        if(shares == null) {
+            shares = new StockShares(this, stock, 0);
+            this.holdings.put(shares);
+        }
+        int quantity = shares.getQuantity() + delta;
+        if(quantity != 0 && !shares.isListed()) {
+            stock.addHolder(shares);
+            shares.setListed(true);
+        }
+        shares.setQuantity(quantity);
+        this.revalue(shares);
+        if(quantity == 0 && shares.isListed()) {
+            stock.removeHolder(shares);
+            shares.setListed(false);
+        }
+    }
+
+    /**
+     * Bring the value of shares up to date with its quantity and its listing's current price, without locking. Called after every
+     * change to either: for each holder of a listing after its price changes, and by the owner after a trade.
+     * The holding's counted value is swapped for the current one with compare-and-set and the difference added to the account's value.
+     * If the quantity or price changed while this ran, it runs again, so the last of several racing calls always counts the latest values.
+     * @param shares a holding of this account
+     * @see StockListing#setMinorPrice(long)
+     */
+    void revalue(StockShares shares) {
+        StockListing listing = shares.getListing();
+        while(true) {
+            long counted = shares.getCounted();
+            int quantity = shares.getQuantity();
+            long price = listing.getMinorPrice();
+            long current = Money.times(price, quantity);
+            if(!shares.compareAndSetCounted(counted, current))
+                continue;
+            this.value.addAndGet(current - counted);
+            if(shares.getQuantity() == quantity && listing.getMinorPrice() == price)
+                return;
+        }
+    }
+
+    /**
+     * @param listing
+     * @return how many shares of listing this account owns
+     */
+    public int getQuantityOwned(StockListing listing) {
+        StockShares shares = this.holdings.get(listing.getId());
+        return shares == null ? 0 : shares.getQuantity();
+    }
+
+    /**
+     * @return the number of listings this account has ever held, including those whose quantity has since dropped to 0
+     */
+    int getHoldingCount() {
+        return this.holdings.size();
+    }
+
+    /**
+     * Copy the listing id, quantity and price of every holding, without building a list. The caller holds the Patron's lock.
+     * Prices keep moving under the lock, so a caller that needs a value matching the copied holdings adds it up from the copied prices.
+     * @param listingIds
+     * @param quantities
+     * @param prices in minor units
+     * @return the number of holdings copied
+     * @see HoldingTable#copyTo(int[], int[], long[])
+     */
+    int copyHoldings(int[] listingIds, int[] quantities, long[] prices) {
+        return this.holdings.copyTo(listingIds, quantities, prices);
+    }
+
+    /**
+     * Add this account's holdings to a BankReport. The caller holds the Patron's lock.
+     * @param sharesByListing share counts indexed by listing id
+     * @param prices the report's prices in minor units, indexed by listing id
+     * @return the value of the holdings at prices, in minor units
+     * @see HoldingTable#addTo(long[], long[])
+     */
+    long addHoldingsTo(long[] sharesByListing, long[] prices) {
+        return this.holdings.addTo(sharesByListing, prices);
+    }
+
+    /**
+     * Check that this account's side of a trade matched on an OrderBook can be settled: for a BUY, that the Patron can pay and can
+     * hold the shares, and for a SELL, that the account owns the shares and the Patron's balance can take the proceeds.
+     * The caller holds the locks of both patrons in the trade, and checks both sides before settling either.
+     * @param type BUY or SELL, from this account's side
+     * @param stock
+     * @param quantity
+     * @param cashAmount the price of the trade times its quantity, in minor units
+     * @return true if settleFill can run without failing
+     * @see #settleFill(Transaction.TxType, StockListing, int, long, long)
+     */
+    boolean canSettle(Transaction.TxType type, StockListing stock, int quantity, long cashAmount) {
+        long balance = this.getPatron().getSavingsAccount().getMinorValue();
+        if(type == Transaction.TxType.BUY)
+            return balance >= cashAmount && this.canHold(stock, this.holdings.get(stock.getId()), quantity);
+        return this.getQuantityOwned(stock) >= quantity && balance <= Long.MAX_VALUE - cashAmount;
+    }
+
+    /**
+     * Settle this account's side of a trade matched on an OrderBook against another patron: move quantity shares of stock and pay
+     * (for a BUY) or receive (for a SELL) cashAmount through the Patron's savings account. The listing's inventory is not touched.
+     * The caller holds the locks of both patrons in the trade, has already checked both sides with canSettle,
+     * and journals both sides of the trade as one record once they are settled.
+     * @param type BUY or SELL, from this account's side
+     * @param stock
+     * @param quantity
+     * @param cashAmount the price of the trade times its quantity, in minor units
+     * @param timestamp shared by both sides of the trade
+     * @see OrderBook
+     * @see Journal#fill(int, int, StockListing, int, long, long)
+     */
+    void settleFill(Transaction.TxType type, StockListing stock, int quantity, long cashAmount, long timestamp) {
+        boolean buy = type == Transaction.TxType.BUY;
+        this.getPatron().getSavingsAccount().applyCashLeg(buy ? Transaction.TxType.WITHDRAW : Transaction.TxType.DEPOSIT, cashAmount, timestamp);
+        this.changeQuantity(stock, this.holdings.get(stock.getId()), buy ? quantity : -quantity);
+        this.transactions.addStock(type, stock, quantity, timestamp);
+        this.publish(type, quantity, stock, timestamp);
+    }
+
+    /**
+     * set a holding loaded from a snapshot
+     * @see Snapshot
+     */
+    void restoreHolding(StockListing listing, int quantity) {
+        this.changeQuantity(listing, this.holdings.get(listing.getId()), quantity);
+    }
+
+    /**
+     * the value of a BrokerageAccount is calculated by adding up the values of each StockShare.
+     * The value of a StockShare is calculated by multiplying the StockShare quantity by its listing's price.
+     * The sum is kept up to date as trades change quantities and as listing prices change, so reading it is O(1) and doesn't allocate.
+     * @return the value in minor units
+     */
+    @Override
+    public long getMinorValue() {
+        return this.value.get();
+    }
+}
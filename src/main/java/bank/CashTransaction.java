@@ -0,0 +1,81 @@
+package bank;
+
+/**
+ * A CashTransaction is immutable. Value of nanoTimeStamp must be set at time of construction to the return value of System.nanoTime().
+ * The amount is kept in minor units.
+ * @see Money
+ */
+public class CashTransaction implements Transaction {
+    private final TxType type;
+    private final long amount;
+    private final long nanoTimeStamp;
+
+    /**
+     *
+     * @param type
+     * @param amount
+     * @throws InvalidTransactionException thrown if type is neither DEPOSIT nor WITHDRAW, or if amount <= 0 once rounded to the nearest cent
+     * @see #ofMinorUnits(TxType, long)
+     */
+    public CashTransaction(TxType type, double amount) throws InvalidTransactionException {
+        this(type, toMinor(type, amount));
+    }
+
+    private CashTransaction(TxType type, long amount) throws InvalidTransactionException {
+        if(!(type == TxType.DEPOSIT || type == TxType.WITHDRAW))
+            throw new InvalidTransactionException("Invalid Transaction Type", type);
+        if(amount <= 0)
+            throw new InvalidTransactionException("Invalid Amount", type);
+
+        this.type = type;
+        this.amount = amount;
+        this.nanoTimeStamp = System.nanoTime();
+    }
+
+    /**
+     * @param type
+     * @param amount the amount in minor units
+     * @return a new transaction for exactly amount
+     * @throws InvalidTransactionException thrown if type is neither DEPOSIT nor WITHDRAW, or if amount <= 0
+     */
+    public static CashTransaction ofMinorUnits(TxType type, long amount) throws InvalidTransactionException {
+        return new CashTransaction(type, amount);
+    }
+
+    private static long toMinor(TxType type, double amount) throws InvalidTransactionException {
+        try {
+            return Money.of(amount);
+        } catch(IllegalArgumentException e) {
+            throw new InvalidTransactionException("Invalid Amount", type);
+        }
+    }
+
+    /**
+     * Rebuild a transaction that was already validated and executed, keeping its original timestamp.
+     * @see TransactionLog#get(int)
+     */
+    CashTransaction(TxType type, long amount, long nanoTimeStamp) {
+        this.type = type;
+        this.amount = amount;
+        this.nanoTimeStamp = nanoTimeStamp;
+    }
+
+    public double getAmount(){
+        return Money.toDouble(this.amount);
+    }
+
+    /**
+     * @return the amount in minor units
+     */
+    public long getMinorAmount() {
+        return this.amount;
+    }
+    @Override
+    public TxType getType() {
+        return this.type;
+    }
+    @Override
+    public long getNanoTimestamp() {
+        return this.nanoTimeStamp;
+    }
+}
\ No newline at end of file
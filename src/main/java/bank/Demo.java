@@ -1,3 +1,7 @@
+package bank;
+
+import java.util.List;
+
 public class Demo {
     public static void main(String[] args) throws Exception {
         new Demo().run();
@@ -126,10 +130,11 @@ public class Demo {
         if(ba != null){
             sb.append("\nPatron's brokerage account value: ").append(ba.getValue());
             sb.append("\n\nStock Shares\n");
-            for(int i = 0; i < ba.getListOfShares().size(); i++){
-                StockShares share = ba.getListOfShares().get(i);
+            List<StockShares> shares = ba.getListOfShares();
+            for(int i = 0; i < shares.size(); i++){
+                StockShares share = shares.get(i);
                 sb.append("\t");
-                if(i == ba.getListOfShares().size() - 1)
+                if(i == shares.size() - 1)
                     sb.append("\t");
                 sb.append(share.getQuantity()).append(" shares of ").append(share.getListing().getTickerSymbol());
             }
@@ -0,0 +1,41 @@
+package bank;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * One page of the transactions matching a HistoryQuery, in the order the query asked for.
+ * @see Account#getTransactionHistory(HistoryQuery)
+ */
+public class HistoryPage {
+    private final List<Transaction> transactions;
+    private final long nextCursor;
+
+    HistoryPage(List<Transaction> transactions, long nextCursor) {
+        this.transactions = Collections.unmodifiableList(transactions);
+        this.nextCursor = nextCursor;
+    }
+
+    /**
+     * @return an unmodifiable list of the transactions in this page
+     */
+    public List<Transaction> getTransactions() {
+        return this.transactions;
+    }
+
+    /**
+     * @return true if more transactions matched the query than fit in this page
+     */
+    public boolean hasMore() {
+        return this.nextCursor != HistoryQuery.START;
+    }
+
+    /**
+     * @return the cursor to pass to HistoryQuery.after for the next page, or HistoryQuery.START if this is the last page.
+     * Transactions executed after the first page was read show up in later pages of an oldest first query, but not of a newest first one.
+     * @see HistoryQuery#after(long)
+     */
+    public long getNextCursor() {
+        return this.nextCursor;
+    }
+}
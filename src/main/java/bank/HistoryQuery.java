@@ -0,0 +1,122 @@
+package bank;
+
+/**
+ * A query over the transaction history of an Account: an optional time range, TxType and listing, the order to return matches in,
+ * and how many to return per page. Results are paged with a cursor: pass the cursor of one page to after() to get the next one.
+ * A query is not thread-safe, but may be reused once its page has been returned.
+ * @see Account#getTransactionHistory(HistoryQuery)
+ */
+public class HistoryQuery {
+    /** the cursor of the first page */
+    public static final long START = -1;
+
+    private long fromNanos;
+    private long toNanos;
+    private Transaction.TxType type;
+    private StockListing listing;
+    private boolean newestFirst;
+    private int limit;
+    private long cursor;
+
+    /**
+     * a query matching every transaction, oldest first, 50 per page
+     */
+    public HistoryQuery() {
+        this.fromNanos = Long.MIN_VALUE;
+        this.toNanos = Long.MAX_VALUE;
+        this.limit = 50;
+        this.cursor = START;
+    }
+
+    /**
+     * @param fromNanos the earliest timestamp to match, inclusive
+     * @param toNanos the latest timestamp to match, exclusive
+     * @return this query
+     * @throws IllegalArgumentException if fromNanos > toNanos
+     * @see Transaction#getNanoTimestamp()
+     */
+    public HistoryQuery between(long fromNanos, long toNanos) {
+        if(fromNanos > toNanos)
+            throw new IllegalArgumentException("Range cannot end before it starts");
+        this.fromNanos = fromNanos;
+        this.toNanos = toNanos;
+        return this;
+    }
+
+    /**
+     * @param type the only type to match, or null for every type
+     * @return this query
+     */
+    public HistoryQuery ofType(Transaction.TxType type) {
+        this.type = type;
+        return this;
+    }
+
+    /**
+     * @param listing the only listing whose stock transactions match, or null to match cash and stock transactions alike
+     * @return this query
+     */
+    public HistoryQuery forListing(StockListing listing) {
+        this.listing = listing;
+        return this;
+    }
+
+    /**
+     * return matches from the newest to the oldest, e.g. for the last 50 transactions, instead of from the oldest
+     * @return this query
+     */
+    public HistoryQuery newestFirst() {
+        this.newestFirst = true;
+        return this;
+    }
+
+    /**
+     * @param limit the most transactions to return in a page
+     * @return this query
+     * @throws IllegalArgumentException if limit <= 0
+     */
+    public HistoryQuery limit(int limit) {
+        if(limit <= 0)
+            throw new IllegalArgumentException("Limit must be > 0");
+        this.limit = limit;
+        return this;
+    }
+
+    /**
+     * @param cursor START, or the cursor of the previous page of this query
+     * @return this query
+     * @see HistoryPage#getNextCursor()
+     */
+    public HistoryQuery after(long cursor) {
+        this.cursor = cursor;
+        return this;
+    }
+
+    long getFromNanos() {
+        return this.fromNanos;
+    }
+
+    long getToNanos() {
+        return this.toNanos;
+    }
+
+    Transaction.TxType getType() {
+        return this.type;
+    }
+
+    StockListing getListing() {
+        return this.listing;
+    }
+
+    boolean isNewestFirst() {
+        return this.newestFirst;
+    }
+
+    int getLimit() {
+        return this.limit;
+    }
+
+    long getCursor() {
+        return this.cursor;
+    }
+}
@@ -0,0 +1,180 @@
+package bank;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The brokerage holdings of a single StockListing, indexed by the holding account's number.
+ *
+ * Holdings are kept in a dense array in the order they were added, and an open-addressing table of int account numbers maps
+ * each account to its position in that array, so neither lookups nor iteration box keys or follow map entries.
+ * A holding whose quantity drops to 0 is removed, leaving an empty slot in the array; once more slots are empty than used,
+ * the array is compacted into a new one, so a listing that many accounts have traded but few still hold is cheap to iterate.
+ *
+ * Additions, removals and lookups by account number synchronize on the index. Iteration doesn't lock: the array and the count of
+ * slots used in it are published together, a holding is written before that count, and a compacted array is never changed afterwards,
+ * so an iteration visits every holding added before it started and skips or revisits removed ones harmlessly.
+ * @see StockListing#getHolders()
+ */
+class HolderIndex {
+    private static final int EMPTY = -1;
+    private static final int INITIAL_CAPACITY = 8;
+
+    private static final class Table {
+        //null where a holding was removed
+        private final StockShares[] holdings;
+        private volatile int size;
+
+        private Table(int capacity) {
+            this.holdings = new StockShares[capacity];
+        }
+    }
+
+    private volatile Table table;
+    private int live;
+    //account number -> index into table.holdings, linear probing, EMPTY where unused
+    private int[] keys;
+    private int[] positions;
+
+    HolderIndex() {
+        this.table = new Table(0);
+        this.keys = new int[0];
+        this.positions = new int[0];
+    }
+
+    /**
+     * @param shares a holding whose owner isn't in the index
+     */
+    synchronized void add(StockShares shares) {
+        Table table = this.table;
+        int n = table.size;
+        if(n == table.holdings.length) {
+            table = this.rebuild(Math.max(INITIAL_CAPACITY, this.live * 2));
+            n = table.size;
+        }
+        table.holdings[n] = shares;
+        this.put(shares.getOwner().getAccountNumber(), n);
+        this.live++;
+        table.size = n + 1;
+    }
+
+    /**
+     * @param shares a holding in the index, whose quantity has dropped to 0
+     */
+    synchronized void remove(StockShares shares) {
+        int slot = this.slotOf(shares.getOwner().getAccountNumber());
+        if(slot == EMPTY)
+            return;
+        Table table = this.table;
+        table.holdings[this.positions[slot]] = null;
+        this.delete(slot);
+        this.live--;
+        if(table.size - this.live > this.live && table.size > INITIAL_CAPACITY)
+            this.rebuild(Math.max(INITIAL_CAPACITY, this.live * 2));
+    }
+
+    /**
+     * @param accountNumber
+     * @return the holding of the account with that number, or null if it doesn't hold this listing
+     */
+    synchronized StockShares find(int accountNumber) {
+        int slot = this.slotOf(accountNumber);
+        return slot == EMPTY ? null : this.table.holdings[this.positions[slot]];
+    }
+
+    /**
+     * Bring the value of every holding up to date with its listing's price, without locking.
+     * @see BrokerageAccount#revalue(StockShares)
+     */
+    void revalueAll() {
+        Table table = this.table;
+        StockShares[] holdings = table.holdings;
+        for(int i = 0, n = table.size; i < n; i++) {
+            StockShares shares = holdings[i];
+            if(shares != null)
+                shares.getOwner().revalue(shares);
+        }
+    }
+
+    /**
+     * @return an unmodifiable copy of the list of holdings in the index
+     */
+    List<StockShares> list() {
+        Table table = this.table;
+        List<StockShares> list = new ArrayList<>(table.size);
+        for(int i = 0, n = table.size; i < n; i++) {
+            StockShares shares = table.holdings[i];
+            if(shares != null)
+                list.add(shares);
+        }
+        return Collections.unmodifiableList(list);
+    }
+
+    //copy the holdings into a new table with the given capacity, dropping removed ones, and publish it
+    private Table rebuild(int capacity) {
+        Table old = this.table;
+        Table table = new Table(capacity);
+        int keyCapacity = INITIAL_CAPACITY * 2;
+        while(keyCapacity < capacity * 2)
+            keyCapacity <<= 1;
+        this.keys = new int[keyCapacity];
+        Arrays.fill(this.keys, EMPTY);
+        this.positions = new int[keyCapacity];
+        int n = 0;
+        for(int i = 0, size = old.size; i < size; i++) {
+            StockShares shares = old.holdings[i];
+            if(shares == null)
+                continue;
+            table.holdings[n] = shares;
+            this.put(shares.getOwner().getAccountNumber(), n);
+            n++;
+        }
+        table.size = n;
+        this.table = table;
+        return table;
+    }
+
+    private int slotOf(int accountNumber) {
+        if(this.keys.length == 0)
+            return EMPTY;
+        int mask = this.keys.length - 1;
+        for(int i = mix(accountNumber) & mask; this.keys[i] != EMPTY; i = (i + 1) & mask) {
+            if(this.keys[i] == accountNumber)
+                return i;
+        }
+        return EMPTY;
+    }
+
+    private void put(int accountNumber, int position) {
+        int mask = this.keys.length - 1;
+        int i = mix(accountNumber) & mask;
+        while(this.keys[i] != EMPTY)
+            i = (i + 1) & mask;
+        this.keys[i] = accountNumber;
+        this.positions[i] = position;
+    }
+
+    //backward-shift deletion, so that probing never needs markers for deleted keys
+    private void delete(int slot) {
+        int mask = this.keys.length - 1;
+        int hole = slot;
+        for(int i = (hole + 1) & mask; this.keys[i] != EMPTY; i = (i + 1) & mask) {
+            int home = mix(this.keys[i]) & mask;
+            //the key at i may fill the hole only if its probe sequence passes through it
+            if(((i - home) & mask) >= ((i - hole) & mask)) {
+                this.keys[hole] = this.keys[i];
+                this.positions[hole] = this.positions[i];
+                hole = i;
+            }
+        }
+        this.keys[hole] = EMPTY;
+    }
+
+    //account numbers are sequential, so spread them before masking
+    private static int mix(int key) {
+        int h = key * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+}
@@ -0,0 +1,152 @@
+package bank;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The holdings of a single BrokerageAccount, keyed by listing id in a small open-addressing table.
+ * Most accounts hold a handful of stocks, so a lookup is usually a single array probe, with no String hashing or boxed keys.
+ *
+ * Holdings are added under the owning Patron's lock. Readers don't lock: the key and value arrays are replaced together on growth
+ * and published through a volatile field, and a key is written with release after its value and read with acquire, so a reader
+ * either finds the holding or doesn't see it yet.
+ */
+class HoldingTable {
+    private static final int INITIAL_CAPACITY = 4;
+    private static final VarHandle KEYS = MethodHandles.arrayElementVarHandle(int[].class);
+
+    private static final class Slots {
+        //listing id + 1, so that 0 marks an empty slot
+        private final int[] keys;
+        private final StockShares[] values;
+
+        private Slots(int capacity) {
+            this.keys = new int[capacity];
+            this.values = new StockShares[capacity];
+        }
+    }
+
+    private volatile Slots slots;
+    private int size;
+
+    HoldingTable() {
+        this.slots = new Slots(0);
+    }
+
+    /**
+     * @param listingId
+     * @return the holding of the listing with that id, or null if there is none
+     */
+    StockShares get(int listingId) {
+        Slots slots = this.slots;
+        int mask = slots.keys.length - 1;
+        if(mask < 0)
+            return null;
+        int key = listingId + 1;
+        for(int i = listingId & mask; ; i = (i + 1) & mask) {
+            int k = keyAt(slots, i);
+            if(k == key)
+                return slots.values[i];
+            if(k == 0)
+                return null;
+        }
+    }
+
+    /**
+     * @param shares a holding of a listing not yet in the table
+     */
+    void put(StockShares shares) {
+        if((this.size + 1) * 4 > this.slots.keys.length * 3) {
+            Slots old = this.slots;
+            Slots grown = new Slots(Math.max(INITIAL_CAPACITY, old.keys.length * 2));
+            for(int i = 0; i < old.keys.length; i++) {
+                if(old.keys[i] != 0)
+                    insert(grown, old.values[i]);
+            }
+            this.slots = grown;
+        }
+        insert(this.slots, shares);
+        this.size++;
+    }
+
+    private static void insert(Slots slots, StockShares shares) {
+        int listingId = shares.getListing().getId();
+        int mask = slots.keys.length - 1;
+        int i = listingId & mask;
+        while(slots.keys[i] != 0)
+            i = (i + 1) & mask;
+        slots.values[i] = shares;
+        KEYS.setRelease(slots.keys, i, listingId + 1);
+    }
+
+    //the value of a slot may only be read after its key has been read here
+    private static int keyAt(Slots slots, int i) {
+        return (int) KEYS.getAcquire(slots.keys, i);
+    }
+
+    /**
+     * Add the quantity of every holding to sharesByListing, and value the holdings at prices instead of their listings' current prices.
+     * Holdings of listings with an id past the end of prices are skipped.
+     * @param sharesByListing share counts indexed by listing id
+     * @param prices prices in minor units indexed by listing id
+     * @return the value of the holdings in minor units
+     */
+    long addTo(long[] sharesByListing, long[] prices) {
+        Slots slots = this.slots;
+        long value = 0;
+        for(int i = 0; i < slots.keys.length; i++) {
+            int id = keyAt(slots, i) - 1;
+            if(id < 0 || id >= prices.length)
+                continue;
+            int quantity = slots.values[i].getQuantity();
+            sharesByListing[id] += quantity;
+            value = Money.add(value, Money.times(prices[id], quantity));
+        }
+        return value;
+    }
+
+    /**
+     * @return the number of holdings; only exact under the Patron's lock
+     */
+    int size() {
+        return this.size;
+    }
+
+    /**
+     * Copy the listing id, quantity and current listing price of every holding into the given arrays, which must hold at least
+     * size() entries. Must be called under the Patron's lock.
+     * @param listingIds
+     * @param quantities
+     * @param prices in minor units
+     * @return the number of holdings copied
+     */
+    int copyTo(int[] listingIds, int[] quantities, long[] prices) {
+        Slots slots = this.slots;
+        int n = 0;
+        for(int i = 0; i < slots.keys.length; i++) {
+            int key = keyAt(slots, i);
+            if(key == 0)
+                continue;
+            StockShares shares = slots.values[i];
+            listingIds[n] = key - 1;
+            quantities[n] = shares.getQuantity();
+            prices[n++] = shares.getListing().getMinorPrice();
+        }
+        return n;
+    }
+
+    /**
+     * @return a new list of every holding
+     */
+    List<StockShares> toList() {
+        Slots slots = this.slots;
+        List<StockShares> list = new ArrayList<>(this.size);
+        for(int i = 0; i < slots.keys.length; i++) {
+            if(keyAt(slots, i) != 0)
+                list.add(slots.values[i]);
+        }
+        return list;
+    }
+}
@@ -0,0 +1,115 @@
+package bank;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Hands out the ids of one kind of Bank object, patrons or accounts, and finds the object with a given id in constant time.
+ *
+ * Ids are firstId, firstId + stride, firstId + 2 * stride, ... in the order they are allocated. Allocation is a single atomic
+ * fetch-and-add, so any number of threads can allocate at once without retrying, and an id is never handed out twice: once the
+ * ids run past Integer.MAX_VALUE, allocate() throws instead of wrapping around.
+ *
+ * Because ids are dense, the objects are kept in an array indexed by (id - firstId) / stride rather than a hash table, so a lookup
+ * is two array reads with no hashing or boxed keys. The array is split into chunks that are allocated as ids reach them, so growing
+ * it never copies the objects already stored, and lookups never lock. Objects are stored with volatile writes, so a thread that
+ * finds one sees it fully constructed.
+ * @see Bank#getAccount(int)
+ * @see Bank#getPatron(int)
+ */
+class IdIndex<T> {
+    private static final int CHUNK_BITS = 12;
+    private static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+    private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+
+    private final int firstId;
+    private final int stride;
+    private final AtomicInteger next;
+    private volatile AtomicReferenceArray<T>[] chunks;
+
+    /**
+     * @param firstId the first id to hand out
+     * @param stride the difference between consecutive ids
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    IdIndex(int firstId, int stride) {
+        this.firstId = firstId;
+        this.stride = stride;
+        this.next = new AtomicInteger(firstId);
+        this.chunks = new AtomicReferenceArray[0];
+    }
+
+    /**
+     * @return a new id, greater than every id allocated before
+     * @throws IllegalStateException if every id has been handed out
+     */
+    int allocate() {
+        int id = this.next.getAndAdd(this.stride);
+        //a negative id means the counter has passed Integer.MAX_VALUE
+        if(id < this.firstId)
+            throw new IllegalStateException("Out of ids");
+        return id;
+    }
+
+    /**
+     * Make sure id and every id before it are never allocated, e.g. because they were restored from a journal.
+     * @param id
+     */
+    void allocatedUpTo(int id) {
+        this.next.accumulateAndGet(id + this.stride, Math::max);
+    }
+
+    /**
+     * @param id an id allocated by this index
+     * @param value the object with that id
+     */
+    void put(int id, T value) {
+        int index = this.indexOf(id);
+        if(index < 0)
+            throw new IllegalArgumentException("Id " + id + " isn't handed out by this index");
+        int chunk = index >>> CHUNK_BITS;
+        AtomicReferenceArray<T>[] chunks = this.chunks;
+        if(chunk >= chunks.length || chunks[chunk] == null)
+            chunks = this.addChunk(chunk);
+        chunks[chunk].set(index & CHUNK_MASK, value);
+    }
+
+    /**
+     * @param id
+     * @return the object stored with id, or null if there is none
+     */
+    T get(int id) {
+        int index = this.indexOf(id);
+        if(index < 0)
+            return null;
+        AtomicReferenceArray<T>[] chunks = this.chunks;
+        int chunk = index >>> CHUNK_BITS;
+        if(chunk >= chunks.length)
+            return null;
+        AtomicReferenceArray<T> slots = chunks[chunk];
+        return slots == null ? null : slots.get(index & CHUNK_MASK);
+    }
+
+    //the position of id in the array, or -1 if this index never hands out id
+    private int indexOf(int id) {
+        int offset = id - this.firstId;
+        if(offset < 0)
+            return -1;
+        if(this.stride == 1)
+            return offset;
+        return offset % this.stride == 0 ? offset / this.stride : -1;
+    }
+
+    private synchronized AtomicReferenceArray<T>[] addChunk(int chunk) {
+        AtomicReferenceArray<T>[] chunks = this.chunks;
+        if(chunk < chunks.length && chunks[chunk] != null)
+            return chunks;
+        if(chunk >= chunks.length)
+            chunks = Arrays.copyOf(chunks, Math.max(chunk + 1, chunks.length * 2));
+        //a reader that sees the chunk sees it fully constructed, since AtomicReferenceArray keeps its slots in a final field
+        chunks[chunk] = new AtomicReferenceArray<>(CHUNK_SIZE);
+        this.chunks = chunks;
+        return chunks;
+    }
+}
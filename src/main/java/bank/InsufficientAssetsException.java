@@ -1,3 +1,5 @@
+package bank;
+
 public class InsufficientAssetsException extends Exception {
     private final Transaction tx;
     private final Patron p;
@@ -0,0 +1,146 @@
+package bank;
+
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.IntStream;
+
+/**
+ * Credits interest to every SavingsAccount of a Bank in one pass over its BalanceStore, rather than one CashTransaction per account.
+ *
+ * The store's chunks are accrued in parallel on the common fork-join pool (or the pool this is called from). For each chunk, the locks
+ * of its accounts' Patrons are taken with tryLock, interest is computed for the whole chunk in a tight loop over its long[] of balances,
+ * and then credited to every account whose lock was taken before the locks are released. An account whose Patron is busy trading is
+ * not waited for while other locks are held: it is accrued on its own afterwards, so the job can never deadlock with a transaction.
+ *
+ * Interest is floor(balance * rate) in minor units, computed exactly in integer arithmetic, and only accrues on positive balances.
+ * When the JVM is started with --add-modules jdk.incubator.vector, each chunk's interest is computed with the Vector API by
+ * VectorInterest; otherwise a scalar loop computes the same results.
+ * Each credit is recorded in the account's history as a DEPOSIT, appended straight to the history's columns, and journaled like the
+ * cash leg of a trade, so a journaled Bank recovers it.
+ * @see Bank#accrueInterest(double)
+ * @see BalanceStore
+ */
+class InterestAccrual {
+    //rates are applied in billionths
+    static final long RATE_SCALE = 1_000_000_000L;
+    //the Vector API is an incubator module, only resolved when asked for with --add-modules
+    static final boolean VECTORIZED = ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent();
+
+    private InterestAccrual() {
+    }
+
+    /**
+     * @param rate the interest per period, as a fraction between 0 and 1
+     * @return rate in billionths
+     * @throws IllegalArgumentException if rate is NaN or outside [0, 1]
+     */
+    static long scaledRate(double rate) {
+        if(!(rate >= 0 && rate <= 1))
+            throw new IllegalArgumentException("Rate must be between 0 and 1");
+        return Math.round(rate * RATE_SCALE);
+    }
+
+    /**
+     * Compute the interest on the first count balances, with the Vector API if it's available.
+     * @param balances in minor units
+     * @param count
+     * @param rate in billionths, between 0 and RATE_SCALE
+     * @param interest receives the interest on balances[i] at index i, in minor units
+     */
+    static void computeInterest(long[] balances, int count, long rate, long[] interest) {
+        if(VECTORIZED)
+            VectorInterest.computeInterest(balances, count, rate, interest);
+        else
+            computeInterestScalar(balances, count, rate, interest);
+    }
+
+    /**
+     * Compute the interest on the first count balances one at a time.
+     * The loop has no branches, and splits each balance around RATE_SCALE so that no product overflows.
+     * @see #computeInterest(long[], int, long, long[])
+     */
+    static void computeInterestScalar(long[] balances, int count, long rate, long[] interest) {
+        for(int i = 0; i < count; i++)
+            interest[i] = interestOn(balances[i], rate);
+    }
+
+    /**
+     * @param balance in minor units
+     * @param rate in billionths
+     * @return floor(balance * rate / RATE_SCALE), or 0 if balance <= 0
+     */
+    static long interestOn(long balance, long rate) {
+        balance = Math.max(balance, 0);
+        return balance / RATE_SCALE * rate + balance % RATE_SCALE * rate / RATE_SCALE;
+    }
+
+    /**
+     * Accrue interest on every SavingsAccount in store, and wait for the journal once at the end if there is one.
+     * @param store
+     * @param rate in billionths
+     * @param journal the Bank's journal, or null
+     * @return the total interest credited, in minor units
+     */
+    static long accrue(BalanceStore store, long rate, Journal journal) {
+        int chunks = BalanceStore.chunkCount(store.size());
+        long total = IntStream.range(0, chunks).parallel().mapToLong(c -> accrueChunk(store, c, rate)).sum();
+        if(journal != null)
+            journal.awaitDurable(journal.getWrittenPosition());
+        return total;
+    }
+
+    private static long accrueChunk(BalanceStore store, int chunk, long rate) {
+        SavingsAccount[] owners = store.ownersOf(chunk);
+        long[] balances = store.balancesOf(chunk);
+        int count = Math.min(BalanceStore.CHUNK_SIZE, store.size() - chunk * BalanceStore.CHUNK_SIZE);
+        ReentrantLock[] locks = new ReentrantLock[count];
+        boolean[] held = new boolean[count];
+        long[] interest = new long[count];
+        int deferred = 0;
+        long timestamp = System.nanoTime();
+        long total = 0;
+        try {
+            for(int i = 0; i < count; i++) {
+                locks[i] = owners[i].getPatron().getLock();
+                held[i] = locks[i].tryLock();
+                if(!held[i])
+                    deferred++;
+            }
+            //every balance read here that is credited below was written under a lock this thread now holds
+            computeInterest(balances, count, rate, interest);
+            for(int i = 0; i < count; i++) {
+                if(held[i])
+                    total += credit(owners[i], interest[i], timestamp);
+            }
+        } finally {
+            for(int i = 0; i < count; i++) {
+                if(held[i])
+                    locks[i].unlock();
+            }
+        }
+        for(int i = 0; deferred > 0 && i < count; i++) {
+            if(held[i])
+                continue;
+            deferred--;
+            locks[i].lock();
+            try {
+                total += credit(owners[i], interestOn(owners[i].getMinorValue(), rate), System.nanoTime());
+            } finally {
+                locks[i].unlock();
+            }
+        }
+        return total;
+    }
+
+    //must be called under the account's Patron's lock; returns the amount credited
+    private static long credit(SavingsAccount account, long interest, long timestamp) {
+        if(interest == 0)
+            return 0;
+        try {
+            account.executeCashLeg(Transaction.TxType.DEPOSIT, interest, timestamp);
+            return interest;
+        } catch(ArithmeticException e) {
+            //a balance this close to overflowing earns nothing more
+            return 0;
+        }
+    }
+}
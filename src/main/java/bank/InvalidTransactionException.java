@@ -1,3 +1,5 @@
+package bank;
+
 public class InvalidTransactionException extends Exception {
     private final Transaction.TxType type;
 
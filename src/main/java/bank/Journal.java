@@ -0,0 +1,508 @@
+package bank;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.CRC32C;
+
+/**
+ * An append-only journal of everything that changes the state of a Bank: new patrons, account openings, listing changes and executed transactions.
+ * Replaying the journal into an empty Bank rebuilds the state it had when the journal was last written.
+ *
+ * The journal is a directory of fixed size segment files, each of which is memory-mapped while it is being written.
+ * Every record is laid out as [int payload length][int CRC32C of payload][payload], where the payload starts with a record type byte.
+ * A length of 0 marks the end of the written part of a segment. A record whose checksum does not match is a torn write from a crash,
+ * and it and everything after it in its segment are discarded on recovery. Appending always resumes in a fresh segment after recovery.
+ * Segments that a snapshot covers are not read on recovery, and are deleted once no retained snapshot needs them.
+ *
+ * Appending only copies a few dozen bytes into the mapped segment, so appends are serialized on a short critical section.
+ * How records reach the disk is set by the FsyncPolicy. Under ALWAYS, appenders wait for their record to be forced, and a single
+ * force covers every record written before it began (group commit), so concurrent appenders share the cost of one fsync.
+ * @see Bank#recover(StockExchange, Path, FsyncPolicy)
+ */
+public class Journal implements Closeable {
+    /**
+     * when records are forced to the storage device
+     */
+    public enum FsyncPolicy {
+        /** never force explicitly; the operating system writes the mapped pages back when it chooses. Survives a process crash, not a power loss */
+        NEVER,
+        /** force in the background at a fixed interval; a power loss can lose at most that interval */
+        PERIODIC,
+        /** appenders wait until their record has been forced; concurrent appenders share each force */
+        ALWAYS
+    }
+
+    /**
+     * receives the records of a journal, in the order they were written, while it is being opened
+     */
+    interface Replayer {
+        void patronCreated(int patronId);
+        void savingsAccountOpened(int patronId, int accountNumber);
+        void brokerageAccountOpened(int patronId, int accountNumber);
+        void listingCreated(String tickerSymbol, long initialPrice, int availableShares);
+        void availableSharesChanged(String tickerSymbol, int delta);
+        void priceChanged(String tickerSymbol, long price);
+        void cashTransaction(int accountNumber, Transaction.TxType type, long amount, long nanoTimestamp);
+        void trade(int accountNumber, Transaction.TxType type, String tickerSymbol, int quantity, long cashAmount, long nanoTimestamp);
+        void fill(int buyerAccount, int sellerAccount, String tickerSymbol, int quantity, long cashAmount, long nanoTimestamp);
+        void transfer(int fromAccount, int toAccount, long amount, long nanoTimestamp);
+    }
+
+    static final int DEFAULT_SEGMENT_SIZE = 64 << 20;
+    static final long DEFAULT_PERIOD_MILLIS = 10;
+
+    private static final byte PATRON_CREATED = 1;
+    private static final byte SAVINGS_OPENED = 2;
+    private static final byte BROKERAGE_OPENED = 3;
+    private static final byte LISTING_CREATED = 4;
+    private static final byte SHARES_CHANGED = 5;
+    private static final byte PRICE_CHANGED = 6;
+    private static final byte CASH_TX = 7;
+    //8 and 9 recorded the share leg of a trade or fill apart from its cash leg, and are no longer written or read
+    private static final byte TRANSFER = 10;
+    private static final byte TRADE = 11;
+    private static final byte FILL = 12;
+
+    private static final int HEADER_SIZE = 8;
+    private static final int MAX_PAYLOAD = 512;
+    private static final String SEGMENT_PREFIX = "journal-";
+    private static final String SEGMENT_SUFFIX = ".seg";
+    private static final Transaction.TxType[] TYPES = Transaction.TxType.values();
+    private static final ThreadLocal<ByteBuffer> SCRATCH = ThreadLocal.withInitial(() -> ByteBuffer.allocate(MAX_PAYLOAD));
+    private static final ThreadLocal<CRC32C> CRC = ThreadLocal.withInitial(CRC32C::new);
+
+    private final Path directory;
+    private final FsyncPolicy policy;
+    private final int segmentSize;
+    private final ReentrantLock appendLock;
+    private final ReentrantLock forceLock;
+    private ScheduledExecutorService flusher;
+
+    //guarded by appendLock
+    private FileChannel channel;
+    private MappedByteBuffer segment;
+    private long segmentIndex;
+    //logical positions, i.e. segmentIndex * segmentSize + offset within the segment
+    private volatile long writtenPosition;
+    private volatile long durablePosition;
+    private volatile boolean closed;
+
+    private Journal(Path directory, FsyncPolicy policy, int segmentSize) {
+        this.directory = directory;
+        this.policy = policy;
+        this.segmentSize = segmentSize;
+        this.appendLock = new ReentrantLock();
+        this.forceLock = new ReentrantLock();
+    }
+
+    private Journal started(long position, long periodMillis) {
+        this.writtenPosition = position;
+        this.durablePosition = position;
+        if(this.policy == FsyncPolicy.PERIODIC) {
+            this.flusher = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread thread = new Thread(r, "journal-flusher");
+                thread.setDaemon(true);
+                return thread;
+            });
+            this.flusher.scheduleWithFixedDelay(this::forceQuietly, periodMillis, periodMillis, TimeUnit.MILLISECONDS);
+        }
+        return this;
+    }
+
+    /**
+     * Open the journal in directory, creating it if it doesn't exist, and pass every intact record in it to replayer.
+     * New records are appended to a new segment after the existing ones.
+     * @param directory
+     * @param policy
+     * @param replayer receives the existing records, or null to skip them
+     * @return the open journal
+     * @throws IOException if the directory or its segments can't be read or written
+     */
+    static Journal open(Path directory, FsyncPolicy policy, Replayer replayer) throws IOException {
+        return open(directory, policy, replayer, 0);
+    }
+
+    /**
+     * @param firstSegment segments with a lower index are neither read nor replayed, e.g. because a snapshot already covers them,
+     * and new records are never appended below it
+     * @see #open(Path, FsyncPolicy, Replayer)
+     */
+    static Journal open(Path directory, FsyncPolicy policy, Replayer replayer, long firstSegment) throws IOException {
+        return open(directory, policy, replayer, firstSegment, DEFAULT_SEGMENT_SIZE, DEFAULT_PERIOD_MILLIS);
+    }
+
+    /**
+     * @param segmentSize the size of each segment file in bytes
+     * @param periodMillis how often the journal is forced under FsyncPolicy.PERIODIC
+     * @see #open(Path, FsyncPolicy, Replayer, long)
+     */
+    static Journal open(Path directory, FsyncPolicy policy, Replayer replayer, long firstSegment, int segmentSize, long periodMillis) throws IOException {
+        if(policy == null)
+            throw new IllegalArgumentException("Policy cannot be null");
+        if(segmentSize < MAX_PAYLOAD + 2 * HEADER_SIZE)
+            throw new IllegalArgumentException("Segment size is too small");
+        Files.createDirectories(directory);
+        Journal journal = new Journal(directory, policy, segmentSize);
+        List<Long> indexes = listSegments(directory);
+        long next = Math.max(firstSegment, 0);
+        for(long index : indexes) {
+            if(index < firstSegment)
+                continue;
+            journal.mapSegment(index);
+            int end = replay(journal.segment, replayer);
+            if(end == 0 && index == indexes.get(indexes.size() - 1)) {
+                //an empty last segment can simply be reused
+                return journal.started(index * segmentSize, periodMillis);
+            }
+            journal.channel.close();
+            next = index + 1;
+        }
+        //never append behind a torn record: the bytes after it may hold stale records that would be replayed next time
+        journal.mapSegment(next);
+        return journal.started(next * segmentSize, periodMillis);
+    }
+
+    /**
+     * Pass the records of the segments numbered first through last to replayer. The segments must be sealed, so that no one is appending to them.
+     * @param directory
+     * @param first
+     * @param last
+     * @param replayer
+     * @throws IOException if a segment can't be read
+     * @see #seal()
+     */
+    static void replaySealed(Path directory, long first, long last, Replayer replayer) throws IOException {
+        for(long index : listSegments(directory)) {
+            if(index < first || index > last)
+                continue;
+            try(FileChannel channel = FileChannel.open(segmentPath(directory, index), StandardOpenOption.READ)) {
+                replay(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()), replayer);
+            }
+        }
+    }
+
+    /**
+     * Delete the sealed segments numbered up to lastSegment, e.g. once every retained snapshot covers them.
+     * The segment being written is never deleted.
+     * @param lastSegment
+     * @return the number of segments deleted
+     * @throws IOException if a segment can't be deleted
+     */
+    int retire(long lastSegment) throws IOException {
+        long current;
+        this.appendLock.lock();
+        try {
+            current = this.segmentIndex;
+        } finally {
+            this.appendLock.unlock();
+        }
+        int deleted = 0;
+        for(long index : listSegments(this.directory)) {
+            if(index <= lastSegment && index < current && Files.deleteIfExists(segmentPath(this.directory, index)))
+                deleted++;
+        }
+        return deleted;
+    }
+
+    private static List<Long> listSegments(Path directory) throws IOException {
+        List<Long> indexes = new ArrayList<>();
+        try(DirectoryStream<Path> stream = Files.newDirectoryStream(directory, SEGMENT_PREFIX + "*" + SEGMENT_SUFFIX)) {
+            for(Path path : stream) {
+                String name = path.getFileName().toString();
+                indexes.add(Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length())));
+            }
+        }
+        indexes.sort(null);
+        return indexes;
+    }
+
+    private static Path segmentPath(Path directory, long index) {
+        return directory.resolve(String.format("%s%020d%s", SEGMENT_PREFIX, index, SEGMENT_SUFFIX));
+    }
+
+    private void mapSegment(long index) throws IOException {
+        this.channel = FileChannel.open(segmentPath(this.directory, index), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        this.segment = this.channel.map(FileChannel.MapMode.READ_WRITE, 0, this.segmentSize);
+        this.segmentIndex = index;
+    }
+
+    /**
+     * @return the offset just past the last intact record of the segment
+     */
+    private static int replay(ByteBuffer segment, Replayer replayer) {
+        ByteBuffer buffer = segment.duplicate();
+        buffer.clear();
+        CRC32C crc = CRC.get();
+        while(buffer.remaining() >= HEADER_SIZE) {
+            int start = buffer.position();
+            int length = buffer.getInt();
+            int checksum = buffer.getInt();
+            if(length <= 0 || length > MAX_PAYLOAD || length > buffer.remaining())
+                return start;
+            ByteBuffer payload = buffer.slice(buffer.position(), length);
+            crc.reset();
+            crc.update(payload.duplicate());
+            if((int) crc.getValue() != checksum)
+                return start;
+            if(replayer != null)
+                decode(payload, replayer);
+            buffer.position(buffer.position() + length);
+        }
+        return buffer.position();
+    }
+
+    private static void decode(ByteBuffer payload, Replayer replayer) {
+        switch(payload.get()) {
+            case PATRON_CREATED -> replayer.patronCreated(payload.getInt());
+            case SAVINGS_OPENED -> replayer.savingsAccountOpened(payload.getInt(), payload.getInt());
+            case BROKERAGE_OPENED -> replayer.brokerageAccountOpened(payload.getInt(), payload.getInt());
+            case LISTING_CREATED -> replayer.listingCreated(getString(payload), payload.getLong(), payload.getInt());
+            case SHARES_CHANGED -> replayer.availableSharesChanged(getString(payload), payload.getInt());
+            case PRICE_CHANGED -> replayer.priceChanged(getString(payload), payload.getLong());
+            case CASH_TX -> replayer.cashTransaction(payload.getInt(), TYPES[payload.get()], payload.getLong(), payload.getLong());
+            case TRANSFER -> replayer.transfer(payload.getInt(), payload.getInt(), payload.getLong(), payload.getLong());
+            case TRADE -> replayer.trade(payload.getInt(), TYPES[payload.get()], getString(payload), payload.getInt(), payload.getLong(), payload.getLong());
+            case FILL -> replayer.fill(payload.getInt(), payload.getInt(), getString(payload), payload.getInt(), payload.getLong(), payload.getLong());
+            default -> throw new IllegalStateException("Unknown journal record type");
+        }
+    }
+
+    private static String getString(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.get() & 0xFF];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static void putString(ByteBuffer buffer, String s) {
+        putString(buffer, s.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static void putString(ByteBuffer buffer, byte[] bytes) {
+        if(bytes.length > 0xFF)
+            throw new IllegalArgumentException("String is too long to journal");
+        buffer.put((byte) bytes.length).put(bytes);
+    }
+
+    private static ByteBuffer start(byte recordType) {
+        ByteBuffer scratch = SCRATCH.get();
+        scratch.clear();
+        return scratch.put(recordType);
+    }
+
+    long patronCreated(int patronId) {
+        return this.append(start(PATRON_CREATED).putInt(patronId));
+    }
+
+    long savingsAccountOpened(int patronId, int accountNumber) {
+        return this.append(start(SAVINGS_OPENED).putInt(patronId).putInt(accountNumber));
+    }
+
+    long brokerageAccountOpened(int patronId, int accountNumber) {
+        return this.append(start(BROKERAGE_OPENED).putInt(patronId).putInt(accountNumber));
+    }
+
+    long listingCreated(String tickerSymbol, long initialPrice, int availableShares) {
+        ByteBuffer scratch = start(LISTING_CREATED);
+        putString(scratch, tickerSymbol);
+        return this.append(scratch.putLong(initialPrice).putInt(availableShares));
+    }
+
+    long availableSharesChanged(StockListing listing, int delta) {
+        ByteBuffer scratch = start(SHARES_CHANGED);
+        putString(scratch, listing.getTickerBytes());
+        return this.append(scratch.putInt(delta));
+    }
+
+    long priceChanged(StockListing listing, long price) {
+        ByteBuffer scratch = start(PRICE_CHANGED);
+        putString(scratch, listing.getTickerBytes());
+        return this.append(scratch.putLong(price));
+    }
+
+    /**
+     * record a cash transaction given by its fields, so that cash legs executed without a CashTransaction are journaled identically
+     * @param amount in minor units
+     */
+    long cashTransaction(int accountNumber, Transaction.TxType type, long amount, long nanoTimestamp) {
+        return this.append(start(CASH_TX).putInt(accountNumber).put((byte) type.ordinal()).putLong(amount).putLong(nanoTimestamp));
+    }
+
+    /**
+     * record a trade on a brokerage account together with its cash leg on the Patron's savings account, as one record,
+     * so a torn write can never keep the shares without the cash or the cash without the shares
+     * @param cashAmount the price of the trade times its quantity, in minor units
+     */
+    long trade(int accountNumber, Transaction.TxType type, StockListing listing, int quantity, long cashAmount, long nanoTimestamp) {
+        ByteBuffer scratch = start(TRADE).putInt(accountNumber).put((byte) type.ordinal());
+        putString(scratch, listing.getTickerBytes());
+        return this.append(scratch.putInt(quantity).putLong(cashAmount).putLong(nanoTimestamp));
+    }
+
+    /**
+     * record both sides of a trade matched on an OrderBook, with the shares and cash that each side moves, as one record;
+     * unlike a trade it never touches the listing's inventory
+     * @param cashAmount the price of the trade times its quantity, in minor units
+     */
+    long fill(int buyerAccount, int sellerAccount, StockListing listing, int quantity, long cashAmount, long nanoTimestamp) {
+        ByteBuffer scratch = start(FILL).putInt(buyerAccount).putInt(sellerAccount);
+        putString(scratch, listing.getTickerBytes());
+        return this.append(scratch.putInt(quantity).putLong(cashAmount).putLong(nanoTimestamp));
+    }
+
+    /**
+     * record both legs of a transfer between two savings accounts as one record, so a torn write can never keep one leg without the other
+     * @param amount in minor units
+     */
+    long transfer(int fromAccount, int toAccount, long amount, long nanoTimestamp) {
+        return this.append(start(TRANSFER).putInt(fromAccount).putInt(toAccount).putLong(amount).putLong(nanoTimestamp));
+    }
+
+    /**
+     * @return the logical position just past the record, to be passed to awaitDurable
+     */
+    private long append(ByteBuffer payload) {
+        payload.flip();
+        CRC32C crc = CRC.get();
+        crc.reset();
+        //the scratch buffers are heap buffers, so checksum the backing array rather than allocate a duplicate view
+        crc.update(payload.array(), payload.arrayOffset() + payload.position(), payload.remaining());
+        int checksum = (int) crc.getValue();
+        int length = payload.remaining();
+
+        this.appendLock.lock();
+        try {
+            if(this.closed)
+                throw new IllegalStateException("Journal is closed");
+            //always leave room for the 0 length that ends a segment
+            if(this.segment.remaining() < HEADER_SIZE + length + 4)
+                this.rollSegment();
+            this.segment.putInt(length).putInt(checksum).put(payload);
+            long position = this.segmentIndex * this.segmentSize + this.segment.position();
+            this.writtenPosition = position;
+            return position;
+        } finally {
+            this.appendLock.unlock();
+        }
+    }
+
+    private void rollSegment() {
+        try {
+            this.segment.putInt(0);
+            if(this.policy != FsyncPolicy.NEVER)
+                this.segment.force();
+            this.channel.close();
+            this.mapSegment(this.segmentIndex + 1);
+        } catch(IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Close the segment being written, unless it is still empty, so that every record written so far is in a sealed segment
+     * that can be read without interfering with appenders.
+     * @return the index of the last sealed segment, or -1 if there is none
+     */
+    long seal() {
+        this.appendLock.lock();
+        try {
+            if(this.closed)
+                throw new IllegalStateException("Journal is closed");
+            if(this.segment.position() > 0) {
+                this.rollSegment();
+                this.writtenPosition = this.segmentIndex * this.segmentSize;
+            }
+            return this.segmentIndex - 1;
+        } finally {
+            this.appendLock.unlock();
+        }
+    }
+
+    /**
+     * Under FsyncPolicy.ALWAYS, wait until every record up to position has been forced to the storage device.
+     * Whichever waiting thread gets to force first forces the records of all the others too. Does nothing under the other policies.
+     * @param position a value returned by one of the append methods
+     */
+    void awaitDurable(long position) {
+        if(this.policy == FsyncPolicy.ALWAYS && this.durablePosition < position)
+            this.force();
+    }
+
+    private void force() {
+        this.forceLock.lock();
+        try {
+            if(this.durablePosition >= this.writtenPosition)
+                return;
+            MappedByteBuffer current;
+            long target;
+            this.appendLock.lock();
+            try {
+                if(this.closed)
+                    return;
+                current = this.segment;
+                target = this.writtenPosition;
+            } finally {
+                this.appendLock.unlock();
+            }
+            //earlier segments were forced when they were rolled
+            current.force();
+            this.durablePosition = target;
+        } finally {
+            this.forceLock.unlock();
+        }
+    }
+
+    private void forceQuietly() {
+        if(!this.closed)
+            this.force();
+    }
+
+    /**
+     * @return the position just past the last record appended so far, e.g. to wait for a whole batch of appends at once
+     * @see #awaitDurable(long)
+     */
+    long getWrittenPosition() {
+        return this.writtenPosition;
+    }
+
+    /**
+     * @return the directory holding this journal's segments
+     */
+    Path getDirectory() {
+        return this.directory;
+    }
+
+    /**
+     * force everything written so far and release the current segment. Appending to a closed journal throws IllegalStateException.
+     */
+    @Override
+    public void close() throws IOException {
+        if(this.flusher != null)
+            this.flusher.shutdown();
+        this.appendLock.lock();
+        try {
+            if(this.closed)
+                return;
+            this.closed = true;
+            this.segment.force();
+            this.durablePosition = this.writtenPosition;
+            this.channel.close();
+        } finally {
+            this.appendLock.unlock();
+        }
+    }
+}
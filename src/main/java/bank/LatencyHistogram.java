@@ -0,0 +1,126 @@
+package bank;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A concurrent histogram of latencies in nanoseconds with log-linear buckets, in the style of HdrHistogram: values below 64 each
+ * have their own bucket, and every power of 2 above that is split into 32 buckets, so any recorded value is reported within about 3%.
+ * The whole range of a long fits in under 2000 buckets, so recording is one array increment and never allocates.
+ *
+ * The counts are striped: each thread increments the buckets of one of several copies, picked by its thread id, so threads recording
+ * the same latency at once don't all contend on one counter. Reading the histogram adds the stripes up.
+ * @see TransactionMetrics
+ */
+class LatencyHistogram {
+    private static final int SUB_BUCKET_BITS = 6;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int HALF = SUB_BUCKETS >> 1;
+    private static final int BUCKETS = SUB_BUCKETS + (63 - SUB_BUCKET_BITS + 1) * HALF;
+    //the smallest power of 2 covering the processors, capped since each stripe is about 15 KB
+    private static final int STRIPES = Math.min(8, Integer.highestOneBit(Math.max(1, Runtime.getRuntime().availableProcessors() * 2 - 1)));
+
+    private final AtomicLongArray[] stripes;
+    private final LongAdder total;
+    private final AtomicLong max;
+
+    LatencyHistogram() {
+        this.stripes = new AtomicLongArray[STRIPES];
+        for(int i = 0; i < STRIPES; i++)
+            this.stripes[i] = new AtomicLongArray(BUCKETS);
+        this.total = new LongAdder();
+        this.max = new AtomicLong();
+    }
+
+    /**
+     * @param nanos a latency; negative values are counted as 0
+     */
+    void record(long nanos) {
+        long value = Math.max(0, nanos);
+        //consecutive thread ids, as in a pool, land on different stripes
+        this.stripes[(int) Thread.currentThread().getId() & (STRIPES - 1)].incrementAndGet(indexOf(value));
+        this.total.add(value);
+        long current = this.max.get();
+        while(value > current && !this.max.compareAndSet(current, value))
+            current = this.max.get();
+    }
+
+    private static int indexOf(long value) {
+        if(value < SUB_BUCKETS)
+            return (int) value;
+        int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS + 1;
+        return SUB_BUCKETS + (shift - 1) * HALF + (int) (value >>> shift) - HALF;
+    }
+
+    //the highest value that is counted in the bucket at index
+    private static long highestValueAt(int index) {
+        if(index < SUB_BUCKETS)
+            return index;
+        int shift = (index - SUB_BUCKETS) / HALF + 1;
+        long top = (index - SUB_BUCKETS) % HALF + HALF;
+        return ((top + 1) << shift) - 1;
+    }
+
+    /**
+     * @return the number of values recorded
+     */
+    long getCount() {
+        long count = 0;
+        for(int i = 0; i < BUCKETS; i++)
+            count += this.countAt(i);
+        return count;
+    }
+
+    private long countAt(int index) {
+        long count = 0;
+        for(AtomicLongArray stripe : this.stripes)
+            count += stripe.get(index);
+        return count;
+    }
+
+    /**
+     * @return the largest value recorded, exactly
+     */
+    long getMax() {
+        return this.max.get();
+    }
+
+    /**
+     * @return the mean of the values recorded, or 0 if there are none
+     */
+    double getMean() {
+        long count = this.getCount();
+        return count == 0 ? 0 : this.total.sum() / (double) count;
+    }
+
+    /**
+     * @param percentile between 0 and 100
+     * @return a value that at least percentile % of the recorded values are less than or equal to, or 0 if there are none
+     */
+    long getValueAtPercentile(double percentile) {
+        long count = this.getCount();
+        if(count == 0)
+            return 0;
+        long rank = Math.max(1, (long) Math.ceil(Math.min(100, percentile) / 100 * count));
+        long seen = 0;
+        for(int i = 0; i < BUCKETS; i++) {
+            seen += this.countAt(i);
+            if(seen >= rank)
+                return Math.min(highestValueAt(i), this.max.get());
+        }
+        return this.max.get();
+    }
+
+    /**
+     * forget every value recorded so far; values recorded concurrently may or may not survive
+     */
+    void reset() {
+        for(AtomicLongArray stripe : this.stripes) {
+            for(int i = 0; i < BUCKETS; i++)
+                stripe.set(i, 0);
+        }
+        this.total.reset();
+        this.max.set(0);
+    }
+}
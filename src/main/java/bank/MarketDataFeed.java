@@ -0,0 +1,479 @@
+package bank;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Feeds market price ticks into the listings of a StockExchange.
+ *
+ * Producers (ingest, reading "SYMBOL,PRICE" lines from a file or socket channel, or offer) put ticks into a preallocated ring buffer.
+ * A single applier thread drains the ring in batches, keeps only the last price of each ticker within a batch, sets those prices on
+ * the listings (which revalues their holders), and then hands the batch to every registered PriceListener.
+ *
+ * Nothing on the tick path allocates once every ticker has been seen: the ring holds primitive feed ids and prices, symbols are
+ * matched against cached bytes instead of being turned into Strings, and the conflation buffers are reused. The feed never takes a
+ * Patron's lock: StockListing.setMinorPrice revalues holders with compare-and-set, visits only holders with shares, and journals the
+ * price without waiting for it to become durable, so the applier neither blocks trades nor waits on them. When the ring is full,
+ * offer returns false and ingest waits, so a fast source slows down instead of the applier falling behind without bound.
+ * A listener that throws is reported to the applier thread's uncaught exception handler and doesn't stop the other listeners or the feed.
+ * If the applier thread dies anyway, e.g. because a price can't be journaled, offer and ingest throw instead of waiting for it.
+ * Prices are parsed straight into minor units and are rounded to the nearest cent.
+ * @see StockListing#setMinorPrice(long)
+ */
+public class MarketDataFeed implements Closeable {
+    /**
+     * receives each batch of price updates after it has been applied to the listings
+     */
+    public interface PriceListener {
+        /**
+         * @param listings the listings whose price changed in this batch, each at most once; only the first count entries are valid
+         * @param prices the new prices in minor units, at the same indexes
+         * @param count
+         * @see Money
+         */
+        void onPriceUpdates(StockListing[] listings, long[] prices, int count);
+    }
+
+    /** feed id of a symbol that has no listing on the exchange */
+    public static final int UNKNOWN = -1;
+
+    private static final int BATCH_SIZE = 1024;
+    private static final long IDLE_PARK_NANOS = 50_000;
+    private static final int READ_BUFFER_SIZE = 64 << 10;
+    private static final long[] POW10 = {1, 10, 100, 1_000, 10_000, 100_000, 1_000_000, 10_000_000, 100_000_000, 1_000_000_000,
+            10_000_000_000L, 100_000_000_000L, 1_000_000_000_000L, 10_000_000_000_000L, 100_000_000_000_000L, 1_000_000_000_000_000L};
+    //at most this many digits, so a price scaled up to minor units still fits in a long
+    private static final int MAX_DIGITS = 15;
+    private static final long INVALID = -1;
+
+    private final StockExchange exchange;
+    private final List<PriceListener> listeners;
+
+    //ring buffer
+    private final int mask;
+    private final int[] ringIds;
+    private final long[] ringPrices;
+    private final AtomicLongArray published;
+    private final AtomicLong claimed;
+    private volatile long consumed;
+
+    //owned by the applier thread
+    private long[] latest;
+    private long[] markedInBatch;
+    private long batchNumber;
+    private final StockListing[] batchListings;
+    private final long[] batchPrices;
+    private final int[] touched;
+
+    private final AtomicLong received;
+    private final AtomicLong rejected;
+    private final AtomicLong listenerFailures;
+    private volatile long applied;
+    private volatile boolean running;
+    //why the applier thread died, or null while it is alive
+    private volatile Throwable failure;
+    private Thread applier;
+
+    /**
+     * @param exchange the exchange whose listings are repriced
+     * @param capacity the number of ticks the ring buffer holds; rounded up to a power of 2
+     * @throws IllegalArgumentException if exchange is null or capacity <= 0
+     */
+    public MarketDataFeed(StockExchange exchange, int capacity) {
+        if(exchange == null)
+            throw new IllegalArgumentException("Exchange cannot be null");
+        if(capacity <= 0)
+            throw new IllegalArgumentException("Capacity must be > 0");
+        int size = Integer.highestOneBit(Math.max(2, capacity - 1)) << 1;
+        this.exchange = exchange;
+        this.listeners = new CopyOnWriteArrayList<>();
+        this.mask = size - 1;
+        this.ringIds = new int[size];
+        this.ringPrices = new long[size];
+        this.published = new AtomicLongArray(size);
+        for(int i = 0; i < size; i++)
+            this.published.set(i, -1);
+        this.claimed = new AtomicLong();
+        this.latest = new long[16];
+        this.markedInBatch = new long[16];
+        this.batchListings = new StockListing[BATCH_SIZE];
+        this.batchPrices = new long[BATCH_SIZE];
+        this.touched = new int[BATCH_SIZE];
+        this.received = new AtomicLong();
+        this.rejected = new AtomicLong();
+        this.listenerFailures = new AtomicLong();
+    }
+
+    public void addListener(PriceListener listener) {
+        this.listeners.add(listener);
+    }
+
+    public void removeListener(PriceListener listener) {
+        this.listeners.remove(listener);
+    }
+
+    /**
+     * start the applier thread
+     * @throws IllegalStateException if the feed was already started
+     */
+    public synchronized void start() {
+        if(this.applier != null)
+            throw new IllegalStateException("Feed already started");
+        this.running = true;
+        this.applier = new Thread(this::applyLoop, "market-data-applier");
+        this.applier.setDaemon(true);
+        this.applier.start();
+    }
+
+    /**
+     * stop the applier thread after it has applied every tick already in the ring
+     */
+    @Override
+    public void close() {
+        Thread thread;
+        synchronized(this) {
+            this.running = false;
+            thread = this.applier;
+        }
+        if(thread != null) {
+            LockSupport.unpark(thread);
+            try {
+                thread.join();
+            } catch(InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * @param tickerSymbol
+     * @return the feed id to pass to offer for that symbol, which is its listing id, or UNKNOWN if the exchange has no such listing
+     * @see StockListing#getId()
+     */
+    public int idOf(String tickerSymbol) {
+        StockListing listing = this.exchange.getStockListing(tickerSymbol);
+        return listing == null ? UNKNOWN : listing.getId();
+    }
+
+    /**
+     * Put a tick into the ring buffer without waiting.
+     * @param feedId a value returned by idOf
+     * @param price the new price, > 0; rounded to the nearest cent
+     * @return false if the ring is full or the tick is invalid, in which case the tick is dropped
+     * @throws IllegalStateException if the applier thread has died
+     */
+    public boolean offer(int feedId, double price) {
+        long minor;
+        try {
+            minor = Money.of(price);
+        } catch(IllegalArgumentException e) {
+            minor = INVALID;
+        }
+        return this.offerMinorPrice(feedId, minor);
+    }
+
+    /**
+     * Put a tick into the ring buffer without waiting.
+     * @param feedId a value returned by idOf
+     * @param price the new price in minor units, > 0
+     * @return false if the ring is full or the tick is invalid, in which case the tick is dropped
+     * @throws IllegalStateException if the applier thread has died
+     */
+    public boolean offerMinorPrice(int feedId, long price) {
+        Throwable failure = this.failure;
+        if(failure != null)
+            throw new IllegalStateException("Market data applier has died", failure);
+        if(feedId < 0 || feedId >= this.exchange.getListingCount() || price <= 0) {
+            this.rejected.incrementAndGet();
+            return false;
+        }
+        long sequence;
+        do {
+            sequence = this.claimed.get();
+            if(sequence - this.consumed > this.mask)
+                return false;
+        } while(!this.claimed.compareAndSet(sequence, sequence + 1));
+        int slot = (int) sequence & this.mask;
+        this.ringIds[slot] = feedId;
+        this.ringPrices[slot] = price;
+        this.published.lazySet(slot, sequence);
+        this.received.incrementAndGet();
+        return true;
+    }
+
+    /**
+     * Read "SYMBOL,PRICE" lines from channel until it reaches end of stream, putting each tick into the ring buffer and waiting while it is full.
+     * Lines that can't be parsed or name an unknown symbol are counted as rejected and skipped.
+     * @param channel e.g. a FileChannel or a SocketChannel in blocking mode
+     * @throws IOException if reading fails
+     * @throws IllegalStateException if the applier thread has died
+     */
+    public void ingest(ReadableByteChannel channel) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocateDirect(READ_BUFFER_SIZE);
+        SymbolCache cache = new SymbolCache();
+        while(channel.read(buffer) >= 0) {
+            buffer.flip();
+            this.parseLines(buffer, cache);
+            if(buffer.position() == 0 && buffer.limit() == buffer.capacity()) {
+                //a line longer than the whole buffer can't be a tick
+                buffer.clear();
+                this.rejected.incrementAndGet();
+                continue;
+            }
+            buffer.compact();
+        }
+        buffer.flip();
+        if(buffer.hasRemaining()) {
+            ByteBuffer last = ByteBuffer.allocate(buffer.remaining() + 1).put(buffer).put((byte) '\n');
+            last.flip();
+            this.parseLines(last, cache);
+        }
+    }
+
+    /**
+     * consume every complete line in buffer, leaving its position at the start of the first incomplete one
+     */
+    private void parseLines(ByteBuffer buffer, SymbolCache cache) {
+        int lineStart = buffer.position();
+        for(int i = lineStart, limit = buffer.limit(); i < limit; i++) {
+            if(buffer.get(i) != '\n')
+                continue;
+            int end = i > lineStart && buffer.get(i - 1) == '\r' ? i - 1 : i;
+            this.parseLine(buffer, lineStart, end, cache);
+            lineStart = i + 1;
+        }
+        buffer.position(lineStart);
+    }
+
+    private void parseLine(ByteBuffer buffer, int start, int end, SymbolCache cache) {
+        if(start == end)
+            return;
+        int comma = start;
+        while(comma < end && buffer.get(comma) != ',')
+            comma++;
+        int id = comma == end ? UNKNOWN : cache.idOf(buffer, start, comma);
+        long price = parsePrice(buffer, comma + 1, end);
+        if(id == UNKNOWN || price <= 0) {
+            this.rejected.incrementAndGet();
+            return;
+        }
+        while(!this.offerMinorPrice(id, price)) {
+            if(!this.running)
+                return;
+            LockSupport.parkNanos(IDLE_PARK_NANOS);
+        }
+    }
+
+    /**
+     * @return the decimal number in buffer between start and end in minor units, rounded half up, or INVALID if it isn't one
+     */
+    private static long parsePrice(ByteBuffer buffer, int start, int end) {
+        long mantissa = 0;
+        int scale = -1;
+        int digits = 0;
+        for(int i = start; i < end; i++) {
+            byte b = buffer.get(i);
+            if(b == '.' && scale < 0) {
+                scale = 0;
+            } else if(b >= '0' && b <= '9' && digits < MAX_DIGITS) {
+                mantissa = mantissa * 10 + (b - '0');
+                digits++;
+                if(scale >= 0)
+                    scale++;
+            } else {
+                return INVALID;
+            }
+        }
+        if(digits == 0)
+            return INVALID;
+        scale = Math.max(scale, 0);
+        if(scale <= Money.SCALE)
+            return mantissa * POW10[Money.SCALE - scale];
+        long divisor = POW10[scale - Money.SCALE];
+        return (mantissa + divisor / 2) / divisor;
+    }
+
+    private void applyLoop() {
+        try {
+            while(true) {
+                int count = this.applyBatch();
+                if(count == 0) {
+                    if(!this.running && this.consumed == this.claimed.get())
+                        return;
+                    LockSupport.parkNanos(IDLE_PARK_NANOS);
+                }
+            }
+        } catch(Throwable e) {
+            //producers would otherwise wait forever for ring space that is never freed
+            this.failure = e;
+            throw e;
+        }
+    }
+
+    /**
+     * drain up to BATCH_SIZE published ticks, conflate them by listing, apply them and notify the listeners
+     * @return the number of ticks drained
+     */
+    private int applyBatch() {
+        long next = this.consumed;
+        long batch = ++this.batchNumber;
+        int ticks = 0;
+        int distinct = 0;
+        while(ticks < BATCH_SIZE) {
+            int slot = (int) next & this.mask;
+            if(this.published.get(slot) != next)
+                break;
+            int id = this.ringIds[slot];
+            if(id >= this.latest.length) {
+                int capacity = Math.max(id + 1, this.latest.length * 2);
+                this.latest = Arrays.copyOf(this.latest, capacity);
+                this.markedInBatch = Arrays.copyOf(this.markedInBatch, capacity);
+            }
+            if(this.markedInBatch[id] != batch) {
+                this.markedInBatch[id] = batch;
+                this.touched[distinct++] = id;
+            }
+            this.latest[id] = this.ringPrices[slot];
+            next++;
+            ticks++;
+        }
+        if(ticks == 0)
+            return 0;
+        this.consumed = next;
+
+        for(int i = 0; i < distinct; i++) {
+            int id = this.touched[i];
+            this.batchListings[i] = this.exchange.getStockListing(id);
+            this.batchPrices[i] = this.latest[id];
+            this.batchListings[i].setMinorPrice(this.latest[id]);
+        }
+        for(PriceListener listener : this.listeners) {
+            try {
+                listener.onPriceUpdates(this.batchListings, this.batchPrices, distinct);
+            } catch(RuntimeException e) {
+                this.listenerFailures.incrementAndGet();
+                Thread thread = Thread.currentThread();
+                thread.getUncaughtExceptionHandler().uncaughtException(thread, e);
+            }
+        }
+        this.applied += distinct;
+        return ticks;
+    }
+
+    /**
+     * @return the number of ticks accepted into the ring buffer
+     */
+    public long getReceivedCount() {
+        return this.received.get();
+    }
+
+    /**
+     * @return the number of ticks dropped as malformed or for an unknown symbol
+     */
+    public long getRejectedCount() {
+        return this.rejected.get();
+    }
+
+    /**
+     * @return the number of price changes applied to listings, after conflation
+     */
+    public long getAppliedCount() {
+        return this.applied;
+    }
+
+    /**
+     * @return the number of times a listener threw while being handed a batch
+     */
+    public long getListenerFailureCount() {
+        return this.listenerFailures.get();
+    }
+
+    /**
+     * @return the exception or error that ended the applier thread, or null if it is running or stopped normally
+     */
+    public Throwable getFailure() {
+        return this.failure;
+    }
+
+    /**
+     * The symbols seen by one ingest call, matched against their ASCII bytes with an open-addressing table so that a known symbol
+     * is resolved without creating a String. Only a symbol seen for the first time is turned into a String and looked up on the exchange.
+     */
+    private final class SymbolCache {
+        private static final int FREE = -2;
+
+        private int[] hashes = new int[64];
+        private int[] ids = new int[64];
+        private byte[][] symbols = new byte[64][];
+        private int size;
+
+        private SymbolCache() {
+            Arrays.fill(this.ids, FREE);
+        }
+
+        private int idOf(ByteBuffer buffer, int start, int end) {
+            int hash = 1;
+            for(int i = start; i < end; i++)
+                hash = 31 * hash + buffer.get(i);
+            int slotMask = this.ids.length - 1;
+            for(int i = hash & slotMask; this.ids[i] != FREE; i = (i + 1) & slotMask) {
+                if(this.hashes[i] == hash && matches(this.symbols[i], buffer, start, end))
+                    return this.ids[i];
+            }
+            byte[] bytes = new byte[end - start];
+            buffer.get(start, bytes);
+            int id = MarketDataFeed.this.idOf(new String(bytes, StandardCharsets.US_ASCII));
+            //unknown symbols aren't cached, since they may be listed later
+            if(id != UNKNOWN)
+                this.put(hash, id, bytes);
+            return id;
+        }
+
+        private void put(int hash, int id, byte[] symbol) {
+            if((this.size + 1) * 2 > this.ids.length) {
+                int[] oldHashes = this.hashes;
+                int[] oldIds = this.ids;
+                byte[][] oldSymbols = this.symbols;
+                this.hashes = new int[oldIds.length * 2];
+                this.ids = new int[oldIds.length * 2];
+                this.symbols = new byte[oldIds.length * 2][];
+                Arrays.fill(this.ids, FREE);
+                for(int i = 0; i < oldIds.length; i++) {
+                    if(oldIds[i] != FREE)
+                        this.insert(oldHashes[i], oldIds[i], oldSymbols[i]);
+                }
+            }
+            this.insert(hash, id, symbol);
+            this.size++;
+        }
+
+        private void insert(int hash, int id, byte[] symbol) {
+            int slotMask = this.ids.length - 1;
+            int i = hash & slotMask;
+            while(this.ids[i] != FREE)
+                i = (i + 1) & slotMask;
+            this.hashes[i] = hash;
+            this.ids[i] = id;
+            this.symbols[i] = symbol;
+        }
+
+        private static boolean matches(byte[] symbol, ByteBuffer buffer, int start, int end) {
+            if(symbol.length != end - start)
+                return false;
+            for(int i = 0; i < symbol.length; i++) {
+                if(symbol[i] != buffer.get(start + i))
+                    return false;
+            }
+            return true;
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package bank;
+
+/**
+ * Fixed-point arithmetic on amounts of money held in a long as a count of minor units (cents).
+ * Balances, transaction amounts, prices and account values are all kept this way, so sums reconcile exactly and no arithmetic allocates.
+ *
+ * Every operation that can overflow is checked and throws ArithmeticException instead of wrapping, like Math.addExact.
+ * Doubles are only used at the edges of the API, where they are rounded to the nearest cent.
+ */
+public final class Money {
+    /** the number of decimal places kept */
+    public static final int SCALE = 2;
+    /** the number of minor units in one whole unit of currency */
+    public static final long MINOR_PER_UNIT = 100;
+
+    //amounts at or beyond this can't be converted from a double to a long count of cents
+    private static final double MAX_CONVERTIBLE = Long.MAX_VALUE / (double) MINOR_PER_UNIT;
+
+    private Money() {
+    }
+
+    /**
+     * @param amount an amount in whole units, e.g. 12.34
+     * @return amount in minor units, rounded to the nearest cent
+     * @throws IllegalArgumentException if amount is NaN, infinite, or too large to hold in a long
+     */
+    public static long of(double amount) {
+        if(!(Math.abs(amount) < MAX_CONVERTIBLE))
+            throw new IllegalArgumentException("Amount cannot be represented: " + amount);
+        return Math.round(amount * MINOR_PER_UNIT);
+    }
+
+    /**
+     * @param minor an amount in minor units
+     * @return the amount in whole units, for display or interop with code that still uses double
+     */
+    public static double toDouble(long minor) {
+        return minor / (double) MINOR_PER_UNIT;
+    }
+
+    /**
+     * @throws ArithmeticException if the result overflows a long
+     */
+    public static long add(long a, long b) {
+        return Math.addExact(a, b);
+    }
+
+    /**
+     * @throws ArithmeticException if the result overflows a long
+     */
+    public static long subtract(long a, long b) {
+        return Math.subtractExact(a, b);
+    }
+
+    /**
+     * @param price the price of a single share in minor units
+     * @param quantity a number of shares, which may be negative
+     * @return price * quantity in minor units
+     * @throws ArithmeticException if the result overflows a long
+     */
+    public static long times(long price, long quantity) {
+        return Math.multiplyExact(price, quantity);
+    }
+
+    /**
+     * @param minor an amount in minor units
+     * @return the amount with exactly SCALE decimal places, e.g. "-12.05"
+     */
+    public static String format(long minor) {
+        StringBuilder sb = new StringBuilder(24);
+        long whole = minor / MINOR_PER_UNIT;
+        long cents = Math.abs(minor % MINOR_PER_UNIT);
+        if(minor < 0 && whole == 0)
+            sb.append('-');
+        sb.append(whole).append('.');
+        if(cents < 10)
+            sb.append('0');
+        return sb.append(cents).toString();
+    }
+}
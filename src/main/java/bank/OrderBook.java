@@ -0,0 +1,387 @@
+package bank;
+
+import java.util.Arrays;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A limit order book for a single StockListing, matching buy orders from one patron against sell orders from another with price-time priority:
+ * the best price trades first, and among orders at the same price the oldest trades first. A trade happens at the price of the resting order.
+ *
+ * Prices are whole cents, the minor units every listing price is kept in. Orders don't exist as objects: each one is a slot in a set of parallel arrays, and filled or cancelled slots
+ * are reused, so a book in steady state doesn't allocate for its orders. Price levels are kept in sorted long arrays with the best price at
+ * the end, so taking liquidity at the top of the book never shifts the arrays. Each level is a FIFO list of order slots.
+ *
+ * Every fill is settled between the two patrons' savings and brokerage accounts while holding both of their locks, taken in order of
+ * patron id. Assets are checked when a fill happens rather than reserved when an order is placed: a resting order whose owner can no longer
+ * pay for it (or deliver the shares) is cancelled, and an incoming order whose owner runs out stops matching and doesn't rest.
+ * An incoming order that would trade with a resting order of the same account cancels the resting order instead.
+ *
+ * The book is guarded by its own lock, so different tickers match independently. It must not be used while holding a Patron's lock.
+ * @see StockExchange#getOrderBook(String)
+ */
+public class OrderBook {
+    /** returned by getBestBid and getBestAsk when that side of the book is empty */
+    public static final long NO_PRICE = -1;
+
+    private static final int NONE = -1;
+    private static final int INITIAL_ORDERS = 64;
+    private static final int INITIAL_LEVELS = 16;
+
+    private final StockListing listing;
+    private final ReentrantLock lock;
+
+    //order slots
+    private BrokerageAccount[] owners;
+    private int[] remaining;
+    private long[] prices;
+    private boolean[] buys;
+    private int[] next;
+    private int[] prev;
+    private int[] generations;
+    private int freeHead;
+    private int used;
+
+    //bids are keyed by price and asks by -price, so on both sides the best level is the one with the highest key, at the end
+    private final Levels bids;
+    private final Levels asks;
+
+    protected OrderBook(StockListing listing) {
+        this.listing = listing;
+        this.lock = new ReentrantLock();
+        this.owners = new BrokerageAccount[INITIAL_ORDERS];
+        this.remaining = new int[INITIAL_ORDERS];
+        this.prices = new long[INITIAL_ORDERS];
+        this.buys = new boolean[INITIAL_ORDERS];
+        this.next = new int[INITIAL_ORDERS];
+        this.prev = new int[INITIAL_ORDERS];
+        this.generations = new int[INITIAL_ORDERS];
+        this.freeHead = NONE;
+        this.bids = new Levels();
+        this.asks = new Levels();
+    }
+
+    public StockListing getListing() {
+        return this.listing;
+    }
+
+    /**
+     * Match a limit order against the opposite side of the book, and rest whatever is left of it at limitPriceCents.
+     * @param account the brokerage account placing the order
+     * @param type BUY or SELL
+     * @param quantity number of shares
+     * @param limitPriceCents the highest price to buy at, or the lowest price to sell at, in cents
+     * @return the order's id. Once the order is fully filled or cancelled, getRemainingQuantity returns 0 for it.
+     * @throws InvalidTransactionException if type is neither BUY nor SELL, quantity or limitPriceCents is <= 0, or account is null
+     * @throws InsufficientAssetsException if the Patron can't currently pay for the whole order, or doesn't own the shares to sell
+     * @see #getRemainingQuantity(long)
+     */
+    public long submit(BrokerageAccount account, Transaction.TxType type, int quantity, long limitPriceCents) throws InvalidTransactionException, InsufficientAssetsException {
+        if(!(type == Transaction.TxType.BUY || type == Transaction.TxType.SELL))
+            throw new InvalidTransactionException("Transaction type must be BUY or SELL", type);
+        if(quantity <= 0 || limitPriceCents <= 0)
+            throw new InvalidTransactionException("Quantity and limit price must be > 0", type);
+        if(account == null)
+            throw new InvalidTransactionException("Account cannot be null", type);
+        boolean buy = type == Transaction.TxType.BUY;
+        if(buy ? !canPay(account, quantity, limitPriceCents) : account.getQuantityOwned(this.listing) < quantity)
+            throw new InsufficientAssetsException(new StockTransaction(this.listing, type, quantity), account.getPatron());
+
+        long orderId;
+        this.lock.lock();
+        try {
+            int left = this.match(account, buy, quantity, limitPriceCents);
+            int slot = this.allocate(account, buy, left, limitPriceCents);
+            orderId = ((long) this.generations[slot] << 32) | slot;
+            if(left > 0)
+                this.rest(slot);
+            else
+                this.free(slot);
+        } finally {
+            this.lock.unlock();
+        }
+        Journal journal = account.getPatron().getBank().getJournal();
+        if(journal != null)
+            journal.awaitDurable(journal.getWrittenPosition());
+        return orderId;
+    }
+
+    /**
+     * @param orderId a value returned by submit
+     * @return true if the order was resting and has been removed from the book
+     */
+    public boolean cancel(long orderId) {
+        this.lock.lock();
+        try {
+            int slot = this.slotOf(orderId);
+            if(slot == NONE)
+                return false;
+            this.unlink(slot);
+            this.free(slot);
+            return true;
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    /**
+     * @param orderId a value returned by submit
+     * @return the number of shares of the order still resting in the book, 0 if it was filled or cancelled
+     */
+    public int getRemainingQuantity(long orderId) {
+        this.lock.lock();
+        try {
+            int slot = this.slotOf(orderId);
+            return slot == NONE ? 0 : this.remaining[slot];
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    /**
+     * @return the highest resting buy price in cents, or NO_PRICE
+     */
+    public long getBestBid() {
+        this.lock.lock();
+        try {
+            return this.bids.count == 0 ? NO_PRICE : this.bids.keys[this.bids.count - 1];
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    /**
+     * @return the lowest resting sell price in cents, or NO_PRICE
+     */
+    public long getBestAsk() {
+        this.lock.lock();
+        try {
+            return this.asks.count == 0 ? NO_PRICE : -this.asks.keys[this.asks.count - 1];
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    /**
+     * @param type BUY for the bid side, SELL for the ask side
+     * @param priceCents
+     * @return the total quantity resting at that price
+     */
+    public long getQuantityAt(Transaction.TxType type, long priceCents) {
+        this.lock.lock();
+        try {
+            Levels levels = type == Transaction.TxType.BUY ? this.bids : this.asks;
+            int index = levels.indexOf(type == Transaction.TxType.BUY ? priceCents : -priceCents);
+            return index < 0 ? 0 : levels.quantities[index];
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    /**
+     * @return the quantity of the incoming order left after matching
+     */
+    private int match(BrokerageAccount account, boolean buy, int quantity, long limitPriceCents) {
+        Levels opposite = buy ? this.asks : this.bids;
+        while(quantity > 0 && opposite.count > 0) {
+            int level = opposite.count - 1;
+            long price = buy ? -opposite.keys[level] : opposite.keys[level];
+            if(buy ? price > limitPriceCents : price < limitPriceCents)
+                break;
+            int slot = opposite.heads[level];
+            if(this.owners[slot] == account) {
+                this.unlink(slot);
+                this.free(slot);
+                continue;
+            }
+            int fill = Math.min(quantity, this.remaining[slot]);
+            BrokerageAccount buyer = buy ? account : this.owners[slot];
+            BrokerageAccount seller = buy ? this.owners[slot] : account;
+            int failed = this.settle(buyer, seller, fill, price);
+            if(failed != NONE && (failed == 1) == buy) {
+                //the incoming order's owner can no longer pay or deliver
+                return 0;
+            }
+            if(failed != NONE) {
+                this.unlink(slot);
+                this.free(slot);
+                continue;
+            }
+            quantity -= fill;
+            this.remaining[slot] -= fill;
+            opposite.quantities[level] -= fill;
+            if(this.remaining[slot] == 0) {
+                this.unlink(slot);
+                this.free(slot);
+            }
+        }
+        return quantity;
+    }
+
+    /**
+     * @return NONE if the trade was settled, 1 if the buyer couldn't pay or hold the shares, 0 if the seller couldn't deliver or take the proceeds
+     */
+    private int settle(BrokerageAccount buyer, BrokerageAccount seller, int quantity, long priceCents) {
+        Patron first = buyer.getPatron();
+        Patron second = seller.getPatron();
+        if(second.getId() < first.getId()) {
+            first = seller.getPatron();
+            second = buyer.getPatron();
+        }
+        //the buyer passed canPay for at least this quantity at a limit no lower than this price, so this can't overflow
+        long amount = Money.times(priceCents, quantity);
+        first.getLock().lock();
+        second.getLock().lock();
+        try {
+            //both sides are checked, overflow included, before either changes, so a fill is never left half settled
+            if(!buyer.canSettle(Transaction.TxType.BUY, this.listing, quantity, amount))
+                return 1;
+            if(!seller.canSettle(Transaction.TxType.SELL, this.listing, quantity, amount))
+                return 0;
+            long timestamp = System.nanoTime();
+            buyer.settleFill(Transaction.TxType.BUY, this.listing, quantity, amount, timestamp);
+            seller.settleFill(Transaction.TxType.SELL, this.listing, quantity, amount, timestamp);
+            Journal journal = buyer.getPatron().getBank().getJournal();
+            if(journal != null)
+                journal.fill(buyer.getAccountNumber(), seller.getAccountNumber(), this.listing, quantity, amount, timestamp);
+            TransactionMetrics metrics = buyer.getPatron().getBank().getMetrics();
+            if(metrics != null)
+                metrics.recordTrade(this.listing);
+            return NONE;
+        } finally {
+            second.getLock().unlock();
+            first.getLock().unlock();
+        }
+    }
+
+    private static boolean canPay(BrokerageAccount account, int quantity, long priceCents) {
+        SavingsAccount savings = account.getPatron().getSavingsAccount();
+        //balance >= quantity * price without forming the product, which could overflow for an absurd limit price
+        return savings != null && savings.getMinorValue() / quantity >= priceCents;
+    }
+
+    private int slotOf(long orderId) {
+        int slot = (int) orderId;
+        if(slot < 0 || slot >= this.used || this.generations[slot] != (int) (orderId >>> 32) || this.remaining[slot] == 0)
+            return NONE;
+        return slot;
+    }
+
+    private int allocate(BrokerageAccount owner, boolean buy, int quantity, long price) {
+        int slot;
+        if(this.freeHead != NONE) {
+            slot = this.freeHead;
+            this.freeHead = this.next[slot];
+        } else {
+            if(this.used == this.owners.length)
+                this.grow();
+            slot = this.used++;
+        }
+        this.owners[slot] = owner;
+        this.buys[slot] = buy;
+        this.remaining[slot] = quantity;
+        this.prices[slot] = price;
+        this.next[slot] = NONE;
+        this.prev[slot] = NONE;
+        return slot;
+    }
+
+    private void free(int slot) {
+        this.owners[slot] = null;
+        this.remaining[slot] = 0;
+        this.generations[slot]++;
+        this.next[slot] = this.freeHead;
+        this.freeHead = slot;
+    }
+
+    private void grow() {
+        int capacity = this.owners.length * 2;
+        this.owners = Arrays.copyOf(this.owners, capacity);
+        this.remaining = Arrays.copyOf(this.remaining, capacity);
+        this.prices = Arrays.copyOf(this.prices, capacity);
+        this.buys = Arrays.copyOf(this.buys, capacity);
+        this.next = Arrays.copyOf(this.next, capacity);
+        this.prev = Arrays.copyOf(this.prev, capacity);
+        this.generations = Arrays.copyOf(this.generations, capacity);
+    }
+
+    private void rest(int slot) {
+        Levels levels = this.buys[slot] ? this.bids : this.asks;
+        int level = levels.levelFor(this.buys[slot] ? this.prices[slot] : -this.prices[slot]);
+        int tail = levels.tails[level];
+        this.prev[slot] = tail;
+        if(tail == NONE)
+            levels.heads[level] = slot;
+        else
+            this.next[tail] = slot;
+        levels.tails[level] = slot;
+        levels.quantities[level] += this.remaining[slot];
+    }
+
+    private void unlink(int slot) {
+        Levels levels = this.buys[slot] ? this.bids : this.asks;
+        int level = levels.indexOf(this.buys[slot] ? this.prices[slot] : -this.prices[slot]);
+        if(this.prev[slot] == NONE)
+            levels.heads[level] = this.next[slot];
+        else
+            this.next[this.prev[slot]] = this.next[slot];
+        if(this.next[slot] == NONE)
+            levels.tails[level] = this.prev[slot];
+        else
+            this.prev[this.next[slot]] = this.prev[slot];
+        levels.quantities[level] -= this.remaining[slot];
+        if(levels.heads[level] == NONE)
+            levels.remove(level);
+    }
+
+    /**
+     * the price levels of one side of the book, sorted by key in ascending order so that the best level is last
+     */
+    private static final class Levels {
+        private long[] keys = new long[INITIAL_LEVELS];
+        private int[] heads = new int[INITIAL_LEVELS];
+        private int[] tails = new int[INITIAL_LEVELS];
+        private long[] quantities = new long[INITIAL_LEVELS];
+        private int count;
+
+        private int indexOf(long key) {
+            return Arrays.binarySearch(this.keys, 0, this.count, key);
+        }
+
+        /**
+         * @return the index of the level with key, inserting an empty one if there is none
+         */
+        private int levelFor(long key) {
+            int index = this.indexOf(key);
+            if(index >= 0)
+                return index;
+            index = -index - 1;
+            if(this.count == this.keys.length) {
+                int capacity = this.count * 2;
+                this.keys = Arrays.copyOf(this.keys, capacity);
+                this.heads = Arrays.copyOf(this.heads, capacity);
+                this.tails = Arrays.copyOf(this.tails, capacity);
+                this.quantities = Arrays.copyOf(this.quantities, capacity);
+            }
+            int moved = this.count - index;
+            System.arraycopy(this.keys, index, this.keys, index + 1, moved);
+            System.arraycopy(this.heads, index, this.heads, index + 1, moved);
+            System.arraycopy(this.tails, index, this.tails, index + 1, moved);
+            System.arraycopy(this.quantities, index, this.quantities, index + 1, moved);
+            this.keys[index] = key;
+            this.heads[index] = NONE;
+            this.tails[index] = NONE;
+            this.quantities[index] = 0;
+            this.count++;
+            return index;
+        }
+
+        private void remove(int index) {
+            int moved = this.count - index - 1;
+            System.arraycopy(this.keys, index + 1, this.keys, index, moved);
+            System.arraycopy(this.heads, index + 1, this.heads, index, moved);
+            System.arraycopy(this.tails, index + 1, this.tails, index, moved);
+            System.arraycopy(this.quantities, index + 1, this.quantities, index, moved);
+            this.count--;
+        }
+    }
+}
@@ -1,10 +1,16 @@
+package bank;
+
+import java.util.concurrent.locks.ReentrantLock;
+
 /**
  * A patron (i.e. customer) of the bank, who can have up to 2 accounts - 1 savings account, 1 brokerage account.
  */
 public class Patron {
     private final int id;
-    private SavingsAccount savings;
-    private BrokerageAccount brokerage;
+    private final ReentrantLock lock;
+    private final Bank bank;
+    private volatile SavingsAccount savings;
+    private volatile BrokerageAccount brokerage;
 
     /**
      * Will be called by Bank
@@ -15,8 +21,10 @@ public class Patron {
      * @see Bank#openNewSavingsAccount(Patron)
      * @see Bank#openNewBrokerageAccount(Patron)
      */
-    protected Patron(int id, Bank bank) throws ApplicationDeniedException, IllegalArgumentException{
+    protected Patron(int id, Bank bank) throws IllegalArgumentException{
         this.id = id;
+        this.bank = bank;
+        this.lock = new ReentrantLock();
         savings = null;
         brokerage = null;
     }
@@ -25,6 +33,23 @@ public class Patron {
         return this.id;
     }
 
+    /**
+     * @return the Bank this Patron is a customer of
+     */
+    protected Bank getBank() {
+        return this.bank;
+    }
+
+    /**
+     * Every transaction on any of this Patron's accounts runs while holding this lock, so a BUY or SELL that touches
+     * both the brokerage and the savings account is atomic. Each Patron has its own lock, so unrelated patrons never contend.
+     * The lock is reentrant, which lets a BrokerageAccount execute the cash leg of a trade on the SavingsAccount while holding it.
+     * @return the lock guarding this Patron's accounts
+     */
+    protected ReentrantLock getLock() {
+        return this.lock;
+    }
+
     /**
      *
      * @param savings
@@ -51,13 +76,37 @@ public class Patron {
             this.brokerage = brokerage;
     }
 
+    /**
+     * set the savings account while replaying the Bank's journal, where it is already known that the Patron had none
+     * @see Bank#recover(StockExchange, java.nio.file.Path, Journal.FsyncPolicy)
+     */
+    void restoreSavingsAccount(SavingsAccount savings) {
+        this.savings = savings;
+    }
+
+    /**
+     * set the brokerage account while replaying the Bank's journal, where it is already known that the Patron had none
+     * @see Bank#recover(StockExchange, java.nio.file.Path, Journal.FsyncPolicy)
+     */
+    void restoreBrokerageAccount(BrokerageAccount brokerage) {
+        this.brokerage = brokerage;
+    }
+
     /**
      * @return the value of the Patron's SavingsAccount + the value of the Patron's BrokerageAccount
      * @see SavingsAccount#getValue()
      * @see BrokerageAccount#getValue()
      */
     public double getNetWorth(){
-        return (this.savings == null? 0 : this.savings.getValue()) + (this.brokerage == null? 0 : this.brokerage.getValue());
+        return Money.toDouble(this.getMinorNetWorth());
+    }
+
+    /**
+     * @return the Patron's net worth in minor units
+     * @see #getNetWorth()
+     */
+    public long getMinorNetWorth() {
+        return Money.add(this.savings == null? 0 : this.savings.getMinorValue(), this.brokerage == null? 0 : this.brokerage.getMinorValue());
     }
 
     public SavingsAccount getSavingsAccount() {
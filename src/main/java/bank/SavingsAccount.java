@@ -0,0 +1,162 @@
+package bank;
+
+import java.util.concurrent.locks.ReentrantLock;
+
+public class SavingsAccount extends Account {
+    //the balance in minor units is kept in the Bank's BalanceStore, at this slot
+    private final BalanceStore balances;
+    private final int slot;
+   
+    protected SavingsAccount(int accountNumber, Patron patron) {
+        super(accountNumber, patron);
+        this.balances = patron.getBank().getBalanceStore();
+        this.slot = this.balances.allocate(this);
+    }
+
+    /**
+     * for a DEPOSIT transaction: increase the balance by transaction amount
+     * for a WITHDRAW transaction: decrease the balance by transaction amount
+     * add the transaction to the transaction history of this account
+     * @param tx
+     * @return
+     * @throws InvalidTransactionException thrown if tx is not a CashTransaction, or if it would overflow the balance
+     * @see #tryExecute(Transaction)
+     */
+    @Override
+    public void executeTransaction(Transaction tx) throws InsufficientAssetsException,InvalidTransactionException {
+        byte status = this.tryExecute(tx);
+        if(status == TxStatus.WRONG_TX_TYPE)
+            throw new InvalidTransactionException("Must be a Cash Transaction", tx.getType());
+        this.throwIfRejected(status, tx);
+    }
+
+    /**
+     * @param tx
+     * @return TxStatus.OK, WRONG_TX_TYPE if tx is not a CashTransaction, or INVALID_AMOUNT if it would overflow the balance
+     * @see #executeTransaction(Transaction)
+     */
+    @Override
+    public byte tryExecute(Transaction tx) {
+        TransactionMetrics metrics = this.getPatron().getBank().getMetrics();
+        if(!(tx instanceof CashTransaction t)) {
+            if(metrics != null)
+                metrics.recordRejected(tx.getType(), TxStatus.WRONG_TX_TYPE);
+            return TxStatus.WRONG_TX_TYPE;
+        }
+        if(metrics == null)
+            return this.execute(t);
+        long start = System.nanoTime();
+        byte status = this.execute(t);
+        metrics.record(t.getType(), status, null, this.getAccountNumber(), System.nanoTime() - start);
+        return status;
+    }
+
+    private byte execute(CashTransaction t) {
+        ReentrantLock lock = this.getPatron().getLock();
+        long position;
+        lock.lock();
+        try {
+            this.apply(t);
+            this.publish(t.getType(), t.getMinorAmount(), null, t.getNanoTimestamp());
+            position = this.journal(t);
+        } catch(ArithmeticException e) {
+            return TxStatus.INVALID_AMOUNT;
+        } finally {
+            lock.unlock();
+        }
+        this.awaitDurable(position);
+        return TxStatus.OK;
+    }
+
+    private void apply(CashTransaction t) {
+        switch (t.getType()) {
+            case DEPOSIT -> this.balances.set(this.slot, Money.add(this.getMinorValue(), t.getMinorAmount()));
+            case WITHDRAW -> this.balances.set(this.slot, Money.subtract(this.getMinorValue(), t.getMinorAmount()));
+            default -> {
+            }
+        }
+        this.transactions.add(t);
+    }
+
+    /**
+     * Move amount into or out of this account without creating a CashTransaction, e.g. to credit interest, with a timestamp given by
+     * the caller such as one shared by a whole interest accrual run. It is recorded in the history and the journal exactly as
+     * executeTransaction records a CashTransaction. Must be called under the Patron's lock; the caller waits for the journal.
+     * @param type DEPOSIT or WITHDRAW
+     * @param amount in minor units, > 0
+     * @throws ArithmeticException if the balance would overflow, in which case nothing changes
+     * @see InterestAccrual
+     */
+    void executeCashLeg(Transaction.TxType type, long amount, long timestamp) {
+        this.applyCashLeg(type, amount, timestamp);
+        Journal journal = this.getPatron().getBank().getJournal();
+        if(journal != null)
+            journal.cashTransaction(this.getAccountNumber(), type, amount, timestamp);
+    }
+
+    /**
+     * Move amount into or out of this account, record it in the history and publish it, without journaling it, e.g. as one leg of a transfer
+     * or the cash leg of a trade that the caller journals as a whole. Must be called under the Patron's lock.
+     * @param type DEPOSIT or WITHDRAW
+     * @param amount in minor units, > 0
+     * @throws ArithmeticException if the balance would overflow, in which case nothing changes
+     * @see Bank#transfer(int, int, long)
+     * @see BrokerageAccount#executeTrade(Transaction.TxType, StockListing, int)
+     */
+    void applyCashLeg(Transaction.TxType type, long amount, long timestamp) {
+        long balance = this.getMinorValue();
+        this.balances.set(this.slot, type == Transaction.TxType.DEPOSIT ? Money.add(balance, amount) : Money.subtract(balance, amount));
+        this.transactions.addCash(type, amount, timestamp);
+        this.publish(type, amount, null, timestamp);
+    }
+
+    /**
+     * Withdraw amount only if the balance covers it, e.g. as the first step of a transfer to an account on another shard.
+     * It is recorded in the history and the journal exactly as a WITHDRAW CashTransaction.
+     * @param amount in minor units, > 0
+     * @return TxStatus.OK, or INSUFFICIENT_CASH if the balance is less than amount, in which case nothing changed
+     * @see ShardedBank#transfer(int, int, long)
+     */
+    byte withdrawCovered(long amount) {
+        ReentrantLock lock = this.getPatron().getLock();
+        long position = -1;
+        lock.lock();
+        try {
+            if(this.getMinorValue() < amount)
+                return TxStatus.INSUFFICIENT_CASH;
+            long timestamp = System.nanoTime();
+            this.applyCashLeg(Transaction.TxType.WITHDRAW, amount, timestamp);
+            Journal journal = this.getPatron().getBank().getJournal();
+            if(journal != null)
+                position = journal.cashTransaction(this.getAccountNumber(), Transaction.TxType.WITHDRAW, amount, timestamp);
+        } finally {
+            lock.unlock();
+        }
+        this.awaitDurable(position);
+        return TxStatus.OK;
+    }
+
+    /**
+     * re-apply a transaction read back from the Bank's journal
+     * @see Bank#recover(StockExchange, java.nio.file.Path, Journal.FsyncPolicy)
+     */
+    void restore(CashTransaction t) {
+        this.apply(t);
+    }
+
+    /**
+     * set the balance loaded from a snapshot
+     * @see Snapshot
+     */
+    void restoreBalance(long balance) {
+        this.balances.set(this.slot, balance);
+    }
+
+    /**
+     * @return the account's balance in minor units
+     */
+    @Override
+    public long getMinorValue() {
+        return this.balances.get(this.slot);
+    }
+}
\ No newline at end of file
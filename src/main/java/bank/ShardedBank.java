@@ -0,0 +1,331 @@
+package bank;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * A bank partitioned into several independent Bank shards that share one StockExchange. Each shard holds its own patrons and accounts
+ * and runs every operation on them on its own single thread, so shards never contend with each other except on the exchange's
+ * listings, whose inventory is updated lock-free.
+ *
+ * Patron ids and account numbers are striped across the shards: shard i hands out i, i + n, i + 2n, ... for n shards, so the shard
+ * holding any patron or account is its id modulo n and every request is routed there without a lookup. A Patron's accounts are
+ * always on the Patron's shard, so trades and cash transactions run on a single shard.
+ *
+ * A transfer between accounts on different shards is settled in two steps: the amount is withdrawn on the source shard, if the
+ * source's balance covers it as in a transfer within one shard, then deposited on the target shard. If the deposit is rejected or fails, the amount is deposited back on the source shard. While a
+ * transfer is between the two steps, its amount is counted by getMinorAmountInFlight(), so the shards' deposits plus the amount in
+ * flight add up to the bank's total at all times. A refund that is itself rejected leaves its amount in flight and fails the transfer,
+ * so money is never lost silently.
+ *
+ * Operations return CompletableFutures that complete on the shard's thread. Closing the bank waits for every transfer in progress
+ * to be deposited or refunded before the shards' threads stop.
+ * @see Bank
+ */
+public class ShardedBank implements AutoCloseable {
+    private final StockExchange exchange;
+    private final Bank[] shards;
+    private final ExecutorService[] executors;
+    private final AtomicInteger nextShard;
+    private final AtomicLong inFlight;
+    //cross-shard transfers started and not yet deposited or refunded
+    private final AtomicInteger transfers;
+    private volatile boolean closed;
+
+    /**
+     * @param exchange the stock exchange shared by every shard
+     * @param shardCount the number of shards
+     * @throws IllegalArgumentException if exchange is null or shardCount <= 0
+     */
+    public ShardedBank(StockExchange exchange, int shardCount) {
+        if(exchange == null)
+            throw new IllegalArgumentException("Exchange cannot be null");
+        if(shardCount <= 0)
+            throw new IllegalArgumentException("Shard count must be > 0");
+        this.exchange = exchange;
+        this.shards = new Bank[shardCount];
+        this.executors = new ExecutorService[shardCount];
+        for(int i = 0; i < shardCount; i++) {
+            this.shards[i] = new Bank(exchange, i, shardCount);
+            String name = "bank-shard-" + i;
+            this.executors[i] = Executors.newSingleThreadExecutor(task -> {
+                Thread thread = new Thread(task, name);
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        this.nextShard = new AtomicInteger();
+        this.inFlight = new AtomicLong();
+        this.transfers = new AtomicInteger();
+    }
+
+    /**
+     * @return the number of shards
+     */
+    public int getShardCount() {
+        return this.shards.length;
+    }
+
+    /**
+     * @param index between 0 and getShardCount() - 1
+     * @return the shard
+     */
+    public Bank getShard(int index) {
+        return this.shards[index];
+    }
+
+    /**
+     * @param id a patron id or an account number
+     * @return the index of the shard that holds it
+     * @throws IllegalArgumentException if id < 0
+     */
+    public int shardOf(int id) {
+        if(id < 0)
+            throw new IllegalArgumentException("Ids are never negative");
+        return id % this.shards.length;
+    }
+
+    /**
+     * @return the stock exchange shared by every shard
+     */
+    public StockExchange getExchange() {
+        return this.exchange;
+    }
+
+    /**
+     * @return the amount in minor units withdrawn by cross-shard transfers and not yet deposited on their target shard or refunded
+     */
+    public long getMinorAmountInFlight() {
+        return this.inFlight.get();
+    }
+
+    /**
+     * Create a new Patron on the next shard in turn.
+     * @return the Patron; completes exceptionally with an ApplicationDeniedException if the shard denies it
+     * @see Bank#createNewPatron()
+     */
+    public CompletableFuture<Patron> createNewPatron() {
+        int shard = Math.floorMod(this.nextShard.getAndIncrement(), this.shards.length);
+        return this.on(shard, () -> {
+            try {
+                return this.shards[shard].createNewPatron();
+            } catch(ApplicationDeniedException e) {
+                throw new CompletionException(e);
+            }
+        });
+    }
+
+    /**
+     * @param patronId
+     * @return the Patron with the given id, or null if there is none
+     */
+    public Patron getPatron(int patronId) {
+        return this.shards[this.shardOf(patronId)].getPatron(patronId);
+    }
+
+    /**
+     * @param accountNumber
+     * @return the account with the given number, or null if there is none
+     */
+    public Account getAccount(int accountNumber) {
+        return this.shards[this.shardOf(accountNumber)].getAccount(accountNumber);
+    }
+
+    /**
+     * @param patronId
+     * @return the number of the new SavingsAccount; completes exceptionally with an ApplicationDeniedException if the Patron already has one
+     * @throws IllegalArgumentException if there is no such Patron
+     * @see Bank#openNewSavingsAccount(Patron)
+     */
+    public CompletableFuture<Integer> openNewSavingsAccount(int patronId) {
+        Patron patron = this.requirePatron(patronId);
+        return this.on(this.shardOf(patronId), () -> {
+            try {
+                return patron.getBank().openNewSavingsAccount(patron);
+            } catch(ApplicationDeniedException e) {
+                throw new CompletionException(e);
+            }
+        });
+    }
+
+    /**
+     * @param patronId
+     * @return the number of the new BrokerageAccount; completes exceptionally with an ApplicationDeniedException if the Patron
+     * already has one or has no SavingsAccount
+     * @throws IllegalArgumentException if there is no such Patron
+     * @see Bank#openNewBrokerageAccount(Patron)
+     */
+    public CompletableFuture<Integer> openNewBrokerageAccount(int patronId) {
+        Patron patron = this.requirePatron(patronId);
+        return this.on(this.shardOf(patronId), () -> {
+            try {
+                return patron.getBank().openNewBrokerageAccount(patron);
+            } catch(ApplicationDeniedException e) {
+                throw new CompletionException(e);
+            }
+        });
+    }
+
+    /**
+     * Execute tx on the account on that account's shard.
+     * @param accountNumber
+     * @param tx
+     * @return the TxStatus of the execution
+     * @throws IllegalArgumentException if there is no such account
+     * @see Account#tryExecute(Transaction)
+     */
+    public CompletableFuture<Byte> execute(int accountNumber, Transaction tx) {
+        Account account = this.requireAccount(accountNumber);
+        return this.on(this.shardOf(accountNumber), () -> account.tryExecute(tx));
+    }
+
+    /**
+     * Move amount from one SavingsAccount to another. If both are on the same shard, the shard's Bank moves it atomically on that
+     * shard's thread; otherwise it is settled in two steps as described above.
+     * @param fromAccount the number of the SavingsAccount to withdraw from
+     * @param toAccount the number of the SavingsAccount to deposit to
+     * @param amount in minor units
+     * @return OK if the transfer was made, or the TxStatus that rejected it, in which case no money moved: WRONG_TX_TYPE if either
+     * account isn't a SavingsAccount, INSUFFICIENT_CASH if the source's balance is less than amount, or the status that rejected the deposit.
+     * Completes exceptionally if a step failed; a deposit that fails is refunded, and a refund that is rejected stays in flight.
+     * @throws IllegalArgumentException if either account doesn't exist, they are the same account, or amount <= 0
+     * @throws RejectedExecutionException if the bank is closed
+     * @see Bank#transfer(int, int, long)
+     */
+    public CompletableFuture<Byte> transfer(int fromAccount, int toAccount, long amount) {
+        if(amount <= 0)
+            throw new IllegalArgumentException("Amount must be > 0");
+        if(fromAccount == toAccount)
+            throw new IllegalArgumentException("Cannot transfer to the same account");
+        Account source = this.requireAccount(fromAccount);
+        Account target = this.requireAccount(toAccount);
+        int sourceShard = this.shardOf(fromAccount);
+        int targetShard = this.shardOf(toAccount);
+        if(sourceShard == targetShard)
+            return this.on(sourceShard, () -> this.shards[sourceShard].transfer(fromAccount, toAccount, amount));
+        if(!(source instanceof SavingsAccount from) || !(target instanceof SavingsAccount))
+            return CompletableFuture.completedFuture(TxStatus.WRONG_TX_TYPE);
+
+        this.transfers.incrementAndGet();
+        CompletableFuture<Byte> result;
+        try {
+            if(this.closed)
+                throw new RejectedExecutionException("Bank is closed");
+            result = this.on(sourceShard, () -> {
+                //checked like a transfer within one shard, so the source's balance never goes negative
+                byte status = from.withdrawCovered(amount);
+                if(status == TxStatus.OK)
+                    this.inFlight.addAndGet(amount);
+                return status;
+            }).thenCompose(withdrawn -> {
+                if(withdrawn != TxStatus.OK)
+                    return CompletableFuture.completedFuture(withdrawn);
+                return this.deposit(source, sourceShard, target, targetShard, amount);
+            });
+        } catch(RuntimeException e) {
+            this.transferDone();
+            throw e;
+        }
+        return result.whenComplete((status, failure) -> this.transferDone());
+    }
+
+    //the second step of a cross-shard transfer, once amount has been withdrawn from source: deposit it, or else refund it
+    private CompletableFuture<Byte> deposit(Account source, int sourceShard, Account target, int targetShard, long amount) {
+        return this.on(targetShard, () -> cash(target, Transaction.TxType.DEPOSIT, amount)).handle((deposited, failure) -> {
+            if(failure == null && deposited == TxStatus.OK) {
+                this.inFlight.addAndGet(-amount);
+                return CompletableFuture.completedFuture(deposited);
+            }
+            return this.refund(source, sourceShard, amount).thenApply(refunded -> {
+                if(failure != null)
+                    throw failure instanceof CompletionException c ? c : new CompletionException(failure);
+                return deposited;
+            });
+        }).thenCompose(Function.identity());
+    }
+
+    //deposit amount back to source; if even that is rejected, the amount stays in flight and the future fails
+    private CompletableFuture<Void> refund(Account source, int sourceShard, long amount) {
+        return this.on(sourceShard, () -> {
+            byte status = cash(source, Transaction.TxType.DEPOSIT, amount);
+            if(status != TxStatus.OK)
+                throw new IllegalStateException("Refund of " + amount + " to account " + source.getAccountNumber() + " was rejected with status " + status);
+            this.inFlight.addAndGet(-amount);
+            return null;
+        });
+    }
+
+    private void transferDone() {
+        if(this.transfers.decrementAndGet() == 0 && this.closed) {
+            synchronized(this.transfers) {
+                this.transfers.notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Aggregate a BankReport for every shard, each on its own shard's Bank.
+     * @return one report per shard, by shard index
+     * @see Bank#createReport()
+     */
+    public BankReport[] createReports() {
+        BankReport[] reports = new BankReport[this.shards.length];
+        for(int i = 0; i < reports.length; i++)
+            reports[i] = this.shards[i].createReport();
+        return reports;
+    }
+
+    /**
+     * Stop every shard's thread once the operations already submitted have run. Transfers in progress are first allowed to finish,
+     * since their later steps are only submitted once the earlier ones have run; new operations are rejected.
+     */
+    @Override
+    public void close() {
+        this.closed = true;
+        synchronized(this.transfers) {
+            while(this.transfers.get() != 0) {
+                try {
+                    this.transfers.wait();
+                } catch(InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+            }
+        }
+        for(ExecutorService executor : this.executors)
+            executor.shutdown();
+    }
+
+    private <T> CompletableFuture<T> on(int shard, Supplier<T> operation) {
+        return CompletableFuture.supplyAsync(operation, this.executors[shard]);
+    }
+
+    private static byte cash(Account account, Transaction.TxType type, long amount) {
+        try {
+            return account.tryExecute(CashTransaction.ofMinorUnits(type, amount));
+        } catch(InvalidTransactionException e) {
+            return TxStatus.INVALID_AMOUNT;
+        }
+    }
+
+    private Patron requirePatron(int patronId) {
+        Patron patron = this.getPatron(patronId);
+        if(patron == null)
+            throw new IllegalArgumentException("No patron " + patronId);
+        return patron;
+    }
+
+    private Account requireAccount(int accountNumber) {
+        Account account = this.getAccount(accountNumber);
+        if(account == null)
+            throw new IllegalArgumentException("No account " + accountNumber);
+        return account;
+    }
+}
@@ -0,0 +1,38 @@
+package bank;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * A JDK Flight Recorder event for a transaction that took longer than the slow threshold of its Bank's TransactionMetrics.
+ * It is only created once a transaction is known to be slow, so the fast path never allocates one.
+ * @see TransactionMetrics#setSlowThresholdNanos(long)
+ */
+@Name("bank.SlowTransaction")
+@Label("Slow Transaction")
+@Category({"Bank", "Transactions"})
+@Description("A transaction whose execution took longer than the configured threshold")
+@StackTrace(false)
+class SlowTransactionEvent extends Event {
+    @Label("Type")
+    String type;
+
+    @Label("Status")
+    @Description("OK, or the reason the transaction was rejected")
+    String status;
+
+    @Label("Account Number")
+    int accountNumber;
+
+    @Label("Ticker")
+    String ticker;
+
+    @Label("Execution Time")
+    @Timespan(Timespan.NANOSECONDS)
+    long executionTime;
+}
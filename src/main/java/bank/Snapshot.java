@@ -0,0 +1,276 @@
+package bank;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A point-in-time image of a Bank's patrons, account balances, brokerage holdings, transaction histories and exchange listings, covering
+ * every journal record up to the end of a given journal segment. Recovery loads the newest snapshot and reads only the segments written
+ * after it, so the segments a snapshot covers can be deleted once no retained snapshot needs them.
+ *
+ * Snapshots are never taken from the live Bank. Instead the previous snapshot is loaded into a separate shadow Bank and the journal
+ * segments sealed since then are replayed into it, so the snapshot is exactly consistent with a segment boundary and live transactions
+ * never wait for it. Histories are written and restored in blocks of their columns, without creating Transaction objects.
+ *
+ * The file is [int magic][int version][long last segment][int listing count] followed by each listing as [ticker][long price][int available shares],
+ * then [int patron count] followed by each patron as [int id][int savings number or -1][long balance][int brokerage number or -1]
+ * [int holding count][(int listing index, int quantity)...], followed by the savings and then the brokerage history of the accounts it has,
+ * each as [int count][(long timestamp, byte TxType ordinal, long amount, int listing index or -1)...]. A listing's index is its id.
+ * Prices, balances and cash amounts are in minor units, and strings are a length byte followed by UTF-8.
+ * @see Bank#checkpoint()
+ * @see Bank#recover(StockExchange, Path, Journal.FsyncPolicy)
+ */
+class Snapshot {
+    private static final int MAGIC = 0x42534E50;
+    private static final int VERSION = 3;
+    private static final int BUFFER_SIZE = 1 << 20;
+    private static final String PREFIX = "snapshot-";
+    private static final String SUFFIX = ".snap";
+    private static final int NONE = -1;
+    //history entries copied per block
+    private static final int BLOCK = 4096;
+    private static final int ENTRY_SIZE = 21;
+
+    private Snapshot() {
+    }
+
+    /**
+     * Write a snapshot of bank into directory, replacing older snapshots except the one before it.
+     * Journal segments that only the replaced snapshots covered can then be retired.
+     * The file is written under a temporary name, forced, and then renamed, so a crash never leaves a partial snapshot behind.
+     * @param directory the journal directory
+     * @param bank a Bank that no other thread is changing
+     * @param lastSegment the last journal segment whose records are reflected in bank
+     * @return the path of the new snapshot
+     * @throws IOException
+     * @see #oldestCovered(Path)
+     */
+    static Path write(Path directory, Bank bank, long lastSegment) throws IOException {
+        Path target = directory.resolve(String.format("%s%020d%s", PREFIX, lastSegment, SUFFIX));
+        Path temp = directory.resolve(target.getFileName() + ".tmp");
+        try(FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            Writer out = new Writer(channel);
+            out.ensure(20).putInt(MAGIC).putInt(VERSION).putLong(lastSegment);
+
+            List<StockListing> listings = bank.getExchange().getAllCurrentListings();
+            Map<StockListing, Integer> listingIndexes = new IdentityHashMap<>();
+            out.ensure(4).putInt(listings.size());
+            for(StockListing listing : listings) {
+                listingIndexes.put(listing, listingIndexes.size());
+                byte[] ticker = listing.getTickerSymbol().getBytes(StandardCharsets.UTF_8);
+                out.ensure(1 + ticker.length + 12).put((byte) ticker.length).put(ticker).putLong(listing.getMinorPrice()).putInt(listing.getAvailableShares());
+            }
+
+            History history = new History();
+            out.ensure(4).putInt(bank.getAllPatrons().size());
+            for(Patron patron : bank.getAllPatrons()) {
+                SavingsAccount savings = patron.getSavingsAccount();
+                BrokerageAccount brokerage = patron.getBrokerageAccount();
+                List<StockShares> holdings = brokerage == null ? List.of() : brokerage.getListOfShares();
+                out.ensure(24).putInt(patron.getId())
+                        .putInt(savings == null ? NONE : savings.getAccountNumber()).putLong(savings == null ? 0 : savings.getMinorValue())
+                        .putInt(brokerage == null ? NONE : brokerage.getAccountNumber()).putInt(holdings.size());
+                for(StockShares shares : holdings)
+                    out.ensure(8).putInt(listingIndexes.get(shares.getListing())).putInt(shares.getQuantity());
+                if(savings != null)
+                    history.write(out, savings);
+                if(brokerage != null)
+                    history.write(out, brokerage);
+            }
+            out.flush();
+            channel.force(true);
+        }
+        Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+
+        List<Long> covered = list(directory);
+        for(int i = 0; i < covered.size() - 2; i++)
+            Files.deleteIfExists(path(directory, covered.get(i)));
+        return target;
+    }
+
+    /**
+     * Load the newest snapshot in directory through restorer.
+     * @param directory the journal directory
+     * @param restorer restores the snapshot's state into an empty Bank
+     * @return the last journal segment covered by the snapshot, or -1 if there is no snapshot
+     * @throws IOException if the snapshot can't be read or is not a snapshot
+     */
+    static long loadLatest(Path directory, Bank.Restorer restorer) throws IOException {
+        if(!Files.isDirectory(directory))
+            return -1;
+        List<Long> covered = list(directory);
+        if(covered.isEmpty())
+            return -1;
+        long lastSegment = covered.get(covered.size() - 1);
+        try(FileChannel channel = FileChannel.open(path(directory, lastSegment), StandardOpenOption.READ)) {
+            Reader in = new Reader(channel);
+            ByteBuffer header = in.ensure(16);
+            if(header.getInt() != MAGIC || header.getInt() != VERSION || header.getLong() != lastSegment)
+                throw new IOException("Not a snapshot: " + path(directory, lastSegment));
+
+            StockListing[] listings = new StockListing[in.ensure(4).getInt()];
+            for(int i = 0; i < listings.length; i++) {
+                byte[] ticker = new byte[in.ensure(1).get() & 0xFF];
+                ByteBuffer buffer = in.ensure(ticker.length + 12);
+                buffer.get(ticker);
+                listings[i] = restorer.listingRestored(new String(ticker, StandardCharsets.UTF_8), buffer.getLong(), buffer.getInt());
+            }
+
+            History history = new History();
+            int patrons = in.ensure(4).getInt();
+            for(int i = 0; i < patrons; i++) {
+                ByteBuffer buffer = in.ensure(24);
+                int id = buffer.getInt();
+                int savings = buffer.getInt();
+                long balance = buffer.getLong();
+                int brokerage = buffer.getInt();
+                int holdings = buffer.getInt();
+                restorer.patronCreated(id);
+                if(savings != NONE) {
+                    restorer.savingsAccountOpened(id, savings);
+                    restorer.balanceRestored(savings, balance);
+                }
+                if(brokerage != NONE) {
+                    restorer.brokerageAccountOpened(id, brokerage);
+                    for(int h = 0; h < holdings; h++) {
+                        buffer = in.ensure(8);
+                        restorer.holdingRestored(brokerage, listings[buffer.getInt()], buffer.getInt());
+                    }
+                }
+                if(savings != NONE)
+                    history.read(in, restorer, savings, listings);
+                if(brokerage != NONE)
+                    history.read(in, restorer, brokerage, listings);
+            }
+        }
+        return lastSegment;
+    }
+
+    /**
+     * @param directory the journal directory
+     * @return the last journal segment covered by the oldest snapshot in directory, or -1 if there is none. Recovery from any
+     * retained snapshot reads only the segments after it.
+     * @throws IOException
+     */
+    static long oldestCovered(Path directory) throws IOException {
+        List<Long> covered = list(directory);
+        return covered.isEmpty() ? -1 : covered.get(0);
+    }
+
+    private static List<Long> list(Path directory) throws IOException {
+        List<Long> covered = new ArrayList<>();
+        try(DirectoryStream<Path> stream = Files.newDirectoryStream(directory, PREFIX + "*" + SUFFIX)) {
+            for(Path path : stream) {
+                String name = path.getFileName().toString();
+                covered.add(Long.parseLong(name.substring(PREFIX.length(), name.length() - SUFFIX.length())));
+            }
+        }
+        covered.sort(null);
+        return covered;
+    }
+
+    private static Path path(Path directory, long lastSegment) {
+        return directory.resolve(String.format("%s%020d%s", PREFIX, lastSegment, SUFFIX));
+    }
+
+    /**
+     * copies account histories between their columns and a snapshot in blocks, through reusable column arrays
+     */
+    private static final class History {
+        private final long[] timestamps = new long[BLOCK];
+        private final byte[] types = new byte[BLOCK];
+        private final long[] amounts = new long[BLOCK];
+        private final int[] listingIds = new int[BLOCK];
+
+        //listing ids are written as they are, since they are also the listings' indexes in the snapshot
+        private void write(Writer out, Account account) throws IOException {
+            int size = account.getHistorySize();
+            out.ensure(4).putInt(size);
+            for(int from = 0; from < size; from += BLOCK) {
+                int count = Math.min(BLOCK, size - from);
+                account.copyHistory(from, count, this.timestamps, this.types, this.amounts, this.listingIds);
+                for(int i = 0; i < count; i++)
+                    out.ensure(ENTRY_SIZE).putLong(this.timestamps[i]).put(this.types[i]).putLong(this.amounts[i]).putInt(this.listingIds[i]);
+            }
+        }
+
+        private void read(Reader in, Bank.Restorer restorer, int accountNumber, StockListing[] listings) throws IOException {
+            int size = in.ensure(4).getInt();
+            for(int from = 0; from < size; from += BLOCK) {
+                int count = Math.min(BLOCK, size - from);
+                for(int i = 0; i < count; i++) {
+                    ByteBuffer buffer = in.ensure(ENTRY_SIZE);
+                    this.timestamps[i] = buffer.getLong();
+                    this.types[i] = buffer.get();
+                    this.amounts[i] = buffer.getLong();
+                    int index = buffer.getInt();
+                    this.listingIds[i] = index == NONE ? NONE : listings[index].getId();
+                }
+                restorer.historyRestored(accountNumber, count, this.timestamps, this.types, this.amounts, this.listingIds);
+            }
+        }
+    }
+
+    /**
+     * fills a reusable buffer and writes it to the channel whenever the next field wouldn't fit
+     */
+    private static final class Writer {
+        private final FileChannel channel;
+        private final ByteBuffer buffer;
+
+        private Writer(FileChannel channel) {
+            this.channel = channel;
+            this.buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+        }
+
+        private ByteBuffer ensure(int bytes) throws IOException {
+            if(this.buffer.remaining() < bytes)
+                this.flush();
+            return this.buffer;
+        }
+
+        private void flush() throws IOException {
+            this.buffer.flip();
+            while(this.buffer.hasRemaining())
+                this.channel.write(this.buffer);
+            this.buffer.clear();
+        }
+    }
+
+    /**
+     * reads the channel through a reusable buffer, refilling it whenever the next field isn't fully in it
+     */
+    private static final class Reader {
+        private final FileChannel channel;
+        private final ByteBuffer buffer;
+
+        private Reader(FileChannel channel) {
+            this.channel = channel;
+            this.buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+            this.buffer.flip();
+        }
+
+        private ByteBuffer ensure(int bytes) throws IOException {
+            if(this.buffer.remaining() < bytes) {
+                this.buffer.compact();
+                while(this.buffer.position() < bytes) {
+                    if(this.channel.read(this.buffer) < 0)
+                        throw new IOException("Snapshot is truncated");
+                }
+                this.buffer.flip();
+            }
+            return this.buffer;
+        }
+    }
+}
@@ -0,0 +1,382 @@
+package bank;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Writes account statements: a Patron's account balances, brokerage holdings and the full transaction history of both accounts.
+ *
+ * A statement is streamed straight to a channel through a fixed size buffer. The history is copied out of the accounts a block at
+ * a time into reusable primitive arrays and encoded from there, so no Transaction, String or StringBuilder is created per entry, and
+ * the memory used is the same for 10 or 10M transactions. The buffer and arrays belong to the writing thread and are reused for
+ * every statement it writes. writeAll writes one file per Patron, with Patrons split among the threads of the common fork-join pool.
+ *
+ * The balances and holdings are read together under the Patron's lock, which is released before anything is written; the history
+ * then covers every transaction executed up to that moment, so the statement is consistent even while the Patron keeps trading.
+ * Listing prices don't take the Patron's lock, so each holding's price is copied together with its quantity and the brokerage value
+ * is the sum of those holdings at those prices, rather than the account's running value read a moment apart.
+ *
+ * CSV statements have one record per line, with the record type first:
+ *   patron,id
+ *   savings,account number,balance
+ *   brokerage,account number,value
+ *   holding,account number,ticker,quantity,price
+ *   transaction,account number,timestamp,type,ticker,amount
+ * Money is in whole units with SCALE decimal places. The ticker of a cash transaction is empty, and the amount of a stock transaction
+ * is its share quantity. Binary statements start with [int magic][int version] and hold the same records as [byte record type][fields],
+ * with money in minor units, listings by id, and each listing's [int id][ticker] declared by a LISTING record before its first use;
+ * a record type of END ends the statement. Strings are a length byte followed by UTF-8.
+ * @see Bank#writeStatements(Path, StatementWriter.Format)
+ */
+public class StatementWriter {
+    /**
+     * the encoding of a statement
+     */
+    public enum Format {
+        CSV(".csv"),
+        BINARY(".stmt");
+
+        private final String extension;
+
+        Format(String extension) {
+            this.extension = extension;
+        }
+
+        /**
+         * @return the file name extension of statements in this format, e.g. ".csv"
+         */
+        public String getExtension() {
+            return this.extension;
+        }
+    }
+
+    static final int MAGIC = 0x42535446;
+    static final int VERSION = 1;
+    static final byte END = 0;
+    static final byte PATRON = 1;
+    static final byte SAVINGS = 2;
+    static final byte BROKERAGE = 3;
+    static final byte LISTING = 4;
+    static final byte HOLDING = 5;
+    static final byte TRANSACTION = 6;
+
+    private static final int BUFFER_SIZE = 64 << 10;
+    private static final int BLOCK_SIZE = 4096;
+    //longer than any record, including one with a ticker of 255 bytes
+    private static final int MAX_RECORD = 512;
+    private static final int NO_LISTING = -1;
+    private static final byte[][] TYPE_NAMES;
+    private static final ThreadLocal<Scratch> SCRATCH = ThreadLocal.withInitial(Scratch::new);
+
+    static {
+        Transaction.TxType[] types = Transaction.TxType.values();
+        TYPE_NAMES = new byte[types.length][];
+        for(int i = 0; i < types.length; i++)
+            TYPE_NAMES[i] = types[i].name().getBytes(StandardCharsets.US_ASCII);
+    }
+
+    private final Format format;
+
+    /**
+     * @param format
+     * @throws IllegalArgumentException if format is null
+     */
+    public StatementWriter(Format format) {
+        if(format == null)
+            throw new IllegalArgumentException("Format cannot be null");
+        this.format = format;
+    }
+
+    /**
+     * @return the encoding of the statements this writes
+     */
+    public Format getFormat() {
+        return this.format;
+    }
+
+    /**
+     * Write patron's statement to a new file, replacing any file already there.
+     * @param patron
+     * @param file
+     * @throws IOException if the file can't be written
+     */
+    public void write(Patron patron, Path file) throws IOException {
+        try(FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            this.write(patron, channel);
+        }
+    }
+
+    /**
+     * Write patron's statement to channel, which is left open.
+     * @param patron
+     * @param channel
+     * @throws IOException if the channel can't be written
+     * @throws IllegalArgumentException if patron or channel is null
+     */
+    public void write(Patron patron, WritableByteChannel channel) throws IOException {
+        if(patron == null || channel == null)
+            throw new IllegalArgumentException("Patron and channel cannot be null");
+        Scratch scratch = SCRATCH.get();
+        scratch.start(channel);
+        try {
+            this.statement(patron, scratch);
+            scratch.flush();
+        } finally {
+            scratch.channel = null;
+        }
+    }
+
+    /**
+     * Write the statement of every Patron of bank into directory, one file per Patron named statement-ID plus the format's extension.
+     * Patrons are written in parallel, each by a single thread.
+     * @param bank
+     * @param directory created if it doesn't exist
+     * @return the number of statements written
+     * @throws IOException if a file can't be written; the statements of other Patrons may have been written
+     * @see Bank#writeStatements(Path, StatementWriter.Format)
+     */
+    public int writeAll(Bank bank, Path directory) throws IOException {
+        Files.createDirectories(directory);
+        AtomicInteger written = new AtomicInteger();
+        try {
+            bank.getAllPatrons().parallelStream().forEach(patron -> {
+                try {
+                    this.write(patron, directory.resolve("statement-" + patron.getId() + this.format.getExtension()));
+                    written.incrementAndGet();
+                } catch(IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch(UncheckedIOException e) {
+            throw e.getCause();
+        }
+        return written.get();
+    }
+
+    private void statement(Patron patron, Scratch scratch) throws IOException {
+        SavingsAccount savings;
+        BrokerageAccount brokerage;
+        long balance = 0;
+        long value = 0;
+        int holdings = 0;
+        int savingsHistory = 0;
+        int brokerageHistory = 0;
+        ReentrantLock lock = patron.getLock();
+        lock.lock();
+        try {
+            savings = patron.getSavingsAccount();
+            brokerage = patron.getBrokerageAccount();
+            if(savings != null) {
+                balance = savings.getMinorValue();
+                savingsHistory = savings.getHistorySize();
+            }
+            if(brokerage != null) {
+                brokerageHistory = brokerage.getHistorySize();
+                scratch.reserveHoldings(brokerage.getHoldingCount());
+                holdings = brokerage.copyHoldings(scratch.holdingIds, scratch.holdingQuantities, scratch.holdingPrices);
+            }
+        } finally {
+            lock.unlock();
+        }
+        for(int i = 0; i < holdings; i++)
+            value = Money.add(value, Money.times(scratch.holdingPrices[i], scratch.holdingQuantities[i]));
+
+        StockExchange exchange = patron.getBank().getExchange();
+        if(this.format == Format.BINARY)
+            scratch.ensure(8).putInt(MAGIC).putInt(VERSION);
+        this.patronRecord(scratch, patron.getId());
+        if(savings != null)
+            this.accountRecord(scratch, SAVINGS, savings.getAccountNumber(), balance);
+        if(brokerage != null) {
+            this.accountRecord(scratch, BROKERAGE, brokerage.getAccountNumber(), value);
+            for(int i = 0; i < holdings; i++) {
+                if(scratch.holdingQuantities[i] == 0)
+                    continue;
+                StockListing listing = exchange.getStockListing(scratch.holdingIds[i]);
+                this.holdingRecord(scratch, brokerage.getAccountNumber(), listing, scratch.holdingQuantities[i], scratch.holdingPrices[i]);
+            }
+        }
+        if(savings != null)
+            this.history(scratch, exchange, savings, savingsHistory);
+        if(brokerage != null)
+            this.history(scratch, exchange, brokerage, brokerageHistory);
+        if(this.format == Format.BINARY)
+            scratch.ensure(1).put(END);
+    }
+
+    private void history(Scratch scratch, StockExchange exchange, Account account, int size) throws IOException {
+        for(int from = 0; from < size; from += BLOCK_SIZE) {
+            int count = Math.min(BLOCK_SIZE, size - from);
+            account.copyHistory(from, count, scratch.timestamps, scratch.types, scratch.amounts, scratch.listingIds);
+            for(int i = 0; i < count; i++) {
+                int id = scratch.listingIds[i];
+                this.transactionRecord(scratch, account.getAccountNumber(), scratch.timestamps[i], scratch.types[i],
+                        id < 0 ? null : exchange.getStockListing(id), scratch.amounts[i]);
+            }
+        }
+    }
+
+    private void patronRecord(Scratch scratch, int patronId) throws IOException {
+        ByteBuffer out = scratch.ensure(MAX_RECORD);
+        if(this.format == Format.BINARY) {
+            out.put(PATRON).putInt(patronId);
+            return;
+        }
+        putAscii(out, "patron,");
+        putLong(out, patronId);
+        out.put((byte) '\n');
+    }
+
+    private void accountRecord(Scratch scratch, byte type, int accountNumber, long amount) throws IOException {
+        ByteBuffer out = scratch.ensure(MAX_RECORD);
+        if(this.format == Format.BINARY) {
+            out.put(type).putInt(accountNumber).putLong(amount);
+            return;
+        }
+        putAscii(out, type == SAVINGS ? "savings," : "brokerage,");
+        putLong(out, accountNumber);
+        out.put((byte) ',');
+        putMoney(out, amount);
+        out.put((byte) '\n');
+    }
+
+    private void holdingRecord(Scratch scratch, int accountNumber, StockListing listing, int quantity, long price) throws IOException {
+        if(this.format == Format.BINARY) {
+            this.declare(scratch, listing);
+            scratch.ensure(MAX_RECORD).put(HOLDING).putInt(accountNumber).putInt(listing.getId()).putInt(quantity).putLong(price);
+            return;
+        }
+        ByteBuffer out = scratch.ensure(MAX_RECORD);
+        putAscii(out, "holding,");
+        putLong(out, accountNumber);
+        out.put((byte) ',').put(listing.getTickerBytes()).put((byte) ',');
+        putLong(out, quantity);
+        out.put((byte) ',');
+        putMoney(out, price);
+        out.put((byte) '\n');
+    }
+
+    private void transactionRecord(Scratch scratch, int accountNumber, long timestamp, byte type, StockListing listing, long amount) throws IOException {
+        if(this.format == Format.BINARY) {
+            if(listing != null)
+                this.declare(scratch, listing);
+            scratch.ensure(MAX_RECORD).put(TRANSACTION).putInt(accountNumber).putLong(timestamp).put(type)
+                    .putInt(listing == null ? NO_LISTING : listing.getId()).putLong(amount);
+            return;
+        }
+        ByteBuffer out = scratch.ensure(MAX_RECORD);
+        putAscii(out, "transaction,");
+        putLong(out, accountNumber);
+        out.put((byte) ',');
+        putLong(out, timestamp);
+        out.put((byte) ',').put(TYPE_NAMES[type]).put((byte) ',');
+        if(listing == null) {
+            out.put((byte) ',');
+            putMoney(out, amount);
+        } else {
+            out.put(listing.getTickerBytes()).put((byte) ',');
+            putLong(out, amount);
+        }
+        out.put((byte) '\n');
+    }
+
+    //write a LISTING record for listing unless this statement already has one
+    private void declare(Scratch scratch, StockListing listing) throws IOException {
+        int id = listing.getId();
+        if(id >>> 6 >= scratch.declared.length)
+            scratch.declared = Arrays.copyOf(scratch.declared, Math.max((id >>> 6) + 1, scratch.declared.length * 2));
+        if((scratch.declared[id >>> 6] & (1L << id)) != 0)
+            return;
+        scratch.declared[id >>> 6] |= 1L << id;
+        byte[] ticker = listing.getTickerBytes();
+        scratch.ensure(MAX_RECORD).put(LISTING).putInt(id).put((byte) ticker.length).put(ticker);
+    }
+
+    private static void putAscii(ByteBuffer out, String s) {
+        for(int i = 0; i < s.length(); i++)
+            out.put((byte) s.charAt(i));
+    }
+
+    //the decimal digits of value, without creating a String
+    private static void putLong(ByteBuffer out, long value) {
+        if(value < 0) {
+            out.put((byte) '-');
+            if(value == Long.MIN_VALUE) {
+                putAscii(out, "9223372036854775808");
+                return;
+            }
+            value = -value;
+        }
+        long divisor = 1;
+        while(value / divisor >= 10)
+            divisor *= 10;
+        for(; divisor > 0; divisor /= 10)
+            out.put((byte) ('0' + value / divisor % 10));
+    }
+
+    //minor units as whole units with SCALE decimal places, like Money.format
+    private static void putMoney(ByteBuffer out, long minor) {
+        long whole = minor / Money.MINOR_PER_UNIT;
+        long fraction = Math.abs(minor % Money.MINOR_PER_UNIT);
+        if(minor < 0 && whole == 0)
+            out.put((byte) '-');
+        putLong(out, whole);
+        out.put((byte) '.');
+        for(long divisor = Money.MINOR_PER_UNIT / 10; divisor > 0; divisor /= 10)
+            out.put((byte) ('0' + fraction / divisor % 10));
+    }
+
+    /**
+     * the output buffer and history blocks of one thread, reused for every statement it writes
+     */
+    private static final class Scratch {
+        private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+        private final long[] timestamps = new long[BLOCK_SIZE];
+        private final byte[] types = new byte[BLOCK_SIZE];
+        private final long[] amounts = new long[BLOCK_SIZE];
+        private final int[] listingIds = new int[BLOCK_SIZE];
+        private int[] holdingIds = new int[0];
+        private int[] holdingQuantities = new int[0];
+        private long[] holdingPrices = new long[0];
+        //one bit per listing id, set once the listing is declared in the current binary statement
+        private long[] declared = new long[0];
+        private WritableByteChannel channel;
+
+        private void start(WritableByteChannel channel) {
+            this.channel = channel;
+            this.buffer.clear();
+            Arrays.fill(this.declared, 0);
+        }
+
+        private void reserveHoldings(int count) {
+            if(this.holdingIds.length < count) {
+                this.holdingIds = new int[count];
+                this.holdingQuantities = new int[count];
+                this.holdingPrices = new long[count];
+            }
+        }
+
+        private ByteBuffer ensure(int bytes) throws IOException {
+            if(this.buffer.remaining() < bytes)
+                this.flush();
+            return this.buffer;
+        }
+
+        private void flush() throws IOException {
+            this.buffer.flip();
+            while(this.buffer.hasRemaining())
+                this.channel.write(this.buffer);
+            this.buffer.clear();
+        }
+    }
+}
@@ -0,0 +1,141 @@
+package bank;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Each listing gets a dense int id, in the order listings are created, when it is created. The trading path indexes arrays with
+ * these ids and only the edges of the system (Demo, the journal, the market data feed) look listings up by ticker symbol.
+ */
+public class StockExchange {   
+    private Map<String, StockListing> stocks;
+    //indexed by listing id; replaced, never modified in place, after a listing has been published in it
+    private volatile StockListing[] listingsById;
+    private volatile OrderBook[] orderBooksById;
+    private int listingCount;
+    private volatile Journal journal;
+
+    protected StockExchange() {
+        this.stocks = new ConcurrentHashMap<String, StockListing>();
+        this.listingsById = new StockListing[0];
+        this.orderBooksById = new OrderBook[0];
+    }
+
+    /**
+     *
+     * @param tickerSymbol symbol of the new stock to be created, e.g. "IBM", "GOOG", etc.
+     * @param initialPrice price of a single share of the stock, rounded to the nearest cent
+     * @param availableShares how many shares of the stock are available initially
+     * @throws IllegalArgumentException if there's already a listing with that tickerSymbol
+     */
+    public void createNewListing(String tickerSymbol, double initialPrice, int availableShares) {
+        this.createNewListingAtMinorPrice(tickerSymbol, Money.of(initialPrice), availableShares);
+    }
+
+    /**
+     * @param tickerSymbol symbol of the new stock to be created
+     * @param initialPrice price of a single share of the stock in minor units
+     * @param availableShares how many shares of the stock are available initially
+     * @throws IllegalArgumentException if there's already a listing with that tickerSymbol
+     * @see Money
+     */
+    public void createNewListingAtMinorPrice(String tickerSymbol, long initialPrice, int availableShares) {
+        Journal journal;
+        long position = 0;
+        synchronized(this) {
+            if(this.stocks.containsKey(tickerSymbol))
+                throw new IllegalArgumentException("There already exists a listing with that ticker symbol");
+            StockListing listing = new StockListing(this.listingCount, tickerSymbol, initialPrice, availableShares);
+            //journaled in id order, before any price or trade of the listing can be, so recovery gives it the same id
+            journal = this.journal;
+            if(journal != null)
+                position = journal.listingCreated(tickerSymbol, initialPrice, availableShares);
+            listing.setJournal(journal);
+            StockListing[] listings = Arrays.copyOf(this.listingsById, this.listingCount + 1);
+            listings[this.listingCount] = listing;
+            this.listingsById = listings;
+            this.listingCount++;
+            this.stocks.put(tickerSymbol, listing);
+        }
+        if(journal != null)
+            journal.awaitDurable(position);
+    }
+
+    /**
+     * @param tickerSymbol
+     * @return the StockListing object for the given tickerSymbol, or null if there is none
+     */
+    public StockListing getStockListing(String tickerSymbol) {
+        return this.stocks.get(tickerSymbol);
+    }
+
+    /**
+     * @param id a listing id
+     * @return the StockListing with that id, or null if there is none
+     * @see StockListing#getId()
+     */
+    public StockListing getStockListing(int id) {
+        StockListing[] listings = this.listingsById;
+        return id >= 0 && id < listings.length ? listings[id] : null;
+    }
+
+    /**
+     * @return the number of listings, which is also one more than the highest listing id
+     */
+    public int getListingCount() {
+        return this.listingsById.length;
+    }
+
+    /**
+     * @param tickerSymbol
+     * @return the limit order book on which patrons trade the given stock with each other, or null if there is no such listing
+     */
+    public OrderBook getOrderBook(String tickerSymbol) {
+        StockListing listing = this.stocks.get(tickerSymbol);
+        return listing == null ? null : this.getOrderBook(listing.getId());
+    }
+
+    /**
+     * @param id a listing id
+     * @return the limit order book of the listing with that id, or null if there is no such listing
+     */
+    public OrderBook getOrderBook(int id) {
+        OrderBook[] books = this.orderBooksById;
+        if(id >= 0 && id < books.length && books[id] != null)
+            return books[id];
+        StockListing listing = this.getStockListing(id);
+        if(listing == null)
+            return null;
+        synchronized(this) {
+            books = this.orderBooksById;
+            if(id >= books.length)
+                books = Arrays.copyOf(books, this.listingCount);
+            else if(books[id] != null)
+                return books[id];
+            else
+                books = books.clone();
+            books[id] = new OrderBook(listing);
+            this.orderBooksById = books;
+            return books[id];
+        }
+    }
+
+    /**
+     * Journal every later change to this exchange and its listings.
+     * @param journal
+     * @see Bank#recover(StockExchange, java.nio.file.Path, Journal.FsyncPolicy)
+     */
+    void setJournal(Journal journal) {
+        this.journal = journal;
+        for(StockListing listing : this.listingsById)
+            listing.setJournal(journal);
+    }
+
+    /**
+     * @return an umodifiable list of all the StockListings currently found on this exchange, in order of listing id
+     * @see Collections#unmodifiableList(List)
+     */
+    public List<StockListing> getAllCurrentListings() {
+        return Collections.unmodifiableList(Arrays.asList(this.listingsById));
+    }
+}
\ No newline at end of file
@@ -0,0 +1,288 @@
+package bank;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * represents the stock of a single company that is listed on the StockExchange
+ * A listing is shared by every Patron trading it, so the inventory is updated lock-free with compare-and-set and the price is read lock-free.
+ * A price change takes a small per-listing lock only to keep the journal in the same order as the changes.
+ * The price is kept in minor units so it can live in an AtomicLong.
+ * @see Money
+ */
+public class StockListing {
+    private final AtomicInteger availableShares;
+    private final AtomicInteger reservedShares;
+    private final AtomicLong price;
+    //held while a price is changed and journaled, so the journal records prices in the order they were applied
+    private final Object priceLock;
+    private final int id;
+    private String tickerSymbol;
+    //UTF-8 of tickerSymbol, encoded once for the journal
+    private final byte[] tickerBytes;
+    private volatile Journal journal;
+    private final HolderIndex holders;
+    
+
+    /**
+     *
+     * @param id the dense id assigned by the StockExchange
+     * @param tickerSymbol
+     * @param initialPrice the initial price in minor units
+     * @param availableShares
+     * @throws IllegalArgumentException if the tickerSymbol is null or empty, if the initial price is <= 0, of if availableShares <= 0
+     * @see StockExchange#createNewListingAtMinorPrice(String, long, int)
+     */
+    protected StockListing(int id, String tickerSymbol, long initialPrice, int availableShares) {
+        if(tickerSymbol == null || tickerSymbol == "")
+            throw new IllegalArgumentException("Ticker symbol cannot be null or empty");
+        if(initialPrice <= 0)
+            throw new IllegalArgumentException("Initial price must be > 0");
+        if(availableShares <= 0)
+            throw new IllegalArgumentException("Available shares must be > 0");
+
+        this.id = id;
+        this.tickerSymbol = tickerSymbol;
+        this.tickerBytes = tickerSymbol.getBytes(StandardCharsets.UTF_8);
+        this.price = new AtomicLong(initialPrice);
+        this.priceLock = new Object();
+        this.availableShares = new AtomicInteger(availableShares);
+        this.reservedShares = new AtomicInteger(0);
+        this.holders = new HolderIndex();
+    }
+
+    /**
+     * @param journal the journal that records every later change to this listing, or null
+     * @see StockExchange#setJournal(Journal)
+     */
+    void setJournal(Journal journal) {
+        this.journal = journal;
+    }
+
+    /**
+     * @return the dense id the StockExchange assigned this listing, usable as an array index
+     * @see StockExchange#getStockListing(int)
+     */
+    public int getId() {
+        return this.id;
+    }
+
+    public String getTickerSymbol() {
+        return this.tickerSymbol;
+    }
+
+    /**
+     * @return the UTF-8 encoding of the ticker symbol; shared, so callers must not modify it
+     */
+    byte[] getTickerBytes() {
+        return this.tickerBytes;
+    }
+    public double getPrice() {
+        return Money.toDouble(this.price.get());
+    }
+
+    /**
+     * @return the price for a single share of this stock in minor units
+     */
+    public long getMinorPrice() {
+        return this.price.get();
+    }
+    public int getAvailableShares() {
+        return this.availableShares.get();
+    }
+
+    /**
+     * @return the number of shares taken by reservations that have been neither committed nor rolled back
+     * @see #reserveShares(int)
+     */
+    public int getReservedShares() {
+        return this.reservedShares.get();
+    }
+
+    /**
+     * set the price for a single share of this stock
+     * Every brokerage account holding this stock is revalued before this method returns, without taking any Patron's lock.
+     * @param price
+     * @throws IllegalArgumentException if price is <= 0 once rounded to the nearest cent
+     */
+    protected void setPrice(double price) {
+        this.setMinorPrice(Money.of(price));
+    }
+
+    /**
+     * set the price for a single share of this stock in minor units
+     * Every brokerage account holding this stock is revalued before this method returns, without taking any Patron's lock.
+     * @param price
+     * @throws IllegalArgumentException if price is <= 0
+     */
+    protected void setMinorPrice(long price) {
+        if(price <= 0)
+            throw new IllegalArgumentException("Price must be > 0");
+        synchronized(this.priceLock) {
+            this.price.set(price);
+            this.journalPrice(price);
+        }
+        this.revalueHolders();
+    }
+
+    /**
+     * set the price only if it is still expectedPrice, e.g. to apply a relative move computed from a price read earlier
+     * @param expectedPrice the price in minor units the caller last read
+     * @param newPrice the new price in minor units
+     * @return true if the price was changed, false if another thread changed it first
+     * @see #getMinorPrice()
+     */
+    protected boolean compareAndSetPrice(long expectedPrice, long newPrice) {
+        if(newPrice <= 0)
+            throw new IllegalArgumentException("Price must be > 0");
+        synchronized(this.priceLock) {
+            if(!this.price.compareAndSet(expectedPrice, newPrice))
+                return false;
+            this.journalPrice(newPrice);
+        }
+        this.revalueHolders();
+        return true;
+    }
+
+    /**
+     * register a brokerage holding of this stock in the holder index, so that it can be found by account number and so that
+     * its owner's value follows this listing's price
+     * @param shares
+     * @see BrokerageAccount#revalue(StockShares)
+     */
+    void addHolder(StockShares shares) {
+        this.holders.add(shares);
+    }
+
+    /**
+     * remove a brokerage holding whose quantity has dropped to 0 from the holder index
+     * @param shares
+     */
+    void removeHolder(StockShares shares) {
+        this.holders.remove(shares);
+    }
+
+    //runs after the new price is visible, so a holding added concurrently is either visited here or valued at the new price
+    private void revalueHolders() {
+        this.holders.revalueAll();
+    }
+
+    /**
+     * @return an unmodifiable list of the brokerage holdings of this stock; a holding is dropped once its quantity falls to 0
+     */
+    public List<StockShares> getHolders() {
+        return this.holders.list();
+    }
+
+    /**
+     * @param accountNumber the number of a BrokerageAccount
+     * @return how many shares of this stock that account holds
+     */
+    public int getQuantityHeldBy(int accountNumber) {
+        StockShares shares = this.holders.find(accountNumber);
+        return shares == null ? 0 : shares.getQuantity();
+    }
+
+    //called under priceLock, so the last price journaled is the last price set and recovery restores it.
+    //A price is market data rather than a patron's money, so it is appended without waiting for it to become durable.
+    private void journalPrice(long price) {
+        Journal journal = this.journal;
+        if(journal != null)
+            journal.priceChanged(this, price);
+    }
+
+    private void journalShares(int delta) {
+        Journal journal = this.journal;
+        if(journal != null)
+            journal.awaitDurable(journal.availableSharesChanged(this, delta));
+    }
+
+    /**
+     * increase the number of shares available
+     * @param availableShares
+     * @return the total number of shares after adding availableShares
+     * @throws IllegalArgumentException if availableShares <= 0
+     */
+    protected int addAvailableShares(int availableShares) {
+        if(availableShares <= 0)
+            throw new IllegalArgumentException("Available shares must be > 0");
+        int total = this.availableShares.addAndGet(availableShares);
+        this.journalShares(availableShares);
+        return total;
+    }
+    /**
+     * reduce the number of shares available
+     * @param quantityToSubtract
+     * @return the total number of shares after reducing availableShares
+     * @throws IllegalArgumentException if quantityToSubtract > the number of available shares
+     */
+    protected int reduceAvailableShares(int quantityToSubtract){
+        int current;
+        do {
+            current = this.availableShares.get();
+            if(quantityToSubtract > current)
+                throw new IllegalArgumentException("Quantity must be <= the available shares");
+        } while(!this.availableShares.compareAndSet(current, current - quantityToSubtract));
+        this.journalShares(-quantityToSubtract);
+        return current - quantityToSubtract;
+    }
+
+    /**
+     * change the number of available shares by delta without any checks, while replaying the Bank's journal
+     * @see Bank#recover(StockExchange, java.nio.file.Path, Journal.FsyncPolicy)
+     */
+    void restoreAvailableShares(int delta) {
+        this.availableShares.addAndGet(delta);
+    }
+
+    /**
+     * Take quantity shares out of the available pool and hold them for a purchase that is still in progress.
+     * The reservation must be finished with exactly one call to commitReservation or rollbackReservation.
+     * @param quantity
+     * @return true if the shares were reserved, false if fewer than quantity shares are available
+     * @throws IllegalArgumentException if quantity <= 0
+     * @see #commitReservation(int)
+     * @see #rollbackReservation(int)
+     */
+    protected boolean reserveShares(int quantity) {
+        if(quantity <= 0)
+            throw new IllegalArgumentException("Quantity must be > 0");
+        int current;
+        do {
+            current = this.availableShares.get();
+            if(quantity > current)
+                return false;
+        } while(!this.availableShares.compareAndSet(current, current - quantity));
+        this.reservedShares.addAndGet(quantity);
+        return true;
+    }
+
+    /**
+     * finish a reservation whose purchase went through; the shares now belong to the buyer
+     * @param quantity the quantity passed to reserveShares
+     */
+    protected void commitReservation(int quantity) {
+        this.reservedShares.addAndGet(-quantity);
+    }
+
+    /**
+     * finish a reservation whose purchase failed, returning the shares to the available pool
+     * @param quantity the quantity passed to reserveShares
+     */
+    protected void rollbackReservation(int quantity) {
+        this.reservedShares.addAndGet(-quantity);
+        this.availableShares.addAndGet(quantity);
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        return this.tickerSymbol.equals(((StockListing) other).tickerSymbol);
+    }
+
+    @Override
+    public int hashCode() {
+        return this.availableShares.get() + this.tickerSymbol.hashCode();
+    }
+}
\ No newline at end of file
@@ -0,0 +1,86 @@
+package bank;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+
+/**
+ * represents the quantity of shares a single Patron owns of single stock/listing
+ */
+public class StockShares {
+    private StockListing stock;
+    private final BrokerageAccount owner;
+    private volatile int quantity;
+    //quantity * price in minor units, as currently counted in its owner's value; changed only by compareAndSetCounted
+    private volatile long counted;
+    //whether this holding is in its listing's holder index; guarded by the owner's Patron lock
+    private boolean listed;
+
+    private static final VarHandle COUNTED;
+    static {
+        try {
+            COUNTED = MethodHandles.lookup().findVarHandle(StockShares.class, "counted", long.class);
+        } catch(ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+
+    /**
+     * @param owner the brokerage account holding these shares
+     * @param listing the stock listing this instance is tracking the Patron's shares of
+     * @throws IllegalArgumentException if listing is null
+     */
+    protected StockShares(BrokerageAccount owner, StockListing listing, int quantity) {
+        this.owner = owner;
+        this.stock = listing;
+        this.quantity = quantity;
+    }
+
+    public int getQuantity() {
+        return this.quantity;
+    }
+
+    protected void setQuantity(int quantity) {
+        this.quantity = quantity;
+    }
+
+    public StockListing getListing() {
+        return this.stock;
+    }
+
+    /**
+     * @return the brokerage account holding these shares
+     */
+    protected BrokerageAccount getOwner() {
+        return this.owner;
+    }
+
+    long getCounted() {
+        return this.counted;
+    }
+
+    /**
+     * @see BrokerageAccount#revalue(StockShares)
+     */
+    boolean compareAndSetCounted(long expected, long counted) {
+        return COUNTED.compareAndSet(this, expected, counted);
+    }
+
+    boolean isListed() {
+        return this.listed;
+    }
+
+    void setListed(boolean listed) {
+        this.listed = listed;
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        return this.stock.equals(((StockShares) other).stock);
+    }
+
+    @Override
+    public int hashCode() {
+        return stock.getTickerSymbol().hashCode() + stock.getAvailableShares() + this.quantity;
+    }
+}
\ No newline at end of file
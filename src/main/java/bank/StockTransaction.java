@@ -1,3 +1,5 @@
+package bank;
+
 /**
  * A StockTransaction is immutable. Value of nanoTimeStamp must be set at time of construction to the return value of System.nanoTime().
  */
@@ -28,6 +30,17 @@ public class StockTransaction implements Transaction {
         this.nanoTimeStamp = System.nanoTime();
     }
 
+    /**
+     * Rebuild a transaction that was already validated and executed, keeping its original timestamp.
+     * @see TransactionLog#get(int)
+     */
+    StockTransaction(StockListing listing, TxType type, int quantity, long nanoTimeStamp) {
+        this.listing = listing;
+        this.type = type;
+        this.quantity = quantity;
+        this.nanoTimeStamp = nanoTimeStamp;
+    }
+
     public StockListing getStock(){
         return this.listing;
     }
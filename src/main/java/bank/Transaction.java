@@ -1,3 +1,5 @@
+package bank;
+
 /**
  * Instances model a single transaction.
  */
@@ -0,0 +1,67 @@
+package bank;
+
+import java.util.Arrays;
+
+/**
+ * A list of (account number, transaction) pairs to be executed together by Bank.executeBatch, e.g. the lines of a settlement file.
+ * The result of each item is reported as one of the byte codes below, at the item's index in the array returned by executeBatch.
+ * They are coarser than the TxStatus codes the items are executed with.
+ * @see Bank#executeBatch(TransactionBatch)
+ */
+public class TransactionBatch {
+    /** the transaction was executed */
+    public static final byte OK = 0;
+    /** the patron lacked the assets needed, i.e. executeTransaction would throw InsufficientAssetsException */
+    public static final byte INSUFFICIENT_ASSETS = 1;
+    /** the transaction is not valid for the account, i.e. executeTransaction would throw InvalidTransactionException or IllegalArgumentException */
+    public static final byte INVALID_TRANSACTION = 2;
+    /** the bank has no account with the given number */
+    public static final byte NO_SUCH_ACCOUNT = 3;
+
+    private int[] accountNumbers;
+    private Transaction[] transactions;
+    private int size;
+
+    public TransactionBatch() {
+        this(16);
+    }
+
+    /**
+     * @param expectedSize how many items will be added, to avoid growing the batch while it is filled
+     */
+    public TransactionBatch(int expectedSize) {
+        this.accountNumbers = new int[Math.max(1, expectedSize)];
+        this.transactions = new Transaction[Math.max(1, expectedSize)];
+    }
+
+    /**
+     * @param accountNumber the account to execute tx on
+     * @param tx
+     * @return this batch
+     * @throws IllegalArgumentException if tx is null
+     */
+    public TransactionBatch add(int accountNumber, Transaction tx) {
+        if(tx == null)
+            throw new IllegalArgumentException("Transaction cannot be null");
+        if(this.size == this.accountNumbers.length) {
+            this.accountNumbers = Arrays.copyOf(this.accountNumbers, this.size * 2);
+            this.transactions = Arrays.copyOf(this.transactions, this.size * 2);
+        }
+        this.accountNumbers[this.size] = accountNumber;
+        this.transactions[this.size] = tx;
+        this.size++;
+        return this;
+    }
+
+    public int size() {
+        return this.size;
+    }
+
+    int getAccountNumber(int index) {
+        return this.accountNumbers[index];
+    }
+
+    Transaction getTransaction(int index) {
+        return this.transactions[index];
+    }
+}
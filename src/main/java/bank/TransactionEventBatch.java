@@ -0,0 +1,90 @@
+package bank;
+
+import java.util.Objects;
+
+/**
+ * A run of consecutive events from a TransactionEventStream, delivered to a subscriber in one onNext call.
+ * Events are stored column by column and read by index, so delivering a batch creates no object per event.
+ *
+ * Each subscriber gets a single batch that is refilled for every delivery, so a batch is only valid until onNext returns;
+ * a subscriber that needs the events later must copy them out.
+ * @see TransactionEventStream
+ */
+public final class TransactionEventBatch {
+    private static final Transaction.TxType[] TYPES = Transaction.TxType.values();
+
+    private final StockExchange exchange;
+    final int[] accounts;
+    final byte[] types;
+    final long[] amounts;
+    final int[] listingIds;
+    final long[] timestamps;
+    long firstSequence;
+    int size;
+
+    TransactionEventBatch(StockExchange exchange, int capacity) {
+        this.exchange = exchange;
+        this.accounts = new int[capacity];
+        this.types = new byte[capacity];
+        this.amounts = new long[capacity];
+        this.listingIds = new int[capacity];
+        this.timestamps = new long[capacity];
+    }
+
+    /**
+     * @return the number of events in the batch
+     */
+    public int size() {
+        return this.size;
+    }
+
+    /**
+     * @param i between 0 and size() - 1
+     * @return the event's sequence number; the events of a batch have consecutive sequence numbers
+     */
+    public long getSequence(int i) {
+        return this.firstSequence + Objects.checkIndex(i, this.size);
+    }
+
+    /**
+     * @param i between 0 and size() - 1
+     * @return the number of the account the transaction was executed on
+     */
+    public int getAccountNumber(int i) {
+        return this.accounts[Objects.checkIndex(i, this.size)];
+    }
+
+    /**
+     * @param i between 0 and size() - 1
+     * @return the transaction's type
+     */
+    public Transaction.TxType getType(int i) {
+        return TYPES[this.types[Objects.checkIndex(i, this.size)]];
+    }
+
+    /**
+     * @param i between 0 and size() - 1
+     * @return for a DEPOSIT or WITHDRAW the amount in minor units, for a BUY or SELL the number of shares
+     */
+    public long getMinorAmount(int i) {
+        return this.amounts[Objects.checkIndex(i, this.size)];
+    }
+
+    /**
+     * @param i between 0 and size() - 1
+     * @return the listing traded by a BUY or SELL, or null for a DEPOSIT or WITHDRAW
+     */
+    public StockListing getListing(int i) {
+        int id = this.listingIds[Objects.checkIndex(i, this.size)];
+        return id == TransactionEventStream.NO_LISTING ? null : this.exchange.getStockListing(id);
+    }
+
+    /**
+     * @param i between 0 and size() - 1
+     * @return the transaction's timestamp
+     * @see Transaction#getNanoTimestamp()
+     */
+    public long getNanoTimestamp(int i) {
+        return this.timestamps[Objects.checkIndex(i, this.size)];
+    }
+}
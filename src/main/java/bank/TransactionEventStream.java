@@ -0,0 +1,292 @@
+package bank;
+
+import java.io.Closeable;
+import java.lang.invoke.VarHandle;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Publishes every transaction executed on a Bank's accounts, in batches, to any number of Flow subscribers such as risk, fraud
+ * or reporting systems, so they don't have to poll each account's history.
+ *
+ * Accounts publish into a preallocated ring buffer of primitive columns while they hold their Patron's lock, so each account's events
+ * are in the order its transactions were executed. Every event gets a sequence number, one higher than the event published before it.
+ * Publishing never waits for subscribers and allocates nothing: once the ring is full, each new event overwrites the oldest one.
+ *
+ * Each subscriber is served by its own delivery thread, which reads the ring from the subscriber's own position and hands it up to
+ * getBatchSize() events per onNext, one onNext per unit of demand requested through its Subscription. A subscriber that requests
+ * nothing simply stops receiving; it doesn't slow down publishing or any other subscriber. A subscriber that falls so far behind that
+ * events it hasn't received are overwritten gets onError with an IllegalStateException, and may subscribe again from the oldest
+ * sequence still in the ring; subscribe(Flow.Subscriber, long) likewise replays from any sequence the ring still holds.
+ * @see Bank#enableEventStream(int)
+ * @see TransactionEventBatch
+ */
+public class TransactionEventStream implements Flow.Publisher<TransactionEventBatch>, Closeable {
+    /** the listing id of events that are DEPOSITs or WITHDRAWs */
+    static final int NO_LISTING = -1;
+    public static final int DEFAULT_BATCH_SIZE = 256;
+
+    private static final long IDLE_PARK_NANOS = 50_000;
+    //marks a slot whose event is being overwritten
+    private static final long WRITING = Long.MIN_VALUE;
+    private static final AtomicInteger NEXT_THREAD_ID = new AtomicInteger();
+
+    private final StockExchange exchange;
+    private final int batchSize;
+
+    //ring buffer
+    private final int mask;
+    private final int[] accounts;
+    private final byte[] types;
+    private final long[] amounts;
+    private final int[] listingIds;
+    private final long[] timestamps;
+    private final AtomicLongArray published;
+    private final AtomicLong claimed;
+
+    private final List<Delivery> deliveries;
+    private volatile boolean closed;
+
+    /**
+     * @param exchange resolves the listing ids of events
+     * @param capacity the number of events the ring buffer holds; rounded up to a power of 2
+     * @param batchSize the most events delivered in one onNext
+     * @throws IllegalArgumentException if capacity or batchSize <= 0
+     */
+    TransactionEventStream(StockExchange exchange, int capacity, int batchSize) {
+        if(capacity <= 0)
+            throw new IllegalArgumentException("Capacity must be > 0");
+        if(batchSize <= 0)
+            throw new IllegalArgumentException("Batch size must be > 0");
+        int size = Integer.highestOneBit(Math.max(2, capacity - 1)) << 1;
+        this.exchange = exchange;
+        this.batchSize = batchSize;
+        this.mask = size - 1;
+        this.accounts = new int[size];
+        this.types = new byte[size];
+        this.amounts = new long[size];
+        this.listingIds = new int[size];
+        this.timestamps = new long[size];
+        this.published = new AtomicLongArray(size);
+        //each slot holds the sequence of its last event, as if the lap before sequence 0 had been published
+        for(int i = 0; i < size; i++)
+            this.published.set(i, i - size);
+        this.claimed = new AtomicLong();
+        this.deliveries = new CopyOnWriteArrayList<>();
+    }
+
+    /**
+     * @return the number of events the ring buffer holds
+     */
+    public int getCapacity() {
+        return this.mask + 1;
+    }
+
+    /**
+     * @return the most events delivered in one onNext
+     */
+    public int getBatchSize() {
+        return this.batchSize;
+    }
+
+    /**
+     * @return the sequence number the next event published will get
+     */
+    public long getNextSequence() {
+        return this.claimed.get();
+    }
+
+    /**
+     * @return the sequence number of the oldest event still in the ring buffer, which a subscriber can replay from
+     */
+    public long getOldestSequence() {
+        return Math.max(0, this.claimed.get() - this.getCapacity());
+    }
+
+    /**
+     * @return the number of subscribers currently being served
+     */
+    public int getSubscriberCount() {
+        return this.deliveries.size();
+    }
+
+    /**
+     * Put an event in the ring buffer, overwriting the oldest one if it is full. Called by an account under its Patron's lock.
+     * @param accountNumber
+     * @param type
+     * @param amount in minor units for a DEPOSIT or WITHDRAW, the number of shares for a BUY or SELL
+     * @param listingId the listing traded, or NO_LISTING
+     * @param nanoTimestamp
+     */
+    void publish(int accountNumber, Transaction.TxType type, long amount, int listingId, long nanoTimestamp) {
+        if(this.closed)
+            return;
+        long sequence = this.claimed.getAndIncrement();
+        int slot = (int) sequence & this.mask;
+        //a slower publisher may still be writing the event a whole lap before this one into the same slot
+        long previous = sequence - this.getCapacity();
+        while(this.published.get(slot) != previous)
+            Thread.onSpinWait();
+        this.published.set(slot, WRITING);
+        //a volatile store doesn't keep the plain stores after it from becoming visible first; a reader must see WRITING before them
+        VarHandle.storeStoreFence();
+        this.accounts[slot] = accountNumber;
+        this.types[slot] = (byte) type.ordinal();
+        this.amounts[slot] = amount;
+        this.listingIds[slot] = listingId;
+        this.timestamps[slot] = nanoTimestamp;
+        this.published.lazySet(slot, sequence);
+    }
+
+    /**
+     * Deliver the events published from now on to subscriber.
+     * @param subscriber
+     * @throws NullPointerException if subscriber is null
+     */
+    @Override
+    public void subscribe(Flow.Subscriber<? super TransactionEventBatch> subscriber) {
+        this.subscribe(subscriber, this.getNextSequence());
+    }
+
+    /**
+     * Deliver the events from sequence onwards to subscriber, replaying those already published. If the ring buffer no longer
+     * holds the event with that sequence, the subscriber gets onError right after onSubscribe.
+     * @param subscriber
+     * @param sequence the sequence of the first event to deliver, at most getNextSequence()
+     * @throws NullPointerException if subscriber is null
+     * @throws IllegalArgumentException if sequence is negative or greater than getNextSequence()
+     */
+    public void subscribe(Flow.Subscriber<? super TransactionEventBatch> subscriber, long sequence) {
+        if(subscriber == null)
+            throw new NullPointerException("Subscriber cannot be null");
+        if(sequence < 0 || sequence > this.getNextSequence())
+            throw new IllegalArgumentException("No event with sequence " + sequence + " has been published");
+        Delivery delivery = new Delivery(subscriber, sequence);
+        this.deliveries.add(delivery);
+        delivery.thread.start();
+    }
+
+    /**
+     * Stop publishing. Each subscriber receives the events published up to now and then onComplete.
+     */
+    @Override
+    public void close() {
+        this.closed = true;
+        for(Delivery delivery : this.deliveries)
+            LockSupport.unpark(delivery.thread);
+    }
+
+    //copy up to a batch of events from sequence on into batch; returns how many, or -1 if the event at sequence was overwritten
+    private int read(long sequence, TransactionEventBatch batch) {
+        long claimed = this.claimed.get();
+        //once the event a whole lap after sequence is claimed, the slot of sequence may be overwritten at any moment
+        if(claimed - this.getCapacity() > sequence)
+            return -1;
+        long end = Math.min(sequence + batch.accounts.length, claimed);
+        int n = 0;
+        for(long s = sequence; s < end; s++, n++) {
+            int slot = (int) s & this.mask;
+            if(this.published.get(slot) != s)
+                break;
+            batch.accounts[n] = this.accounts[slot];
+            batch.types[n] = this.types[slot];
+            batch.amounts[n] = this.amounts[slot];
+            batch.listingIds[n] = this.listingIds[slot];
+            batch.timestamps[n] = this.timestamps[slot];
+            //if the slot still holds the same sequence after the copy, no publisher overwrote it during the copy
+            VarHandle.acquireFence();
+            if(this.published.get(slot) != s)
+                return n == 0 ? -1 : n;
+        }
+        batch.firstSequence = sequence;
+        batch.size = n;
+        return n;
+    }
+
+    /**
+     * the Subscription of one subscriber and the thread that delivers to it
+     */
+    private final class Delivery implements Flow.Subscription {
+        private final Flow.Subscriber<? super TransactionEventBatch> subscriber;
+        private final TransactionEventBatch batch;
+        private final AtomicLong requested;
+        private final Thread thread;
+        private long next;
+        private volatile boolean cancelled;
+        private volatile boolean invalidRequest;
+        private volatile long invalidAmount;
+
+        Delivery(Flow.Subscriber<? super TransactionEventBatch> subscriber, long sequence) {
+            this.subscriber = subscriber;
+            this.batch = new TransactionEventBatch(exchange, batchSize);
+            this.requested = new AtomicLong();
+            this.next = sequence;
+            this.thread = new Thread(this::deliver, "transaction-events-" + NEXT_THREAD_ID.getAndIncrement());
+            this.thread.setDaemon(true);
+        }
+
+        /**
+         * @param n the number of further batches the subscriber can take
+         */
+        @Override
+        public void request(long n) {
+            if(n <= 0) {
+                this.invalidAmount = n;
+                this.invalidRequest = true;
+            } else
+                this.requested.accumulateAndGet(n, (a, b) -> a + b < 0 ? Long.MAX_VALUE : a + b);
+            LockSupport.unpark(this.thread);
+        }
+
+        @Override
+        public void cancel() {
+            this.cancelled = true;
+            LockSupport.unpark(this.thread);
+        }
+
+        private void deliver() {
+            try {
+                this.subscriber.onSubscribe(this);
+                while(!this.cancelled) {
+                    if(this.invalidRequest) {
+                        this.subscriber.onError(new IllegalArgumentException("Requested " + this.invalidAmount + " batches; must be > 0"));
+                        return;
+                    }
+                    //every event published before close is delivered before onComplete
+                    if(closed && this.next == claimed.get()) {
+                        this.subscriber.onComplete();
+                        return;
+                    }
+                    if(this.requested.get() == 0) {
+                        LockSupport.parkNanos(IDLE_PARK_NANOS);
+                        continue;
+                    }
+                    int n = read(this.next, this.batch);
+                    if(n < 0) {
+                        this.subscriber.onError(new IllegalStateException("Subscriber fell behind: the events from sequence " + this.next
+                                + " on were overwritten; the oldest still available is " + getOldestSequence()));
+                        return;
+                    }
+                    if(n == 0) {
+                        LockSupport.parkNanos(IDLE_PARK_NANOS);
+                        continue;
+                    }
+                    this.next += n;
+                    if(this.requested.get() != Long.MAX_VALUE)
+                        this.requested.decrementAndGet();
+                    this.subscriber.onNext(this.batch);
+                }
+            } catch(RuntimeException e) {
+                //a subscriber that throws is treated as having cancelled; an Error is left to end the delivery thread
+                this.cancelled = true;
+            } finally {
+                deliveries.remove(this);
+            }
+        }
+    }
+}
@@ -0,0 +1,427 @@
+package bank;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.RandomAccess;
+
+/**
+ * The transaction history of a single Account, stored column by column in primitive arrays instead of one object per transaction.
+ * Transaction objects are only created on demand, when a caller reads an entry through the List returned by view().
+ *
+ * Entries are appended by one thread at a time (under the Patron's lock) and may be read by any number of threads without locking.
+ * The columns are held together in one Columns object that is replaced as a whole, through a volatile field, when they grow.
+ * An entry is written before size is published, and grown columns always contain everything from the ones they replaced,
+ * so a reader that reads size and then the columns can safely read any index below that size.
+ *
+ * Queries by time, TxType and listing run in O(log n + k) for the k transactions they return. Timestamps are taken when a transaction
+ * is created, so transactions executed concurrently can be appended slightly out of timestamp order; the log therefore also keeps a
+ * watermark column, the highest timestamp up to each entry, which is sorted and can be binary searched, and the largest distance
+ * between a timestamp and its watermark, which bounds how far past a time range its entries can be. Each TxType and each listing
+ * has a posting list of the positions of its entries, in log order, so a query for one of them only visits matching entries.
+ */
+class TransactionLog {
+    private static final int INITIAL_CAPACITY = 8;
+    private static final int NO_TICKER = -1;
+    private static final Transaction.TxType[] TYPES = Transaction.TxType.values();
+
+    private volatile Columns columns;
+    /** the largest difference between an entry's watermark and its timestamp */
+    private volatile long maxLag;
+    private volatile int size;
+    /** indexed by TxType ordinal; null until an entry of that type is appended */
+    private final Postings[] byType;
+    /** the posting lists of the listings in the log, keyed by listing id; replaced as a whole when it grows */
+    private volatile ListingSlots byListing;
+    private int listings;
+
+    private final StockExchange exchange;
+
+    /**
+     * The columns are allocated on the first append, so the many accounts restored from a snapshot without any history stay small.
+     * @param exchange resolves the listing ids stored in the log
+     */
+    TransactionLog(StockExchange exchange) {
+        this.exchange = exchange;
+        this.columns = new Columns(0);
+        this.byType = new Postings[TYPES.length];
+        this.byListing = new ListingSlots(0);
+    }
+
+    /**
+     * append tx to the end of the log
+     * @param tx a CashTransaction or a StockTransaction
+     * @throws IllegalArgumentException if tx is neither
+     */
+    void add(Transaction tx) {
+        if(tx instanceof CashTransaction t)
+            this.addCash(t.getType(), t.getMinorAmount(), t.getNanoTimestamp());
+        else if(tx instanceof StockTransaction t)
+            this.addStock(t.getType(), t.getStock(), t.getQuantity(), t.getNanoTimestamp());
+        else
+            throw new IllegalArgumentException("Unknown transaction class");
+    }
+
+    /**
+     * append a cash transaction given by its fields, without a CashTransaction object
+     * @param amount in minor units
+     */
+    void addCash(Transaction.TxType type, long amount, long nanoTimestamp) {
+        this.append(type, nanoTimestamp, amount, NO_TICKER);
+    }
+
+    /**
+     * append a stock transaction given by its fields, without a StockTransaction object
+     */
+    void addStock(Transaction.TxType type, StockListing listing, int quantity, long nanoTimestamp) {
+        this.append(type, nanoTimestamp, quantity, listing.getId());
+    }
+
+    /**
+     * append count entries given column by column, e.g. a block of history loaded from a snapshot
+     * @param listingIds for stock entries the listing id, for cash entries -1
+     * @see #copyTo(int, int, long[], byte[], long[], int[])
+     */
+    void addAll(int count, long[] timestamps, byte[] types, long[] amounts, int[] listingIds) {
+        if(this.size + count > this.columns.capacity())
+            this.grow(Math.max(this.size + count, this.size + (this.size >> 1)));
+        for(int i = 0; i < count; i++)
+            this.append(TYPES[types[i]], timestamps[i], amounts[i], listingIds[i]);
+    }
+
+    /**
+     * Grow the columns, and the posting lists of the types and listings already in the log,
+     * so that at least capacity entries fit without growing them again.
+     * @param capacity
+     */
+    void ensureCapacity(int capacity) {
+        int headroom = capacity - this.size;
+        if(headroom <= 0)
+            return;
+        if(capacity > this.columns.capacity())
+            this.grow(capacity);
+        for(Postings postings : this.byType) {
+            if(postings != null)
+                postings.ensureCapacity(postings.size + headroom);
+        }
+        for(Postings postings : this.byListing.values) {
+            if(postings != null)
+                postings.ensureCapacity(postings.size + headroom);
+        }
+    }
+
+    private void append(Transaction.TxType type, long timestamp, long amount, int tickerId) {
+        int n = this.size;
+        Columns columns = this.columns;
+        if(n == columns.capacity())
+            columns = this.grow(Math.max(INITIAL_CAPACITY, n + (n >> 1)));
+        long watermark = n == 0 ? timestamp : Math.max(columns.watermarks[n - 1], timestamp);
+        if(watermark - timestamp > this.maxLag)
+            this.maxLag = watermark - timestamp;
+        columns.timestamps[n] = timestamp;
+        columns.types[n] = (byte) type.ordinal();
+        columns.amounts[n] = amount;
+        columns.tickerIds[n] = tickerId;
+        columns.watermarks[n] = watermark;
+        this.postingsOf(type).add(n);
+        if(tickerId != NO_TICKER)
+            this.postingsOf(tickerId).add(n);
+        this.size = n + 1;
+    }
+
+    private Columns grow(int capacity) {
+        Columns grown = new Columns(this.columns, capacity);
+        this.columns = grown;
+        return grown;
+    }
+
+    private Postings postingsOf(Transaction.TxType type) {
+        Postings postings = this.byType[type.ordinal()];
+        if(postings == null)
+            postings = this.byType[type.ordinal()] = new Postings();
+        return postings;
+    }
+
+    private Postings postingsOf(int listingId) {
+        Postings postings = this.byListing.get(listingId);
+        if(postings != null)
+            return postings;
+        postings = new Postings();
+        if((this.listings + 1) * 4 > this.byListing.keys.length * 3) {
+            ListingSlots old = this.byListing;
+            ListingSlots grown = new ListingSlots(Math.max(4, old.keys.length * 2));
+            for(int i = 0; i < old.keys.length; i++) {
+                if(old.keys[i] != 0)
+                    grown.insert(old.keys[i] - 1, old.values[i]);
+            }
+            this.byListing = grown;
+        }
+        this.byListing.insert(listingId, postings);
+        this.listings++;
+        return postings;
+    }
+
+    /**
+     * @return the number of transactions in the log
+     */
+    int size() {
+        return this.size;
+    }
+
+    /**
+     * Rebuild the transaction at index as a new immutable object. Must only be called with an index below a size() read beforehand.
+     * @param index
+     * @return a CashTransaction or StockTransaction equal to the one that was added at index
+     */
+    Transaction get(int index) {
+        return this.get(this.columns, index);
+    }
+
+    private Transaction get(Columns columns, int index) {
+        Transaction.TxType type = TYPES[columns.types[index]];
+        long timestamp = columns.timestamps[index];
+        int tickerId = columns.tickerIds[index];
+        if(tickerId == NO_TICKER)
+            return new CashTransaction(type, columns.amounts[index], timestamp);
+        return new StockTransaction(this.exchange.getStockListing(tickerId), type, (int) columns.amounts[index], timestamp);
+    }
+
+    /**
+     * Copy the fields of count entries from index from on into the given arrays, without rebuilding Transaction objects, so that a
+     * history of any length can be read in blocks of a fixed size. Must only be called with from + count at most a size() read beforehand.
+     * @param from
+     * @param count at most the length of every array
+     * @param timestamps
+     * @param types TxType ordinals
+     * @param amounts for cash entries the amount in minor units, for stock entries the share quantity
+     * @param listingIds for stock entries the listing id, for cash entries -1
+     */
+    void copyTo(int from, int count, long[] timestamps, byte[] types, long[] amounts, int[] listingIds) {
+        Columns columns = this.columns;
+        System.arraycopy(columns.timestamps, from, timestamps, 0, count);
+        System.arraycopy(columns.types, from, types, 0, count);
+        System.arraycopy(columns.amounts, from, amounts, 0, count);
+        System.arraycopy(columns.tickerIds, from, listingIds, 0, count);
+    }
+
+    /**
+     * Find a page of the transactions matching query among those in the log when this method was called.
+     * @param query
+     * @return the matching transactions, in the order query asks for
+     * @see Account#getTransactionHistory(HistoryQuery)
+     */
+    HistoryPage query(HistoryQuery query) {
+        int n = this.size;
+        Columns columns = this.columns;
+        long from = query.getFromNanos();
+        long to = query.getToNanos();
+        //an entry at or after the first watermark >= from may be in range, and one at or after the first watermark >= to + maxLag can't be
+        int lo = firstWatermarkAtLeast(columns.watermarks, from, n);
+        long end = to + this.maxLag;
+        int hi = firstWatermarkAtLeast(columns.watermarks, end < to ? Long.MAX_VALUE : end, n);
+        long cursor = query.getCursor();
+        if(cursor != HistoryQuery.START) {
+            if(query.isNewestFirst())
+                hi = (int) Math.min(hi, cursor);
+            else
+                lo = (int) Math.max(lo, cursor);
+        }
+
+        Transaction.TxType type = query.getType();
+        StockListing listing = query.getListing();
+        int[] positions = null;
+        int first = lo;
+        int last = hi;
+        if(listing != null || type != null) {
+            Postings postings;
+            if(listing != null) {
+                postings = this.byListing.get(listing.getId());
+            } else {
+                postings = this.byType[type.ordinal()];
+            }
+            if(postings == null || lo >= hi)
+                return new HistoryPage(new ArrayList<>(), HistoryQuery.START);
+            int count = postings.size;
+            positions = postings.positions;
+            first = firstPositionAtLeast(positions, lo, count);
+            last = firstPositionAtLeast(positions, hi, count);
+        }
+
+        int limit = query.getLimit();
+        List<Transaction> page = new ArrayList<>(Math.min(limit, Math.max(0, last - first)));
+        int step = query.isNewestFirst() ? -1 : 1;
+        int i = query.isNewestFirst() ? last - 1 : first;
+        int previous = -1;
+        for(; i >= first && i < last; i += step) {
+            int index = positions == null ? i : positions[i];
+            long timestamp = columns.timestamps[index];
+            if(timestamp < from || timestamp >= to)
+                continue;
+            if(type != null && columns.types[index] != type.ordinal())
+                continue;
+            if(listing != null && columns.tickerIds[index] != listing.getId())
+                continue;
+            if(page.size() == limit)
+                //a match beyond this page: the next page starts after the last one in this page
+                return new HistoryPage(page, query.isNewestFirst() ? previous : previous + 1);
+            page.add(this.get(columns, index));
+            previous = index;
+        }
+        return new HistoryPage(page, HistoryQuery.START);
+    }
+
+    //the first index below n whose watermark is >= nanos, or n if there is none
+    private static int firstWatermarkAtLeast(long[] watermarks, long nanos, int n) {
+        int low = 0;
+        int high = n;
+        while(low < high) {
+            int mid = (low + high) >>> 1;
+            if(watermarks[mid] < nanos)
+                low = mid + 1;
+            else
+                high = mid;
+        }
+        return low;
+    }
+
+    //the first index below count whose position is >= index, or count if there is none
+    private static int firstPositionAtLeast(int[] positions, int index, int count) {
+        int low = 0;
+        int high = count;
+        while(low < high) {
+            int mid = (low + high) >>> 1;
+            if(positions[mid] < index)
+                low = mid + 1;
+            else
+                high = mid;
+        }
+        return low;
+    }
+
+    /**
+     * @return an unmodifiable, random access List of the transactions in the log when this method was called.
+     * Transactions appended later do not show up in it. Each element is created when it is read.
+     */
+    List<Transaction> view() {
+        return new View(this, this.size);
+    }
+
+    private static final class View extends AbstractList<Transaction> implements RandomAccess {
+        private final TransactionLog log;
+        private final int size;
+
+        private View(TransactionLog log, int size) {
+            this.log = log;
+            this.size = size;
+        }
+
+        @Override
+        public Transaction get(int index) {
+            if(index < 0 || index >= this.size)
+                throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + this.size);
+            return this.log.get(index);
+        }
+
+        @Override
+        public int size() {
+            return this.size;
+        }
+    }
+
+    /**
+     * The columns of the log, replaced together when they grow so that a reader never sees columns of different generations
+     */
+    private static final class Columns {
+        private final long[] timestamps;
+        private final byte[] types;
+        /** for cash entries the amount in minor units, for stock entries the share quantity */
+        private final long[] amounts;
+        /** listing id for stock entries, NO_TICKER for cash entries */
+        private final int[] tickerIds;
+        /** the highest timestamp of the entries up to and including each one */
+        private final long[] watermarks;
+
+        private Columns(int capacity) {
+            this.timestamps = new long[capacity];
+            this.types = new byte[capacity];
+            this.amounts = new long[capacity];
+            this.tickerIds = new int[capacity];
+            this.watermarks = new long[capacity];
+        }
+
+        private Columns(Columns old, int capacity) {
+            this.timestamps = Arrays.copyOf(old.timestamps, capacity);
+            this.types = Arrays.copyOf(old.types, capacity);
+            this.amounts = Arrays.copyOf(old.amounts, capacity);
+            this.tickerIds = Arrays.copyOf(old.tickerIds, capacity);
+            this.watermarks = Arrays.copyOf(old.watermarks, capacity);
+        }
+
+        private int capacity() {
+            return this.timestamps.length;
+        }
+    }
+
+    /**
+     * The positions in the log of the entries of one TxType or listing, in increasing order.
+     * Written like the log itself, but size and positions are volatile: a reader that reads size and then positions sees every position
+     * below size, and may see positions appended after the log size it read, which it skips because they are past that size.
+     */
+    private static final class Postings {
+        private volatile int[] positions = new int[INITIAL_CAPACITY];
+        private volatile int size;
+
+        private void add(int position) {
+            int n = this.size;
+            if(n == this.positions.length)
+                this.ensureCapacity(n + (n >> 1));
+            this.positions[n] = position;
+            this.size = n + 1;
+        }
+
+        private void ensureCapacity(int capacity) {
+            if(capacity > this.positions.length)
+                this.positions = Arrays.copyOf(this.positions, capacity);
+        }
+    }
+
+    /**
+     * An open-addressing table from listing id to posting list, like the one in HoldingTable: an account usually trades a handful
+     * of listings, so this stays small however many listings the exchange has. A posting list is written before its key.
+     */
+    private static final class ListingSlots {
+        //listing id + 1, so that 0 marks an empty slot
+        private final int[] keys;
+        private final Postings[] values;
+
+        private ListingSlots(int capacity) {
+            this.keys = new int[capacity];
+            this.values = new Postings[capacity];
+        }
+
+        //the posting list of listingId, or null if there is none
+        private Postings get(int listingId) {
+            int mask = this.keys.length - 1;
+            if(mask < 0)
+                return null;
+            int key = listingId + 1;
+            for(int i = listingId & mask; ; i = (i + 1) & mask) {
+                int k = this.keys[i];
+                if(k == key)
+                    return this.values[i];
+                if(k == 0)
+                    return null;
+            }
+        }
+
+        private void insert(int listingId, Postings postings) {
+            int mask = this.keys.length - 1;
+            int i = listingId & mask;
+            while(this.keys[i] != 0)
+                i = (i + 1) & mask;
+            this.values[i] = postings;
+            this.keys[i] = listingId + 1;
+        }
+    }
+}
@@ -0,0 +1,222 @@
+package bank;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters and latency histograms for the transactions executed by the accounts of one Bank: how many of each TxType were executed,
+ * how many were rejected and why, how many trades each listing had, and how long execution took.
+ * A transaction that takes longer than the slow threshold is also recorded as a SlowTransactionEvent for JDK Flight Recorder.
+ *
+ * A Bank only has metrics while they are enabled. Accounts read the Bank's metrics once per transaction and skip all of this
+ * when there are none, so disabled metrics cost a field read and a null check. Recording never allocates, except for a slow transaction's event.
+ * @see Bank#enableMetrics()
+ */
+public class TransactionMetrics implements TransactionMetricsMXBean {
+    private static final Transaction.TxType[] TYPES = Transaction.TxType.values();
+    private static final long DEFAULT_SLOW_THRESHOLD_NANOS = 1_000_000;
+    private static final double[] PERCENTILES = {50, 90, 99, 99.9};
+    private static final String[] PERCENTILE_NAMES = {"p50", "p90", "p99", "p99.9"};
+
+    private final StockExchange exchange;
+    private final LongAdder[] executed;
+    //[type][status]
+    private final LongAdder[][] rejected;
+    private final LatencyHistogram[] latencies;
+    //indexed by listing id; replaced by a longer copy when a new listing trades. The copy shares the old array's counters,
+    //so a trade counted through the old array after the copy is still counted
+    private volatile LongAdder[] tradesByListing;
+    private volatile long slowThresholdNanos;
+
+    /**
+     * @param exchange the exchange whose listings are traded
+     */
+    TransactionMetrics(StockExchange exchange) {
+        this.exchange = exchange;
+        this.executed = new LongAdder[TYPES.length];
+        this.rejected = new LongAdder[TYPES.length][TxStatus.COUNT];
+        this.latencies = new LatencyHistogram[TYPES.length];
+        for(int t = 0; t < TYPES.length; t++) {
+            this.executed[t] = new LongAdder();
+            for(int s = 0; s < TxStatus.COUNT; s++)
+                this.rejected[t][s] = new LongAdder();
+            this.latencies[t] = new LatencyHistogram();
+        }
+        this.tradesByListing = withCounters(new LongAdder[Math.max(16, exchange.getListingCount())], 0);
+        this.slowThresholdNanos = DEFAULT_SLOW_THRESHOLD_NANOS;
+    }
+
+    /**
+     * record the outcome of executing a transaction
+     * @param type
+     * @param status the TxStatus the execution returned
+     * @param listing the listing traded, or null for a cash transaction
+     * @param accountNumber the account the transaction was executed on
+     * @param nanos how long the execution took
+     */
+    void record(Transaction.TxType type, byte status, StockListing listing, int accountNumber, long nanos) {
+        int t = type.ordinal();
+        if(status == TxStatus.OK) {
+            this.executed[t].increment();
+            if(listing != null)
+                this.recordTrade(listing);
+        } else {
+            this.rejected[t][status].increment();
+        }
+        this.latencies[t].record(nanos);
+        if(nanos >= this.slowThresholdNanos)
+            this.emitSlow(type, status, listing, accountNumber, nanos);
+    }
+
+    /**
+     * record a transaction rejected before it was executed, e.g. because it was of the wrong type for the account
+     */
+    void recordRejected(Transaction.TxType type, byte status) {
+        if(type != null)
+            this.rejected[type.ordinal()][status].increment();
+    }
+
+    /**
+     * count one trade of listing that didn't go through record, i.e. an OrderBook fill
+     */
+    void recordTrade(StockListing listing) {
+        LongAdder[] trades = this.tradesByListing;
+        int id = listing.getId();
+        if(id >= trades.length)
+            trades = this.grow(id);
+        trades[id].increment();
+    }
+
+    private synchronized LongAdder[] grow(int id) {
+        LongAdder[] trades = this.tradesByListing;
+        if(id < trades.length)
+            return trades;
+        LongAdder[] grown = withCounters(Arrays.copyOf(trades, Math.max(id + 1, trades.length * 2)), trades.length);
+        this.tradesByListing = grown;
+        return grown;
+    }
+
+    //fill counters from index from on, before the array is published
+    private static LongAdder[] withCounters(LongAdder[] counters, int from) {
+        for(int i = from; i < counters.length; i++)
+            counters[i] = new LongAdder();
+        return counters;
+    }
+
+    private void emitSlow(Transaction.TxType type, byte status, StockListing listing, int accountNumber, long nanos) {
+        SlowTransactionEvent event = new SlowTransactionEvent();
+        if(!event.isEnabled())
+            return;
+        event.type = type.name();
+        event.status = TxStatus.name(status);
+        event.accountNumber = accountNumber;
+        event.ticker = listing == null ? null : listing.getTickerSymbol();
+        event.executionTime = nanos;
+        event.commit();
+    }
+
+    /**
+     * @param type
+     * @return the number of transactions of type executed
+     */
+    public long getExecutedCount(Transaction.TxType type) {
+        return this.executed[type.ordinal()].sum();
+    }
+
+    /**
+     * @param type
+     * @param status a TxStatus other than OK
+     * @return the number of transactions of type rejected with status
+     */
+    public long getRejectedCount(Transaction.TxType type, byte status) {
+        return this.rejected[type.ordinal()][status].sum();
+    }
+
+    /**
+     * @param listing
+     * @return the number of trades of listing
+     */
+    public long getTradeCount(StockListing listing) {
+        LongAdder[] trades = this.tradesByListing;
+        return listing.getId() < trades.length ? trades[listing.getId()].sum() : 0;
+    }
+
+    /**
+     * @param type
+     * @param percentile between 0 and 100
+     * @return the execution time in nanoseconds that percentile % of the transactions of type took at most
+     */
+    public long getLatencyAtPercentile(Transaction.TxType type, double percentile) {
+        return this.latencies[type.ordinal()].getValueAtPercentile(percentile);
+    }
+
+    @Override
+    public Map<String, Long> getExecutedCounts() {
+        Map<String, Long> counts = new LinkedHashMap<>();
+        for(Transaction.TxType type : TYPES)
+            counts.put(type.name(), this.getExecutedCount(type));
+        return counts;
+    }
+
+    @Override
+    public Map<String, Long> getRejectedCounts() {
+        Map<String, Long> counts = new LinkedHashMap<>();
+        for(Transaction.TxType type : TYPES) {
+            for(byte s = 1; s < TxStatus.COUNT; s++)
+                counts.put(type.name() + " " + TxStatus.name(s), this.getRejectedCount(type, s));
+        }
+        return counts;
+    }
+
+    @Override
+    public Map<String, Long> getTradeCountsByTicker() {
+        Map<String, Long> counts = new LinkedHashMap<>();
+        for(StockListing listing : this.exchange.getAllCurrentListings())
+            counts.put(listing.getTickerSymbol(), this.getTradeCount(listing));
+        return counts;
+    }
+
+    @Override
+    public Map<String, Long> getLatencyNanos() {
+        Map<String, Long> latencies = new LinkedHashMap<>();
+        for(Transaction.TxType type : TYPES) {
+            LatencyHistogram histogram = this.latencies[type.ordinal()];
+            latencies.put(type.name() + " count", histogram.getCount());
+            latencies.put(type.name() + " mean", (long) histogram.getMean());
+            for(int p = 0; p < PERCENTILES.length; p++)
+                latencies.put(type.name() + " " + PERCENTILE_NAMES[p], histogram.getValueAtPercentile(PERCENTILES[p]));
+            latencies.put(type.name() + " max", histogram.getMax());
+        }
+        return latencies;
+    }
+
+    @Override
+    public long getSlowThresholdNanos() {
+        return this.slowThresholdNanos;
+    }
+
+    /**
+     * @param nanos
+     * @throws IllegalArgumentException if nanos < 0
+     */
+    @Override
+    public void setSlowThresholdNanos(long nanos) {
+        if(nanos < 0)
+            throw new IllegalArgumentException("Threshold must be >= 0");
+        this.slowThresholdNanos = nanos;
+    }
+
+    @Override
+    public void reset() {
+        for(int t = 0; t < TYPES.length; t++) {
+            this.executed[t].reset();
+            for(int s = 0; s < TxStatus.COUNT; s++)
+                this.rejected[t][s].reset();
+            this.latencies[t].reset();
+        }
+        for(LongAdder trades : this.tradesByListing)
+            trades.reset();
+    }
+}
@@ -0,0 +1,42 @@
+package bank;
+
+import java.util.Map;
+
+/**
+ * The management interface of TransactionMetrics, registered with the platform MBean server while a Bank's metrics are enabled.
+ * Map attributes appear in JMX clients as tables keyed by the strings described below.
+ * @see Bank#enableMetrics()
+ */
+public interface TransactionMetricsMXBean {
+    /**
+     * @return the number of transactions executed, keyed by TxType name
+     */
+    Map<String, Long> getExecutedCounts();
+
+    /**
+     * @return the number of transactions rejected, keyed by "TYPE REASON", e.g. "BUY INSUFFICIENT_CASH"
+     */
+    Map<String, Long> getRejectedCounts();
+
+    /**
+     * @return the number of trades executed, from BUYs, SELLs and OrderBook fills, keyed by ticker symbol
+     */
+    Map<String, Long> getTradeCountsByTicker();
+
+    /**
+     * @return execution time statistics in nanoseconds, keyed by "TYPE STATISTIC" where STATISTIC is one of count, mean, p50, p90, p99, p99.9 and max
+     */
+    Map<String, Long> getLatencyNanos();
+
+    long getSlowThresholdNanos();
+
+    /**
+     * @param nanos transactions that take at least this long are recorded as SlowTransactionEvents
+     */
+    void setSlowThresholdNanos(long nanos);
+
+    /**
+     * clear every counter and histogram
+     */
+    void reset();
+}
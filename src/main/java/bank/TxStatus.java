@@ -0,0 +1,48 @@
+package bank;
+
+/**
+ * The result codes returned by Account.tryExecute and BrokerageAccount.tryExecuteTrade.
+ * A rejected transaction is reported by one of these codes instead of an exception, so rejecting one costs no more than executing it.
+ * @see Account#tryExecute(Transaction)
+ */
+public final class TxStatus {
+    /** the transaction was executed */
+    public static final byte OK = 0;
+    /** a BUY costs more than the Patron's savings balance, or a transfer is for more than the balance of the account it is from */
+    public static final byte INSUFFICIENT_CASH = 1;
+    /** a SELL is for more shares than the account holds */
+    public static final byte INSUFFICIENT_SHARES = 2;
+    /** a BUY is for more shares than the listing has available */
+    public static final byte NO_INVENTORY = 3;
+    /** the transaction is of a kind the account doesn't process, e.g. a CashTransaction on a BrokerageAccount */
+    public static final byte WRONG_TX_TYPE = 4;
+    /** a quantity or listing is missing or invalid, or an amount is too large to hold in a balance */
+    public static final byte INVALID_AMOUNT = 5;
+
+    private static final String[] NAMES = {"OK", "INSUFFICIENT_CASH", "INSUFFICIENT_SHARES", "NO_INVENTORY", "WRONG_TX_TYPE", "INVALID_AMOUNT"};
+
+    /** the number of status codes, which run from 0 to COUNT - 1 */
+    public static final int COUNT = NAMES.length;
+
+    private TxStatus() {
+    }
+
+    /**
+     * @param status
+     * @return the name of the constant for status, e.g. "INSUFFICIENT_CASH"
+     * @throws IllegalArgumentException if status is not a status code
+     */
+    public static String name(byte status) {
+        if(status < 0 || status >= COUNT)
+            throw new IllegalArgumentException("Unknown status " + status);
+        return NAMES[status];
+    }
+
+    /**
+     * @param status
+     * @return true if status means the Patron lacked the assets for the transaction, i.e. executeTransaction throws InsufficientAssetsException for it
+     */
+    public static boolean isInsufficientAssets(byte status) {
+        return status == INSUFFICIENT_CASH || status == INSUFFICIENT_SHARES;
+    }
+}
@@ -0,0 +1,69 @@
+package bank;
+
+import jdk.incubator.vector.LongVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * The interest kernel of InterestAccrual over the JDK Vector API, computing as many balances per instruction as the CPU's widest
+ * long vectors hold. It gives exactly the results of InterestAccrual.interestOn.
+ *
+ * Vector hardware has no long division, so each lane computes balance * rate exactly in a long and divides it by RATE_SCALE by
+ * multiplying with a fixed-point reciprocal of RATE_SCALE and keeping the high bits, as compilers do for division by a constant.
+ * The high half of that 128-bit product is built from 32-bit halves, since the Vector API has no high multiply either.
+ * A balance too large for balance * rate to fit in a long is left to the scalar computation.
+ *
+ * The Vector API is an incubator module: this class may only be loaded when the JVM was started with
+ * --add-modules jdk.incubator.vector, which InterestAccrual checks before using it.
+ * @see InterestAccrual#computeInterest(long[], int, long, long[])
+ */
+final class VectorInterest {
+    private static final VectorSpecies<Long> SPECIES = LongVector.SPECIES_PREFERRED;
+    //ceil(2^92 / RATE_SCALE): for every x below 2^63, x / RATE_SCALE == (x * RECIPROCAL) >>> 92
+    private static final long RECIPROCAL = 0x44B82FA09B5A52CCL;
+    private static final int SHIFT = 92 - 64;
+    private static final long LOW = 0xFFFFFFFFL;
+
+    private VectorInterest() {
+    }
+
+    /**
+     * Compute the interest on the first count balances.
+     * @param balances in minor units
+     * @param count
+     * @param rate in billionths, between 0 and RATE_SCALE
+     * @param interest receives the interest on balances[i] at index i, in minor units
+     */
+    static void computeInterest(long[] balances, int count, long rate, long[] interest) {
+        //the largest balance whose product with rate fits in a long
+        long limit = rate == 0 ? Long.MAX_VALUE : Long.MAX_VALUE / rate;
+        int bound = SPECIES.loopBound(count);
+        int i = 0;
+        for(; i < bound; i += SPECIES.length()) {
+            LongVector balance = LongVector.fromArray(SPECIES, balances, i).max(0);
+            LongVector product = balance.mul(rate);
+            multiplyHigh(product).lanewise(VectorOperators.LSHR, SHIFT).intoArray(interest, i);
+            VectorMask<Long> large = balance.compare(VectorOperators.GT, limit);
+            if(large.anyTrue()) {
+                for(int lane = large.firstTrue(); lane < SPECIES.length(); lane++) {
+                    if(large.laneIsSet(lane))
+                        interest[i + lane] = InterestAccrual.interestOn(balances[i + lane], rate);
+                }
+            }
+        }
+        for(; i < count; i++)
+            interest[i] = InterestAccrual.interestOn(balances[i], rate);
+    }
+
+    //the high 64 bits of x * RECIPROCAL, for x >= 0; no partial product or sum below overflows a long
+    private static LongVector multiplyHigh(LongVector x) {
+        long reciprocalLow = RECIPROCAL & LOW;
+        long reciprocalHigh = RECIPROCAL >>> 32;
+        LongVector xLow = x.and(LOW);
+        LongVector xHigh = x.lanewise(VectorOperators.LSHR, 32);
+        LongVector middle = xHigh.mul(reciprocalLow).add(xLow.mul(reciprocalLow).lanewise(VectorOperators.LSHR, 32));
+        LongVector carry = middle.and(LOW).add(xLow.mul(reciprocalHigh)).lanewise(VectorOperators.LSHR, 32);
+        return xHigh.mul(reciprocalHigh).add(middle.lanewise(VectorOperators.LSHR, 32)).add(carry);
+    }
+}
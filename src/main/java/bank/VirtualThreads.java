@@ -0,0 +1,56 @@
+package bank;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Starts one thread per task: a virtual thread when the JVM has them (Java 21 and later), and a daemon platform thread with a small
+ * stack otherwise. Platform threads are capped, since each one costs its stack and a kernel thread; a task submitted while the cap
+ * is reached is rejected rather than queued.
+ * Virtual threads are looked up reflectively so the code still compiles and runs on Java 17.
+ * @see BankServer
+ */
+final class VirtualThreads {
+    //platform threads only need a small stack for a connection handler, which lets more of them fit
+    private static final long PLATFORM_STACK_SIZE = 256 * 1024;
+
+    private VirtualThreads() {
+    }
+
+    /**
+     * @return true if tasks run on virtual threads
+     */
+    static boolean available() {
+        try {
+            Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return true;
+        } catch(NoSuchMethodException e) {
+            return false;
+        }
+    }
+
+    /**
+     * @param name the prefix of the threads' names, used for platform threads only
+     * @param maxPlatformThreads the most tasks that run at once on platform threads; ignored for virtual threads
+     * @return an executor that starts a new thread for each task, and throws RejectedExecutionException for a task it can't start
+     */
+    static ExecutorService newThreadPerTaskExecutor(String name, int maxPlatformThreads) {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch(ReflectiveOperationException e) {
+            AtomicInteger next = new AtomicInteger();
+            ThreadFactory factory = task -> {
+                Thread thread = new Thread(null, task, name + "-" + next.getAndIncrement(), PLATFORM_STACK_SIZE);
+                thread.setDaemon(true);
+                return thread;
+            };
+            //no queue: a task either gets an idle or new thread at once, or is rejected
+            return new ThreadPoolExecutor(0, maxPlatformThreads, 60, TimeUnit.SECONDS, new SynchronousQueue<>(), factory);
+        }
+    }
+}
@@ -0,0 +1,150 @@
+package bank;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class BankServerTest {
+    private BankServer server;
+    private Socket socket;
+    private DataInputStream in;
+    private DataOutputStream out;
+
+    @AfterEach
+    void close() throws IOException {
+        if(this.socket != null)
+            this.socket.close();
+        if(this.server != null)
+            this.server.close();
+    }
+
+    @Test
+    void answersPipelinedRequestsInOrder() throws Exception {
+        StockExchange exchange = new StockExchange();
+        exchange.createNewListingAtMinorPrice("ACME", 250, 1_000);
+        this.connect(new Bank(exchange));
+
+        for(int i = 0; i < 3; i++)
+            this.send(i, BankProtocol.CREATE_PATRON, ByteBuffer.allocate(0));
+        this.send(3, BankProtocol.GET_LISTING_COUNT, ByteBuffer.allocate(0));
+        this.out.flush();
+        for(int i = 0; i < 3; i++)
+            assertEquals(i, this.expectOk(i, 4).getInt());
+        assertEquals(1, this.expectOk(3, 4).getInt());
+    }
+
+    @Test
+    void returnsHistoryNewestFirst() throws Exception {
+        this.connect(new Bank(new StockExchange()));
+        this.request(1, BankProtocol.CREATE_PATRON, ByteBuffer.allocate(0));
+        int patron = this.expectOk(1, 4).getInt();
+        this.request(2, BankProtocol.OPEN_SAVINGS, ByteBuffer.allocate(4).putInt(patron));
+        int account = this.expectOk(2, 4).getInt();
+        for(int i = 1; i <= 3; i++) {
+            this.request(10 + i, BankProtocol.CASH, ByteBuffer.allocate(13).putInt(account).put((byte) Transaction.TxType.DEPOSIT.ordinal()).putLong(i * 100));
+            this.expectOk(10 + i, 0);
+        }
+
+        this.request(20, BankProtocol.GET_HISTORY, ByteBuffer.allocate(8).putInt(account).putInt(2));
+        ByteBuffer history = this.expectOk(20, 4 + 2 * BankProtocol.HISTORY_ENTRY_LENGTH);
+        assertEquals(2, history.getInt());
+        assertEquals(Transaction.TxType.DEPOSIT.ordinal(), history.get());
+        history.getLong();
+        assertEquals(300, history.getLong());
+        assertEquals(-1, history.getInt());
+        //the next, small response is unaffected by the history buffer
+        this.request(21, BankProtocol.GET_VALUE, ByteBuffer.allocate(4).putInt(account));
+        assertEquals(600, this.expectOk(21, 8).getLong());
+    }
+
+    @Test
+    void rejectsMalformedRequestsWithoutClosing() throws Exception {
+        this.connect(new Bank(new StockExchange()));
+        this.request(1, (byte) 99, ByteBuffer.allocate(0));
+        this.expectStatus(1, BankProtocol.BAD_REQUEST);
+        //CASH without its amount
+        this.request(2, BankProtocol.CASH, ByteBuffer.allocate(5).putInt(0).put((byte) 0));
+        this.expectStatus(2, BankProtocol.BAD_REQUEST);
+        this.request(3, BankProtocol.CASH, ByteBuffer.allocate(13).putInt(0).put((byte) 42).putLong(1));
+        this.expectStatus(3, BankProtocol.BAD_REQUEST);
+        this.request(4, BankProtocol.GET_VALUE, ByteBuffer.allocate(4).putInt(12345));
+        this.expectStatus(4, BankProtocol.NO_SUCH_ACCOUNT);
+        this.request(5, BankProtocol.CREATE_PATRON, ByteBuffer.allocate(0));
+        this.expectOk(5, 4);
+    }
+
+    @Test
+    void reportsServerErrorsWithoutClosing(@TempDir Path directory) throws Exception {
+        Bank bank = Bank.recover(new StockExchange(), directory, Journal.FsyncPolicy.NEVER);
+        this.connect(bank);
+        this.request(1, BankProtocol.CREATE_PATRON, ByteBuffer.allocate(0));
+        this.expectOk(1, 4);
+        //a journal that can't be written fails every request that changes the Bank
+        bank.getJournal().close();
+        this.request(2, BankProtocol.CREATE_PATRON, ByteBuffer.allocate(0));
+        this.expectStatus(2, BankProtocol.SERVER_ERROR);
+        this.request(3, BankProtocol.GET_LISTING_COUNT, ByteBuffer.allocate(0));
+        assertEquals(0, this.expectOk(3, 4).getInt());
+    }
+
+    @Test
+    void closesTheConnectionOnABadFrameLength() throws Exception {
+        this.connect(new Bank(new StockExchange()));
+        this.out.writeInt(BankProtocol.MAX_REQUEST_LENGTH + 1);
+        this.out.flush();
+        assertThrows(EOFException.class, () -> this.in.readInt());
+    }
+
+    private void connect(Bank bank) throws IOException {
+        this.server = new BankServer(bank, 0);
+        this.server.start();
+        this.socket = new Socket("localhost", this.server.getPort());
+        this.socket.setSoTimeout(10_000);
+        this.in = new DataInputStream(new BufferedInputStream(this.socket.getInputStream()));
+        this.out = new DataOutputStream(this.socket.getOutputStream());
+    }
+
+    private void send(int requestId, byte operation, ByteBuffer arguments) throws IOException {
+        this.out.writeInt(5 + arguments.position());
+        this.out.writeInt(requestId);
+        this.out.writeByte(operation);
+        this.out.write(arguments.array(), 0, arguments.position());
+    }
+
+    private void request(int requestId, byte operation, ByteBuffer arguments) throws IOException {
+        this.send(requestId, operation, arguments);
+        this.out.flush();
+    }
+
+    //reads a response, checks its request id and status, and returns its results
+    private ByteBuffer response(int requestId, byte status) throws IOException {
+        int length = this.in.readInt();
+        byte[] frame = new byte[length];
+        this.in.readFully(frame);
+        ByteBuffer response = ByteBuffer.wrap(frame);
+        assertEquals(requestId, response.getInt());
+        assertEquals(status, response.get());
+        return response;
+    }
+
+    private ByteBuffer expectOk(int requestId, int resultLength) throws IOException {
+        ByteBuffer results = this.response(requestId, TxStatus.OK);
+        assertEquals(resultLength, results.remaining());
+        return results;
+    }
+
+    private void expectStatus(int requestId, byte status) throws IOException {
+        assertEquals(0, this.response(requestId, status).remaining());
+    }
+}
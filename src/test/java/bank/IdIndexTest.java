@@ -0,0 +1,74 @@
+package bank;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import org.junit.jupiter.api.Test;
+
+class IdIndexTest {
+    @Test
+    void growsAcrossChunksWithoutLosingObjects() {
+        IdIndex<Integer> index = new IdIndex<>(0, 1);
+        for(int i = 0; i < 50_000; i++) {
+            int id = index.allocate();
+            assertEquals(i, id);
+            index.put(id, i);
+        }
+        for(int i = 0; i < 50_000; i++)
+            assertEquals(i, index.get(i));
+        assertNull(index.get(50_000));
+        assertNull(index.get(-1));
+    }
+
+    @Test
+    void handsOutOnlyItsOwnStripe() {
+        IdIndex<String> index = new IdIndex<>(3, 4);
+        assertEquals(3, index.allocate());
+        assertEquals(7, index.allocate());
+        index.put(7, "seven");
+        assertSame("seven", index.get(7));
+        assertNull(index.get(5));
+        assertThrows(IllegalArgumentException.class, () -> index.put(5, "five"));
+
+        //ids restored from a journal are never handed out again
+        index.allocatedUpTo(99);
+        assertEquals(103, index.allocate());
+    }
+
+    @Test
+    void throwsOnceTheIdsRunOut() {
+        IdIndex<Object> index = new IdIndex<>(0, 1 << 30);
+        index.allocate();
+        index.allocate();
+        assertThrows(IllegalStateException.class, index::allocate);
+        assertThrows(IllegalStateException.class, index::allocate);
+    }
+
+    @Test
+    void concurrentAllocationsAreUniqueAndVisible() throws Exception {
+        IdIndex<Thread> index = new IdIndex<>(0, 1);
+        Set<Integer> ids = ConcurrentHashMap.newKeySet();
+        Thread[] threads = new Thread[4];
+        for(int t = 0; t < threads.length; t++) {
+            threads[t] = new Thread(() -> {
+                for(int i = 0; i < 20_000; i++) {
+                    int id = index.allocate();
+                    index.put(id, Thread.currentThread());
+                    assertTrue(ids.add(id));
+                    assertSame(Thread.currentThread(), index.get(id));
+                }
+            });
+            threads[t].start();
+        }
+        for(Thread thread : threads)
+            thread.join();
+        assertEquals(80_000, ids.size());
+        for(int id = 0; id < 80_000; id++)
+            assertTrue(index.get(id) != null);
+    }
+}
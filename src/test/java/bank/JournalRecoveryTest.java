@@ -0,0 +1,150 @@
+package bank;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class JournalRecoveryTest {
+    @TempDir
+    Path directory;
+
+    @Test
+    void recoversFromTheJournalAlone() throws Exception {
+        Bank bank = Bank.recover(new StockExchange(), this.directory, Journal.FsyncPolicy.NEVER);
+        Patron patron = openPatron(bank);
+        StockListing listing = bank.getExchange().getStockListing("ACME");
+        patron.getBrokerageAccount().executeTrade(Transaction.TxType.BUY, listing, 3);
+        patron.getBrokerageAccount().executeTrade(Transaction.TxType.SELL, listing, 1);
+        //a fill on the order book moves shares and cash between two patrons under one record
+        Patron buyer = openPatron(bank);
+        OrderBook book = bank.getExchange().getOrderBook("ACME");
+        book.submit(patron.getBrokerageAccount(), Transaction.TxType.SELL, 2, 1_100);
+        book.submit(buyer.getBrokerageAccount(), Transaction.TxType.BUY, 2, 1_200);
+        assertEquals(2, buyer.getBrokerageAccount().getQuantityOwned(listing));
+        Fingerprint before = new Fingerprint(bank);
+        bank.getJournal().close();
+
+        Bank recovered = Bank.recover(new StockExchange(), this.directory, Journal.FsyncPolicy.NEVER);
+        assertEquals(before, new Fingerprint(recovered));
+        recovered.getJournal().close();
+    }
+
+    @Test
+    void keepsTheFullHistoryAcrossCheckpoints() throws Exception {
+        Bank bank = Bank.recover(new StockExchange(), this.directory, Journal.FsyncPolicy.NEVER);
+        Patron first = openPatron(bank);
+        Patron second = openPatron(bank);
+        StockListing listing = bank.getExchange().getStockListing("ACME");
+        first.getBrokerageAccount().executeTrade(Transaction.TxType.BUY, listing, 5);
+        bank.transfer(first.getSavingsAccount().getAccountNumber(), second.getSavingsAccount().getAccountNumber(), 250);
+        bank.checkpoint();
+
+        //after the first checkpoint: a new listing, more trades and a transfer, then a second checkpoint and still more
+        bank.getExchange().createNewListingAtMinorPrice("BOLT", 777, 1_000);
+        StockListing bolt = bank.getExchange().getStockListing("BOLT");
+        second.getBrokerageAccount().executeTrade(Transaction.TxType.BUY, bolt, 2);
+        first.getBrokerageAccount().executeTrade(Transaction.TxType.SELL, listing, 2);
+        bank.checkpoint();
+        bank.transfer(second.getSavingsAccount().getAccountNumber(), first.getSavingsAccount().getAccountNumber(), 99);
+        listing.setMinorPrice(1_234);
+        Fingerprint before = new Fingerprint(bank);
+        bank.getJournal().close();
+
+        Bank recovered = Bank.recover(new StockExchange(), this.directory, Journal.FsyncPolicy.NEVER);
+        Fingerprint after = new Fingerprint(recovered);
+        assertEquals(before, after);
+        assertEquals(2, recovered.getPatron(first.getId()).getBrokerageAccount().getTransactionHistory().size());
+
+        //a checkpoint of the recovered Bank still covers the history written before the first one
+        recovered.checkpoint();
+        recovered.getJournal().close();
+        Bank again = Bank.recover(new StockExchange(), this.directory, Journal.FsyncPolicy.NEVER);
+        assertEquals(before, new Fingerprint(again));
+        again.getJournal().close();
+    }
+
+    @Test
+    void retiresSegmentsNoSnapshotNeeds() throws Exception {
+        Bank bank = Bank.recover(new StockExchange(), this.directory, Journal.FsyncPolicy.NEVER);
+        Patron patron = openPatron(bank);
+        for(int i = 0; i < 4; i++) {
+            patron.getSavingsAccount().executeTransaction(CashTransaction.ofMinorUnits(Transaction.TxType.DEPOSIT, 100 + i));
+            bank.checkpoint();
+        }
+        //two snapshots are kept, and only the segments after the older one
+        assertEquals(2, count("snapshot-"));
+        long oldest = Snapshot.oldestCovered(this.directory);
+        try(Stream<Path> files = Files.list(this.directory)) {
+            for(Path file : files.filter(f -> f.getFileName().toString().startsWith("journal-")).toList()) {
+                String name = file.getFileName().toString();
+                assertTrue(Long.parseLong(name.substring("journal-".length(), name.length() - ".seg".length())) > oldest, name);
+            }
+        }
+        Fingerprint before = new Fingerprint(bank);
+        bank.getJournal().close();
+
+        Bank recovered = Bank.recover(new StockExchange(), this.directory, Journal.FsyncPolicy.NEVER);
+        assertEquals(before, new Fingerprint(recovered));
+        assertEquals(5, recovered.getPatron(patron.getId()).getSavingsAccount().getTransactionHistory().size());
+        recovered.getJournal().close();
+    }
+
+    private static Patron openPatron(Bank bank) throws Exception {
+        if(bank.getExchange().getStockListing("ACME") == null)
+            bank.getExchange().createNewListingAtMinorPrice("ACME", 1_000, 1_000);
+        Patron patron = bank.createNewPatron();
+        bank.openNewSavingsAccount(patron);
+        bank.openNewBrokerageAccount(patron);
+        patron.getSavingsAccount().executeTransaction(CashTransaction.ofMinorUnits(Transaction.TxType.DEPOSIT, 100_000));
+        return patron;
+    }
+
+    private long count(String prefix) throws IOException {
+        try(Stream<Path> files = Files.list(this.directory)) {
+            return files.filter(f -> f.getFileName().toString().startsWith(prefix) && !f.getFileName().toString().endsWith(".tmp")).count();
+        }
+    }
+
+    /**
+     * every patron's balances, holdings value and full history, and every listing's price and inventory, as comparable strings
+     */
+    private record Fingerprint(List<String> lines) {
+        Fingerprint(Bank bank) {
+            this(describe(bank));
+        }
+
+        private static List<String> describe(Bank bank) {
+            List<String> lines = new ArrayList<>();
+            for(StockListing listing : bank.getExchange().getAllCurrentListings())
+                lines.add(listing.getId() + " " + listing.getTickerSymbol() + " " + listing.getMinorPrice() + " " + listing.getAvailableShares());
+            List<Patron> patrons = new ArrayList<>(bank.getAllPatrons());
+            patrons.sort((a, b) -> Integer.compare(a.getId(), b.getId()));
+            for(Patron patron : patrons) {
+                lines.add("patron " + patron.getId());
+                for(Account account : new Account[] {patron.getSavingsAccount(), patron.getBrokerageAccount()}) {
+                    if(account == null)
+                        continue;
+                    lines.add(account.getAccountNumber() + " value " + account.getMinorValue());
+                    for(Transaction tx : account.getTransactionHistory())
+                        lines.add(describe(tx));
+                }
+            }
+            return lines;
+        }
+
+        private static String describe(Transaction tx) {
+            if(tx instanceof StockTransaction t)
+                return t.getType() + " " + t.getNanoTimestamp() + " " + t.getStock().getTickerSymbol() + " " + t.getQuantity();
+            CashTransaction t = (CashTransaction) tx;
+            return t.getType() + " " + t.getNanoTimestamp() + " " + t.getMinorAmount();
+        }
+    }
+}
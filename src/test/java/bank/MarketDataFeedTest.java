@@ -0,0 +1,59 @@
+package bank;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class MarketDataFeedTest {
+    private static final long TIMEOUT_NANOS = TimeUnit.SECONDS.toNanos(10);
+
+    @Test
+    void aThrowingListenerDoesNotStopTheOthers() throws Exception {
+        StockExchange exchange = new StockExchange();
+        exchange.createNewListingAtMinorPrice("ACME", 100, 1_000);
+        AtomicLong lastPrice = new AtomicLong();
+        try(MarketDataFeed feed = new MarketDataFeed(exchange, 64)) {
+            feed.addListener((listings, prices, count) -> {
+                throw new IllegalStateException("listener failure");
+            });
+            feed.addListener((listings, prices, count) -> lastPrice.set(prices[count - 1]));
+            feed.start();
+            int id = feed.idOf("ACME");
+            for(int i = 1; i <= 3; i++) {
+                assertTrue(feed.offerMinorPrice(id, 100 + i));
+                long deadline = System.nanoTime() + TIMEOUT_NANOS;
+                while(lastPrice.get() != 100 + i && System.nanoTime() < deadline)
+                    Thread.sleep(1);
+                assertEquals(100 + i, lastPrice.get());
+            }
+            assertTrue(feed.getListenerFailureCount() > 0);
+            assertEquals(103, exchange.getStockListing("ACME").getMinorPrice());
+        }
+    }
+
+    @Test
+    void producersFailOnceTheApplierHasDied(@TempDir Path directory) throws Exception {
+        StockExchange exchange = new StockExchange();
+        Bank bank = Bank.recover(exchange, directory, Journal.FsyncPolicy.NEVER);
+        exchange.createNewListingAtMinorPrice("ACME", 100, 1_000);
+        //a price that can't be journaled ends the applier thread
+        bank.getJournal().close();
+        try(MarketDataFeed feed = new MarketDataFeed(exchange, 64)) {
+            feed.start();
+            assertTrue(feed.offerMinorPrice(feed.idOf("ACME"), 101));
+            long deadline = System.nanoTime() + TIMEOUT_NANOS;
+            while(feed.getFailure() == null && System.nanoTime() < deadline)
+                Thread.sleep(1);
+            assertInstanceOf(IllegalStateException.class, feed.getFailure());
+            IllegalStateException e = assertThrows(IllegalStateException.class, () -> feed.offerMinorPrice(feed.idOf("ACME"), 102));
+            assertEquals(feed.getFailure(), e.getCause());
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package bank;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import org.junit.jupiter.api.Test;
+
+class TradeOverflowTest {
+    private static final long PRICE = 100;
+
+    @Test
+    void aTradeThatWouldOverflowChangesNothing() throws Exception {
+        Bank bank = new Bank(exchange());
+        StockListing listing = bank.getExchange().getStockListing("ACME");
+        Patron patron = openPatron(bank, 1);
+        BrokerageAccount brokerage = patron.getBrokerageAccount();
+        SavingsAccount savings = patron.getSavingsAccount();
+        fillUp(savings);
+
+        long balance = savings.getMinorValue();
+        int history = savings.getHistorySize();
+        assertEquals(TxStatus.INVALID_AMOUNT, brokerage.tryExecuteTrade(Transaction.TxType.SELL, listing, 1));
+        assertEquals(balance, savings.getMinorValue());
+        assertEquals(history, savings.getHistorySize());
+        assertEquals(1, brokerage.getQuantityOwned(listing));
+        assertEquals(PRICE, brokerage.getMinorValue());
+    }
+
+    @Test
+    void aFillThatWouldOverflowSettlesNeitherSide() throws Exception {
+        Bank bank = new Bank(exchange());
+        StockListing listing = bank.getExchange().getStockListing("ACME");
+        OrderBook book = bank.getExchange().getOrderBook("ACME");
+        Patron seller = openPatron(bank, 1);
+        Patron buyer = openPatron(bank, 0);
+        long ask = book.submit(seller.getBrokerageAccount(), Transaction.TxType.SELL, 1, PRICE);
+        fillUp(seller.getSavingsAccount());
+
+        long sellerBalance = seller.getSavingsAccount().getMinorValue();
+        long buyerBalance = buyer.getSavingsAccount().getMinorValue();
+        book.submit(buyer.getBrokerageAccount(), Transaction.TxType.BUY, 1, PRICE);
+        //the seller can't take the proceeds, so their order is cancelled and nothing moves
+        assertEquals(0, book.getRemainingQuantity(ask));
+        assertEquals(sellerBalance, seller.getSavingsAccount().getMinorValue());
+        assertEquals(1, seller.getBrokerageAccount().getQuantityOwned(listing));
+        assertEquals(buyerBalance, buyer.getSavingsAccount().getMinorValue());
+        assertEquals(0, buyer.getBrokerageAccount().getQuantityOwned(listing));
+    }
+
+    private static StockExchange exchange() {
+        StockExchange exchange = new StockExchange();
+        exchange.createNewListingAtMinorPrice("ACME", PRICE, 1_000);
+        return exchange;
+    }
+
+    //a patron with a balance of 1_000 once they have bought shares at PRICE
+    private static Patron openPatron(Bank bank, int shares) throws Exception {
+        Patron patron = bank.createNewPatron();
+        bank.openNewSavingsAccount(patron);
+        bank.openNewBrokerageAccount(patron);
+        patron.getSavingsAccount().executeTransaction(CashTransaction.ofMinorUnits(Transaction.TxType.DEPOSIT, 1_000 + shares * PRICE));
+        if(shares > 0)
+            patron.getBrokerageAccount().executeTrade(Transaction.TxType.BUY, bank.getExchange().getStockListing("ACME"), shares);
+        return patron;
+    }
+
+    //deposit until the balance is too close to Long.MAX_VALUE to take one more share's price
+    private static void fillUp(SavingsAccount savings) throws Exception {
+        savings.executeTransaction(CashTransaction.ofMinorUnits(Transaction.TxType.DEPOSIT, Long.MAX_VALUE - savings.getMinorValue() - PRICE / 2));
+    }
+}
@@ -0,0 +1,128 @@
+package bank;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Flow;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.Test;
+
+class TransactionEventStreamTest {
+    private static final long TIMEOUT_SECONDS = 10;
+
+    @Test
+    void replaysPublishedEventsInOrder() throws Exception {
+        Bank bank = new Bank(new StockExchange());
+        TransactionEventStream stream = bank.enableEventStream(64);
+        SavingsAccount savings = openSavings(bank);
+        for(int i = 1; i <= 10; i++)
+            savings.executeTransaction(CashTransaction.ofMinorUnits(Transaction.TxType.DEPOSIT, i));
+
+        Collector collector = new Collector(10);
+        stream.subscribe(collector, 0);
+        collector.done.get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        for(int i = 0; i < 10; i++) {
+            assertEquals(i, collector.sequences.get(i).longValue());
+            assertEquals(i + 1, collector.amounts.get(i).longValue());
+        }
+
+        //replaying from the middle starts at that sequence
+        Collector tail = new Collector(4);
+        stream.subscribe(tail, 6);
+        tail.done.get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        assertEquals(List.of(6L, 7L, 8L, 9L), tail.sequences);
+        stream.close();
+    }
+
+    @Test
+    void overwrittenEventsFailTheSubscriber() throws Exception {
+        Bank bank = new Bank(new StockExchange());
+        TransactionEventStream stream = bank.enableEventStream(8);
+        SavingsAccount savings = openSavings(bank);
+        for(int i = 1; i <= 20; i++)
+            savings.executeTransaction(CashTransaction.ofMinorUnits(Transaction.TxType.DEPOSIT, i));
+        assertEquals(20 - stream.getCapacity(), stream.getOldestSequence());
+
+        Collector late = new Collector(1);
+        stream.subscribe(late, 0);
+        Throwable failure = late.failed.get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        assertInstanceOf(IllegalStateException.class, failure);
+
+        //the events still in the ring can be replayed from the oldest one
+        Collector recovered = new Collector(stream.getCapacity());
+        stream.subscribe(recovered, stream.getOldestSequence());
+        recovered.done.get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        assertEquals(stream.getOldestSequence(), recovered.sequences.get(0).longValue());
+        assertEquals(20, recovered.amounts.get(recovered.amounts.size() - 1).longValue());
+        assertThrows(IllegalArgumentException.class, () -> stream.subscribe(new Collector(1), stream.getNextSequence() + 1));
+        stream.close();
+    }
+
+    @Test
+    void aThrowingSubscriberIsCancelled() throws Exception {
+        Bank bank = new Bank(new StockExchange());
+        TransactionEventStream stream = bank.enableEventStream(64);
+        SavingsAccount savings = openSavings(bank);
+        stream.subscribe(new Collector(1) {
+            @Override
+            public void onNext(TransactionEventBatch batch) {
+                throw new IllegalStateException("subscriber failure");
+            }
+        }, 0);
+        savings.executeTransaction(CashTransaction.ofMinorUnits(Transaction.TxType.DEPOSIT, 5));
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(TIMEOUT_SECONDS);
+        while(stream.getSubscriberCount() != 0 && System.nanoTime() < deadline)
+            Thread.sleep(1);
+        assertEquals(0, stream.getSubscriberCount());
+        stream.close();
+    }
+
+    private static SavingsAccount openSavings(Bank bank) throws Exception {
+        Patron patron = bank.createNewPatron();
+        bank.openNewSavingsAccount(patron);
+        return patron.getSavingsAccount();
+    }
+
+    /**
+     * requests everything and records the events until it has received expected ones
+     */
+    private static class Collector implements Flow.Subscriber<TransactionEventBatch> {
+        private final int expected;
+        private final List<Long> sequences = new ArrayList<>();
+        private final List<Long> amounts = new ArrayList<>();
+        private final CompletableFuture<Void> done = new CompletableFuture<>();
+        private final CompletableFuture<Throwable> failed = new CompletableFuture<>();
+
+        private Collector(int expected) {
+            this.expected = expected;
+        }
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            subscription.request(Long.MAX_VALUE);
+        }
+
+        @Override
+        public void onNext(TransactionEventBatch batch) {
+            for(int i = 0; i < batch.size(); i++) {
+                this.sequences.add(batch.getSequence(i));
+                this.amounts.add(batch.getMinorAmount(i));
+            }
+            if(this.sequences.size() >= this.expected)
+                this.done.complete(null);
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            this.failed.complete(throwable);
+        }
+
+        @Override
+        public void onComplete() {
+        }
+    }
+}
@@ -0,0 +1,143 @@
+package bank;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.Test;
+
+class TransferConservationTest {
+    private static final int ACCOUNTS = 64;
+    private static final long BALANCE = 1_000_000;
+    private static final int THREADS = 4;
+
+    @Test
+    void transfersNeverCreateOrDestroyMoney() throws Exception {
+        Bank bank = new Bank(new StockExchange());
+        int[] accounts = new int[ACCOUNTS];
+        for(int i = 0; i < ACCOUNTS; i++)
+            accounts[i] = openSavings(bank, BALANCE);
+        long total = ACCOUNTS * BALANCE;
+
+        Thread[] threads = new Thread[THREADS];
+        for(int t = 0; t < THREADS; t++) {
+            Random random = new Random(t);
+            threads[t] = new Thread(() -> {
+                for(int i = 0; i < 50_000; i++) {
+                    int from = random.nextInt(ACCOUNTS);
+                    int to = random.nextInt(ACCOUNTS);
+                    if(from != to)
+                        bank.transfer(accounts[from], accounts[to], 1 + random.nextInt((int) BALANCE));
+                }
+            });
+            threads[t].start();
+        }
+        //a consistent report balances at every moment, however many transfers are in progress
+        for(int i = 0; i < 50; i++)
+            assertEquals(total, bank.createConsistentReport().getMinorTotalDeposits());
+        for(Thread thread : threads)
+            thread.join();
+
+        assertEquals(total, sum(bank, accounts));
+        assertEquals(total, bank.createReport().getMinorTotalDeposits());
+    }
+
+    @Test
+    void crossShardTransfersSettleBeforeClose() throws Exception {
+        ShardedBank bank = new ShardedBank(new StockExchange(), 4);
+        int[] accounts = new int[ACCOUNTS];
+        for(int i = 0; i < ACCOUNTS; i++) {
+            Patron patron = bank.createNewPatron().get();
+            accounts[i] = bank.openNewSavingsAccount(patron.getId()).get();
+            bank.execute(accounts[i], CashTransaction.ofMinorUnits(Transaction.TxType.DEPOSIT, BALANCE)).get();
+        }
+        //a transfer of more than the source holds is rejected whichever shards the accounts are on
+        assertEquals(TxStatus.INSUFFICIENT_CASH, bank.transfer(accounts[0], accounts[1], BALANCE + 1).get().byteValue());
+        assertEquals(TxStatus.INSUFFICIENT_CASH, bank.transfer(accounts[0], accounts[4], BALANCE + 1).get().byteValue());
+        Random random = new Random(7);
+        List<CompletableFuture<Byte>> transfers = new ArrayList<>();
+        for(int i = 0; i < 20_000; i++) {
+            int from = random.nextInt(ACCOUNTS);
+            int to = random.nextInt(ACCOUNTS);
+            if(from != to)
+                transfers.add(bank.transfer(accounts[from], accounts[to], 1 + random.nextInt((int) BALANCE)));
+        }
+        bank.close();
+
+        int rejected = 0;
+        for(CompletableFuture<Byte> transfer : transfers) {
+            if(transfer.get(10, TimeUnit.SECONDS) == TxStatus.INSUFFICIENT_CASH)
+                rejected++;
+        }
+        //amounts up to a whole starting balance are bound to overdraw some sources
+        assertTrue(rejected > 0);
+        long total = 0;
+        for(int account : accounts) {
+            long balance = bank.getAccount(account).getMinorValue();
+            assertTrue(balance >= 0, "account " + account + " was overdrawn to " + balance);
+            total += balance;
+        }
+        assertEquals(ACCOUNTS * BALANCE, total);
+        assertEquals(0, bank.getMinorAmountInFlight());
+    }
+
+    @Test
+    void brokerageValuesFollowConcurrentPriceChanges() throws Exception {
+        StockExchange exchange = new StockExchange();
+        Bank bank = new Bank(exchange);
+        exchange.createNewListingAtMinorPrice("ACME", 100, Integer.MAX_VALUE);
+        StockListing listing = exchange.getStockListing("ACME");
+        List<BrokerageAccount> brokerages = new ArrayList<>();
+        for(int i = 0; i < ACCOUNTS; i++) {
+            Patron patron = bank.getAccount(openSavings(bank, Long.MAX_VALUE / (4 * ACCOUNTS))).getPatron();
+            bank.openNewBrokerageAccount(patron);
+            brokerages.add(patron.getBrokerageAccount());
+        }
+
+        Thread feed = new Thread(() -> {
+            for(int i = 0; i < 100_000; i++)
+                listing.setMinorPrice(100 + i % 97);
+        });
+        feed.start();
+        Random random = new Random(3);
+        for(int i = 0; i < 100_000; i++) {
+            BrokerageAccount brokerage = brokerages.get(random.nextInt(brokerages.size()));
+            int owned = brokerage.getQuantityOwned(listing);
+            if(owned > 0 && random.nextBoolean())
+                brokerage.executeTrade(Transaction.TxType.SELL, listing, owned);
+            else
+                brokerage.executeTrade(Transaction.TxType.BUY, listing, 1 + random.nextInt(5));
+        }
+        feed.join();
+
+        int holders = 0;
+        for(BrokerageAccount brokerage : brokerages) {
+            int owned = brokerage.getQuantityOwned(listing);
+            assertEquals(owned * listing.getMinorPrice(), brokerage.getMinorValue());
+            if(owned > 0)
+                holders++;
+        }
+        //holdings sold down to 0 are dropped from the listing's holders
+        assertEquals(holders, listing.getHolders().size());
+        for(StockShares shares : listing.getHolders())
+            assertTrue(shares.getQuantity() > 0);
+    }
+
+    private static int openSavings(Bank bank, long balance) throws Exception {
+        Patron patron = bank.createNewPatron();
+        int account = bank.openNewSavingsAccount(patron);
+        patron.getSavingsAccount().executeTransaction(CashTransaction.ofMinorUnits(Transaction.TxType.DEPOSIT, balance));
+        return account;
+    }
+
+    private static long sum(Bank bank, int[] accounts) {
+        long total = 0;
+        for(int account : accounts)
+            total += bank.getAccount(account).getMinorValue();
+        return total;
+    }
+}
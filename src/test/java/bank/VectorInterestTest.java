@@ -0,0 +1,37 @@
+package bank;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+
+class VectorInterestTest {
+    @Test
+    void matchesTheScalarLoop() {
+        assumeTrue(InterestAccrual.VECTORIZED, "the jdk.incubator.vector module isn't resolved");
+        Random random = new Random(11);
+        long[] balances = new long[1_003];
+        for(int i = 0; i < balances.length; i++) {
+            switch(i % 5) {
+                case 0 -> balances[i] = random.nextInt(1_000_000);
+                case 1 -> balances[i] = random.nextLong();
+                case 2 -> balances[i] = Long.MAX_VALUE - random.nextInt(1_000);
+                case 3 -> balances[i] = -random.nextInt(1_000);
+                default -> balances[i] = random.nextLong() >>> random.nextInt(64);
+            }
+        }
+        balances[0] = 0;
+        long[] rates = {0, 1, 41_095, 999_999_999, 1_000_000_000, random.nextInt(1_000_000_001)};
+        for(long rate : rates) {
+            //odd counts leave a tail that isn't a whole vector
+            for(int count : new int[] {balances.length, 7, 1}) {
+                long[] expected = new long[count];
+                long[] actual = new long[count];
+                InterestAccrual.computeInterestScalar(balances, count, rate, expected);
+                VectorInterest.computeInterest(balances, count, rate, actual);
+                assertArrayEquals(expected, actual, "rate " + rate + ", count " + count);
+            }
+        }
+    }
+}